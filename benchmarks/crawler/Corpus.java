@@ -0,0 +1,165 @@
+package crawler;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import crawler.extract.ExtractedPage;
+import crawler.extract.PageExtractor;
+import crawler.fetch.PageBuffer;
+import crawler.frontier.URLCanonicalizer;
+
+/**
+ * <p>
+ * The fixed set of web pages the benchmarks run against.
+ * </p>
+ *
+ * <p>
+ * The pages are checked into the test resources under {@code corpus/},
+ * listed in {@code corpus/corpus.txt} along with the URL they pretend to be
+ * fetched from and the content type they pretend to be served with. They
+ * are read into {@link PageBuffer}s once, as the spiders would have them
+ * after the fetch.
+ * </p>
+ *
+ * @author billy
+ */
+public final class Corpus {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Not to be instantiated.
+     */
+    private Corpus() {
+    }
+
+    /**
+     * Loads the pages of the corpus.
+     *
+     * @return
+     *     The pages, in the order they are listed.
+     *
+     * @throws IOException
+     *     If the corpus is missing from the class path or could not be read.
+     */
+    public static List<Page> load()
+            throws IOException {
+        List<Page> pages = new ArrayList<Page>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(open("corpus.txt"), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
+                if (fields.length != 3) {
+                    throw new IOException("Malformed corpus entry: " + line);
+                }
+
+                PageBuffer buffer = new PageBuffer();
+                InputStream in = open(fields[1]);
+                try {
+                    buffer.readFully(in, -1);
+                }
+                finally {
+                    in.close();
+                }
+                pages.add(new Page(URLCanonicalizer.toURL(fields[0]), fields[2], buffer));
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        return Collections.unmodifiableList(pages);
+    }
+
+    private static InputStream open(String name)
+            throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name);
+        if (in == null) {
+            throw new FileNotFoundException("corpus/" + name + " is not on the class path");
+        }
+
+        return in;
+    }
+
+
+    /**
+     * A page of the corpus.
+     */
+    public static class Page {
+
+        private final URL url;
+
+        private final String contentType;
+
+        private final PageBuffer buffer;
+
+        private ExtractedPage extracted = null;
+
+        Page(URL url, String contentType, PageBuffer buffer) {
+            this.url = url;
+            this.contentType = contentType;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Extracts the page the way the spiders do by default. The result is
+         * kept, so that benchmarks of the later stages can start from it.
+         *
+         * @return
+         *     The title, content and links of the page.
+         */
+        public synchronized ExtractedPage extracted() {
+            if (extracted == null) {
+                extracted = PageExtractor.extract(buffer, contentType, true, true);
+            }
+
+            return extracted;
+        }
+
+        /**
+         * Gets the URL the page pretends to be fetched from.
+         *
+         * @return
+         *     The URL.
+         */
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * Gets the content type the page pretends to be served with.
+         *
+         * @return
+         *     The value of the HTTP {@code Content-Type} header.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Gets the body of the page. It must not be modified.
+         *
+         * @return
+         *     The page buffer.
+         */
+        public PageBuffer getBuffer() {
+            return buffer;
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package crawler;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import crawler.extract.ExtractedPage;
+
+/**
+ * <p>
+ * Measures the construction of the {@code Content} entities, along with
+ * their {@code Domain} and {@code MIME}, out of the pages of the
+ * {@link Corpus}, as a spider's {@code storeToDBMS} does before handing them
+ * to the content writer.
+ * </p>
+ *
+ * <p>
+ * An operation builds the entity of every page of the corpus once. The
+ * database itself is left out; it is anything but CPU-bound.
+ * </p>
+ *
+ * @author billy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBenchmark {
+
+    /**
+     * The fields of each page, in the order {@link Spider#toContent} takes
+     * them.
+     */
+    private String[][] fields;
+
+    @Setup
+    public void setUp()
+            throws IOException {
+        List<Corpus.Page> pages = Corpus.load();
+        fields = new String[pages.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            Corpus.Page page = pages.get(i);
+            ExtractedPage extracted = page.extracted();
+            fields[i] = new String[] {
+                    page.getUrl().getFile(),
+                    "/tmp/jwebcrawler/storage/" + page.getUrl().getHost() + page.getUrl().getPath(),
+                    extracted.getTitle(),
+                    extracted.getContent(),
+                    page.getUrl().getHost(),
+                    page.getContentType()
+            };
+        }
+    }
+
+    @Benchmark
+    public void toContent(Blackhole bh) {
+        for (String[] f : fields) {
+            bh.consume(Spider.toContent(f[0], f[1], f[2], f[3], f[4], f[5]));
+        }
+    }
+
+}
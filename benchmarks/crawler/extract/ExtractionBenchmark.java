@@ -0,0 +1,63 @@
+package crawler.extract;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import crawler.Corpus;
+
+/**
+ * <p>
+ * Measures the extraction of the title, content and links out of the pages
+ * of the {@link Corpus}, as done by the spiders through
+ * {@link PageExtractor}.
+ * </p>
+ *
+ * <p>
+ * An operation extracts every page of the corpus once. The spiders only
+ * extract the links while below the crawl depth, hence the parameter; the
+ * image links are followed, as by default.
+ * </p>
+ *
+ * @author billy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean withLinks;
+
+    private List<Corpus.Page> pages;
+
+    @Setup
+    public void setUp()
+            throws IOException {
+        pages = Corpus.load();
+    }
+
+    @Benchmark
+    public void extract(Blackhole bh) {
+        for (Corpus.Page page : pages) {
+            bh.consume(PageExtractor.extract(page.getBuffer(), page.getContentType(), withLinks, true));
+        }
+    }
+
+}
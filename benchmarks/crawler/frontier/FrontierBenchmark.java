@@ -0,0 +1,199 @@
+package crawler.frontier;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import crawler.Corpus;
+import crawler.extract.ExtractedPage;
+
+/**
+ * <p>
+ * Measures what happens to the links of a page before they reach the
+ * frontier: the canonicalization by {@link URLCanonicalizer} and the
+ * insertion into the {@code visited} {@link SeenSet}.
+ * </p>
+ *
+ * <p>
+ * The links are those extracted out of the pages of the {@link Corpus},
+ * resolved against each page's base as the spiders do. An operation goes
+ * through all of them, except for {@link #visitedInsert()} which inserts
+ * {@value #FRESH} distinct URLs into an empty set.
+ * </p>
+ *
+ * @author billy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontierBenchmark {
+
+    /**
+     * The number of distinct URLs inserted per operation.
+     */
+    private static final int FRESH = 1 << 16;
+
+    /**
+     * The kind of {@code visited} set, as in the {@code seenSetMode}
+     * property.
+     */
+    @Param({ "exact", "bloom" })
+    public String seenSetMode;
+
+    private URLCanonicalizer canonicalizer;
+
+    /**
+     * The base each link is relative to.
+     */
+    private URL[] bases;
+
+    /**
+     * The links as extracted.
+     */
+    private String[] links;
+
+    /**
+     * The links in their canonical form.
+     */
+    private String[] canonical;
+
+    /**
+     * Distinct URLs, made out of the canonical ones.
+     */
+    private String[] fresh;
+
+    /**
+     * A set already holding all the canonical links, as for a page whose
+     * links were seen before.
+     */
+    private SeenSet visited;
+
+    @Setup
+    public void setUp()
+            throws IOException {
+        // As in webcrawler.default.xml
+        canonicalizer = new URLCanonicalizer(true, "utm_*", "gclid", "fbclid", "jsessionid", "phpsessid", "sid");
+
+        List<URL> b = new ArrayList<URL>();
+        List<String> l = new ArrayList<String>();
+        List<String> c = new ArrayList<String>();
+        for (Corpus.Page page : Corpus.load()) {
+            ExtractedPage extracted = page.extracted();
+            URL base = page.getUrl();
+            if (extracted.getBase() != null) {
+                base = URLCanonicalizer.resolve(base, extracted.getBase());
+            }
+
+            for (String link : extracted.getLinks()) {
+                b.add(base);
+                l.add(link);
+                try {
+                    c.add(canonicalizer.canonicalize(base, link).toString());
+                }
+                catch (MalformedURLException murle) {
+                    // Rejected by the spiders as well.
+                }
+            }
+        }
+        bases = b.toArray(new URL[b.size()]);
+        links = l.toArray(new String[l.size()]);
+        canonical = c.toArray(new String[c.size()]);
+
+        fresh = new String[FRESH];
+        for (int i = 0; i < FRESH; i++) {
+            String url = canonical[i % canonical.length];
+            fresh[i] = url + (url.indexOf('?') == -1 ? "?p=" : "&p=") + i;
+        }
+
+        visited = newSeenSet(FRESH);
+        for (String url : canonical) {
+            visited.add(url);
+        }
+    }
+
+    /**
+     * Creates a {@code visited} set the way the crawler does.
+     */
+    private SeenSet newSeenSet(long expected) {
+        if (seenSetMode.equals("bloom")) {
+            return new BloomSeenSet(expected, 0.001);
+        }
+
+        return new FingerprintSeenSet(expected);
+    }
+
+    @Benchmark
+    public void canonicalize(Blackhole bh) {
+        for (int i = 0; i < links.length; i++) {
+            try {
+                bh.consume(canonicalizer.canonicalize(bases[i], links[i]));
+            }
+            catch (MalformedURLException murle) {
+                bh.consume(murle);
+            }
+        }
+    }
+
+    @Benchmark
+    public SeenSet visitedInsert() {
+        SeenSet set = newSeenSet(FRESH);
+        for (String url : fresh) {
+            set.add(url);
+        }
+
+        return set;
+    }
+
+    @Benchmark
+    public int visitedLookup() {
+        int added = 0;
+        for (String url : canonical) {
+            if (visited.add(url)) {
+                added++;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Canonicalizes the links and checks them against the {@code visited}
+     * set, as a spider offering the links of a page to the crawler.
+     */
+    @Benchmark
+    public int pushLinks() {
+        int added = 0;
+        for (int i = 0; i < links.length; i++) {
+            try {
+                if (visited.add(canonicalizer.canonicalize(bases[i], links[i]).toString())) {
+                    added++;
+                }
+            }
+            catch (MalformedURLException murle) {
+                // Ignored by the spiders.
+            }
+        }
+
+        return added;
+    }
+
+}
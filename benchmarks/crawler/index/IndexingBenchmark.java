@@ -0,0 +1,134 @@
+package crawler.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import crawler.Corpus;
+import crawler.extract.ExtractedPage;
+
+/**
+ * <p>
+ * Measures what a spider's {@code storeToIndex} does with the pages of the
+ * {@link Corpus}: building their documents through the {@link IndexSchema}
+ * and adding them to an {@link IndexingService}.
+ * </p>
+ *
+ * <p>
+ * An operation goes through every page of the corpus once. The index lives
+ * in a temporary directory and is set up as in
+ * {@code webcrawler.default.xml}; since the same URLs are indexed over and
+ * over, each update also deletes the previous document, as in a recrawl.
+ * </p>
+ *
+ * @author billy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexingBenchmark {
+
+    /**
+     * The analyzer of the title and content, as in the
+     * {@code indexContentAnalyzer} property.
+     */
+    @Param({ "english", "standard" })
+    public String analyzer;
+
+    private IndexSchema schema;
+
+    private IndexingService indexingService;
+
+    private File indexDirectory;
+
+    /**
+     * The fields of each page, in the order {@link IndexSchema#document}
+     * takes them.
+     */
+    private String[][] fields;
+
+    @Setup
+    public void setUp()
+            throws IOException {
+        List<Corpus.Page> pages = Corpus.load();
+        fields = new String[pages.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            Corpus.Page page = pages.get(i);
+            ExtractedPage extracted = page.extracted();
+            fields[i] = new String[] {
+                    page.getUrl().toString(),
+                    page.getUrl().getFile(),
+                    "/tmp/jwebcrawler/storage/" + page.getUrl().getHost() + page.getUrl().getPath(),
+                    extracted.getTitle(),
+                    extracted.getContent(),
+                    page.getUrl().getHost(),
+                    page.getContentType()
+            };
+        }
+
+        schema = new IndexSchema(false, analyzer, analyzer);
+        indexDirectory = File.createTempFile("index", ".bench");
+        indexDirectory.delete();
+        indexingService = new IndexingService(indexDirectory.getPath(), schema, 16, 1000, 60000, 1000);
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException {
+        try {
+            indexingService.close();
+        }
+        finally {
+            delete(indexDirectory);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private Document document(String[] f) {
+        return schema.document(f[0], f[1], f[2], f[3], f[4], f[5], f[6]);
+    }
+
+    @Benchmark
+    public void document(Blackhole bh) {
+        for (String[] f : fields) {
+            bh.consume(document(f));
+        }
+    }
+
+    @Benchmark
+    public void updateDocument()
+            throws IOException {
+        for (String[] f : fields) {
+            indexingService.updateDocument(document(f));
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package crawler.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import crawler.Corpus;
+import crawler.fetch.PageBuffer;
+
+/**
+ * <p>
+ * Measures the raw store {@link Codec}s on the pages of the {@link Corpus},
+ * to pick the {@code storageCodec} and {@code storageCompressionLevel} worth
+ * their CPU time.
+ * </p>
+ *
+ * <p>
+ * An operation compresses, or decompresses, every page of the corpus once.
+ * The compression ratio of each codec is printed once on setup, as JMH has
+ * no column for it.
+ * </p>
+ *
+ * @author billy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /**
+     * The codec, as in the {@code storageCodec} property.
+     */
+    @Param({ "deflate", "gzip" })
+    public String codecName;
+
+    /**
+     * The compression level, as in the {@code storageCompressionLevel}
+     * property.
+     */
+    @Param({ "1", "6", "9" })
+    public int level;
+
+    private Codec codec;
+
+    private PageBuffer[] pages;
+
+    /**
+     * The pages as compressed by the codec.
+     */
+    private byte[][] encoded;
+
+    private ByteArrayOutputStream out;
+
+    private PageBuffer page;
+
+    @Setup
+    public void setUp()
+            throws IOException {
+        codec = Codec.forName(codecName, level);
+
+        List<Corpus.Page> corpus = Corpus.load();
+        pages = new PageBuffer[corpus.size()];
+        encoded = new byte[pages.length][];
+        out = new ByteArrayOutputStream(1 << 20);
+        page = new PageBuffer();
+
+        long rawBytes = 0;
+        long encodedBytes = 0;
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = corpus.get(i).getBuffer();
+            out.reset();
+            codec.encode(pages[i], out);
+            encoded[i] = out.toByteArray();
+            rawBytes += pages[i].size();
+            encodedBytes += encoded[i].length;
+        }
+        System.out.println(String.format(
+                "%s %d: ratio %.3f (%d to %d bytes)",
+                codecName, level, (double) encodedBytes / Math.max(rawBytes, 1), rawBytes, encodedBytes
+                ));
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh)
+            throws IOException {
+        for (PageBuffer p : pages) {
+            out.reset();
+            codec.encode(p, out);
+            bh.consume(out.size());
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh)
+            throws IOException {
+        for (byte[] e : encoded) {
+            try (InputStream in = codec.decode(new ByteArrayInputStream(e))) {
+                bh.consume(page.readFully(in, -1));
+            }
+        }
+    }
+
+}
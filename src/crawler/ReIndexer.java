@@ -0,0 +1,619 @@
+package crawler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.util.Bits;
+
+import crawler.extract.ExtractedPage;
+import crawler.extract.PageExtractor;
+import crawler.fetch.PageBuffer;
+import crawler.frontier.URLCanonicalizer;
+import crawler.index.IndexSchema;
+import crawler.index.ShardedIndexingService;
+import crawler.persistence.ContentWriter;
+import crawler.persistence.DimensionCache;
+import crawler.persistence.PersistenceService;
+import crawler.store.Codec;
+import crawler.store.FileTreeStore;
+import crawler.store.RawRecord;
+import crawler.store.RawStore;
+import crawler.store.SegmentStore;
+
+/**
+ * <p>
+ * Rebuilds the full-text index (and, optionally, the database) out of the
+ * pages already saved under the storage path, without touching the network.
+ * </p>
+ *
+ * <p>
+ * The storage is read in parallel on a fork/join pool: one task per segment
+ * of a {@link SegmentStore}, or per directory of a {@link FileTreeStore}.
+ * Every copy that is an HTML page is run through the very same
+ * {@link PageExtractor} as the spiders, and indexed under the URL it was
+ * saved from. Segments record that URL. A file tree does not: the URL of a
+ * file is looked up in the index being rebuilt, among the documents the
+ * crawl stored there, before it is emptied. Failing that, it is rebuilt out
+ * of the file's path, as {@code http}, without a query string, and a file
+ * saved as {@code index.html} taken to be the page of its directory, as
+ * that is how the spiders name them; such a document will not be replaced
+ * by a later crawl of an {@code https} or query URL, but added next to it.
+ * The index is emptied first, so that documents built with an older schema
+ * or analyzer do not linger on.
+ * </p>
+ *
+ * @author billy
+ */
+public class ReIndexer {
+
+    /**
+     * The application usage.
+     */
+    private static final String strAppUsage =
+            "Usage: java crawler.ReIndexer [OPTIONS]\n" +
+            "\n" +
+            "OPTIONS\n" +
+            "\n" +
+            "-b\n\tAlso store the pages into the database; it is expected to be empty.\n" +
+            "-h\n\tPrint this help.\n" +
+            "-i<PATH>\n\tRebuild the index under PATH directory. Can alternatively be handled by setting the \"indexPath\" configuration property.\n" +
+            "-m<NUMBER>\n\tUse NUMBER of threads. Defaults to the number of processors.\n" +
+            "-p<PATH>\n\tRead the saved copies from under PATH directory. Can alternatively be handled by setting the \"storagePath\" configuration property.\n" +
+            "-x\n\tDo not extract the image links. Can alternatively be handled by setting the \"followImgLinks\" configuration property.\n";
+
+    /**
+     * How many bytes are looked at to tell whether a file is an HTML page.
+     */
+    private static final int SNIFF_LENGTH = 512;
+
+    private static final WebCrawlerConfigurator configurator = WebCrawlerConfigurator.getInstance();
+
+    /**
+     * The root of the saved copies.
+     */
+    private final File storage;
+
+    /**
+     * The saved copies.
+     */
+    private final RawStore store;
+
+    private final boolean followImgLinks;
+
+    private final ForkJoinPool pool;
+
+    private final ShardedIndexingService indexingService;
+
+    /**
+     * The database services; {@code null} unless the database is rebuilt too.
+     */
+    private final PersistenceService persistenceService;
+
+    private final ContentWriter contentWriter;
+
+    /**
+     * The buffers the files are read into, one per worker of the pool.
+     */
+    private final ThreadLocal<PageBuffer> buffers = new ThreadLocal<PageBuffer>() {
+        @Override
+        protected PageBuffer initialValue() {
+            return new PageBuffer();
+        }
+    };
+
+    /**
+     * The URLs the files of a file tree were crawled from, by their path, as
+     * found in the index.
+     */
+    private Map<String, String> urls = Collections.<String, String>emptyMap();
+
+    private final AtomicLong files = new AtomicLong();
+
+    private final AtomicLong pages = new AtomicLong();
+
+    private final AtomicLong links = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Constructor. Opens the index and, if asked to, the database.
+     *
+     * @param parallelism
+     *     The number of threads walking the storage.
+     * @param withDatabase
+     *     Whether to store the pages into the database too.
+     *
+     * @throws IOException
+     *     If the index could not be opened.
+     */
+    public ReIndexer(int parallelism, boolean withDatabase)
+            throws IOException {
+        storage = new File(configurator.property("storagePath"));
+        store = WebCrawler.openRawStore(storage.getPath());
+        followImgLinks = configurator.propertyBoolean("followImgLinks");
+        pool = new ForkJoinPool(parallelism);
+        indexingService = WebCrawler.openIndex(configurator.property("indexPath"));
+
+        if (withDatabase) {
+            int dbWriterThreads = configurator.propertyInteger("dbWriterThreads");
+            persistenceService = new PersistenceService(
+                    configurator.property("persistenceUnit"),
+                    dbWriterThreads
+                    );
+            contentWriter = new ContentWriter(
+                    persistenceService,
+                    new DimensionCache(persistenceService),
+                    dbWriterThreads,
+                    configurator.propertyInteger("dbQueueCapacity"),
+                    configurator.propertyInteger("dbBatchSize"),
+                    configurator.propertyInteger("dbFlushInterval")
+                    );
+        }
+        else {
+            persistenceService = null;
+            contentWriter = null;
+        }
+    }
+
+    /**
+     * The entry point of the re-indexer.
+     *
+     * @param args
+     *     The command-line arguments.
+     */
+    public static void main(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean withDatabase = false;
+        boolean abort = false;
+
+        for (int i = 0; !abort && i < args.length; i++) {
+            if (args[i].length() < 2 || args[i].charAt(0) != '-') {
+                System.out.println("Error: Argument " + args[i] + " is not valid.");
+                System.out.println(strAppUsage);
+                abort = true;
+                continue;
+            }
+
+            switch (args[i].charAt(1)) {
+            case 'b':
+                withDatabase = true;
+                break;
+            case 'h':
+                System.out.println(strAppUsage);
+                abort = true;
+                break;
+            case 'i':
+                configurator.assign("indexPath", args[i].substring(2, args[i].length()));
+                break;
+            case 'm':
+                parallelism = Integer.parseInt(args[i].substring(2, args[i].length()));
+                break;
+            case 'p':
+                configurator.assign("storagePath", args[i].substring(2, args[i].length()));
+                break;
+            case 'x':
+                configurator.assign("followImgLinks", "false");
+                break;
+            default:
+                System.out.println("Error: Switch " + args[i] + " is not valid.");
+                System.out.println(strAppUsage);
+                abort = true;
+                break;
+            }
+        }
+
+        if (!abort) {
+            try {
+                new ReIndexer(parallelism, withDatabase).run();
+            }
+            catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+            catch (InterruptedException ie) {
+                ie.printStackTrace();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Empties the index, walks the storage and closes everything once done.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     *     If interrupted while flushing the database writes.
+     */
+    public void run()
+            throws IOException, InterruptedException {
+        System.out.print("Re-indexing " + storage + " with " + pool.getParallelism() + " threads: ");
+        long start = System.nanoTime();
+
+        try {
+            if (!(store instanceof SegmentStore)) {
+                urls = indexedUrls();
+            }
+            indexingService.deleteAll();
+            if (store instanceof SegmentStore) {
+                pool.invoke(new StoreTask((SegmentStore) store));
+            }
+            else if (storage.isDirectory()) {
+                pool.invoke(new DirectoryTask(storage));
+            }
+            indexingService.commit();
+        }
+        finally {
+            pool.shutdown();
+            store.close();
+            indexingService.close();
+            if (contentWriter != null) {
+                contentWriter.close();
+                persistenceService.close();
+            }
+        }
+
+        System.out.println("OK\n");
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(
+                "Re-indexed %d pages (%d links) out of %d copies, %d failed, in %.1f s (%.2f pages/s, %.2f MB/s).",
+                pages.get(),
+                links.get(),
+                files.get(),
+                failures.get(),
+                seconds,
+                pages.get() / Math.max(seconds, 1e-3),
+                bytes.get() / 1048576.0 / Math.max(seconds, 1e-3)
+                ));
+    }
+
+    /**
+     * Re-indexes a single saved file if it is an HTML page.
+     *
+     * @param file
+     *     The saved file.
+     */
+    private void reindex(File file) {
+        files.incrementAndGet();
+        PageBuffer page = buffers.get();
+
+        try {
+            // Compressed files are named after their codec.
+            Codec codec = Codec.forFile(file.getName());
+            try (InputStream in = new FileInputStream(file)) {
+                if (codec == null) {
+                    page.readFully(in, (int) Math.min(file.length(), Integer.MAX_VALUE));
+                }
+                else {
+                    try (InputStream decoded = codec.decode(in)) {
+                        page.readFully(decoded, (int) Math.min(4 * file.length(), Integer.MAX_VALUE));
+                    }
+                }
+            }
+            bytes.addAndGet(page.size());
+            if (!isHtml(page)) {
+                return;
+            }
+
+            // <storage>/<domain>/<path>, as laid out by the spiders.
+            String relative = storage.toURI().relativize(file.toURI()).getPath();
+            String name = file.getName();
+            if (codec != null) {
+                relative = relative.substring(0, relative.length() - codec.getSuffix().length());
+                name = name.substring(0, name.length() - codec.getSuffix().length());
+            }
+            int slash = relative.indexOf('/');
+            if (slash == -1) {
+                return;
+            }
+            String domainName = relative.substring(0, slash);
+            String remoteURI = relative.substring(slash);
+            if (remoteURI.endsWith("/index.html")) {
+                remoteURI = remoteURI.substring(0, remoteURI.length() - "index.html".length());
+            }
+
+            String url = urls.get(normalize(file.getPath()));
+            if (url != null) {
+                // As indexed by the crawl, scheme and query included.
+                URL crawled = URI.create(url).toURL();
+                domainName = crawled.getHost();
+                remoteURI = crawled.getFile();
+            }
+            else {
+                url = "http://" + domainName + remoteURI;
+            }
+
+            index(url, domainName, remoteURI, file.getPath(), name, "text/html", page);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+            failures.incrementAndGet();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            failures.incrementAndGet();
+        }
+        finally {
+            page.reset();
+        }
+    }
+
+    /**
+     * Gets the URLs the copies of the file tree were indexed under by the
+     * crawl, as they cannot be told from the file names.
+     *
+     * @return
+     *     The URLs, by the normalized path of their copy.
+     *
+     * @throws IOException
+     */
+    private Map<String, String> indexedUrls()
+            throws IOException {
+        Map<String, String> urls = new HashMap<String, String>();
+        Set<String> fields = new HashSet<String>(Arrays.asList(IndexSchema.URL, IndexSchema.LOCAL_URI));
+
+        ShardedIndexingService.Searcher searcher = indexingService.acquire();
+        try {
+            IndexReader reader = searcher.getSearcher().getIndexReader();
+            Bits live = MultiFields.getLiveDocs(reader);
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                if (live != null && !live.get(i)) {
+                    continue;
+                }
+
+                Document doc = reader.document(i, fields);
+                String url = doc.get(IndexSchema.URL);
+                String localURI = doc.get(IndexSchema.LOCAL_URI);
+                if (url == null || localURI == null) {
+                    continue;
+                }
+                // Copies linked to an original share its local URI; only the
+                // original's URL is the one the file was saved from.
+                try {
+                    if (store.locate(URI.create(url).toURL()).equals(localURI)) {
+                        urls.put(normalize(localURI), url);
+                    }
+                }
+                catch (IllegalArgumentException | MalformedURLException e) {
+                    // Not one the crawler saved.
+                }
+            }
+        }
+        finally {
+            searcher.release();
+        }
+
+        return urls;
+    }
+
+    /**
+     * Normalizes a file path, so that the paths of the store and of the walk
+     * compare equal.
+     *
+     * @param path
+     *     The path.
+     *
+     * @return
+     *     The absolute, normalized path.
+     */
+    private static String normalize(String path) {
+        return new File(path).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /**
+     * Re-indexes a single record of a segment if it is an HTML page.
+     *
+     * @param record
+     *     The record.
+     */
+    private void reindex(RawRecord record) {
+        files.incrementAndGet();
+        PageBuffer page = buffers.get();
+
+        try {
+            record.copyTo(page);
+            bytes.addAndGet(page.size());
+
+            String contentType = record.header("Content-Type");
+            if (contentType == null ? !isHtml(page) : !contentType.contains("text/html")) {
+                return;
+            }
+
+            URL url = URLCanonicalizer.toURL(record.getUrl());
+            String remoteURI = url.getFile();
+            String name = remoteURI.substring(remoteURI.lastIndexOf('/') + 1);
+
+            index(record.getUrl(), url.getHost(), remoteURI, record.getLocalURI(),
+                    name.isEmpty() ? "index.html" : name,
+                    contentType == null ? "text/html" : contentType,
+                    page);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+            failures.incrementAndGet();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            failures.incrementAndGet();
+        }
+        finally {
+            page.reset();
+        }
+    }
+
+    /**
+     * Extracts an HTML page and indexes it, and stores it into the database
+     * if asked to.
+     *
+     * @param url
+     *     The URL the page was saved from.
+     * @param domainName
+     *     The host of the URL.
+     * @param remoteURI
+     *     The path, and query, of the URL.
+     * @param localURI
+     *     Where the page is saved.
+     * @param name
+     *     The title to use if the page has none.
+     * @param contentType
+     *     The content type of the page.
+     * @param page
+     *     The buffered page.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     *     If interrupted while waiting for the database writes.
+     */
+    private void index(String url, String domainName, String remoteURI, String localURI,
+            String name, String contentType, PageBuffer page
+            ) throws IOException, InterruptedException {
+        ExtractedPage extracted = PageExtractor.extract(page, contentType, true, followImgLinks);
+        String title = extracted.getTitle().equals("") ? name : extracted.getTitle();
+        links.addAndGet(extracted.getLinks().size());
+
+        indexingService.updateDocument(indexingService.getSchema().document(
+                url,
+                remoteURI,
+                localURI,
+                title,
+                extracted.getContent(),
+                domainName,
+                contentType
+                ));
+
+        if (contentWriter != null) {
+            contentWriter.submit(Spider.toContent(
+                    remoteURI, localURI, title, extracted.getContent(), domainName, contentType
+                    ));
+        }
+
+        pages.incrementAndGet();
+    }
+
+    /**
+     * Tells whether the buffered file looks like an HTML page. The spiders
+     * save every file they fetch but only index HTML pages.
+     *
+     * @param page
+     *     The buffered file.
+     *
+     * @return
+     *     {@code true} if it looks like an HTML page; {@code false}
+     *     otherwise.
+     */
+    private static boolean isHtml(PageBuffer page) {
+        String head = new String(
+                page.array(), 0, Math.min(page.size(), SNIFF_LENGTH),
+                StandardCharsets.ISO_8859_1
+                ).toLowerCase();
+
+        return head.contains("<html") || head.contains("<!doctype html")
+                || head.contains("<head") || head.contains("<title");
+    }
+
+
+    /**
+     * Re-indexes the segments of a store, a task per segment.
+     */
+    private class StoreTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SegmentStore segments;
+
+        StoreTask(SegmentStore segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+            for (final int segment : segments.getSegments()) {
+                tasks.add(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        try {
+                            segments.scan(segment, new SegmentStore.Visitor() {
+                                @Override
+                                public void visit(RawRecord record) {
+                                    reindex(record);
+                                }
+                            });
+                        }
+                        catch (IOException ioe) {
+                            // The rest of the segment is lost.
+                            ioe.printStackTrace();
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            invokeAll(tasks);
+        }
+    }
+
+
+    /**
+     * Re-indexes a directory of the storage, forking a task per
+     * sub-directory.
+     */
+    private class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File directory;
+
+        DirectoryTask(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            File[] entries = directory.listFiles();
+            if (entries == null) {
+                return;
+            }
+
+            List<DirectoryTask> subtasks = new ArrayList<DirectoryTask>();
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    DirectoryTask task = new DirectoryTask(entry);
+                    task.fork();
+                    subtasks.add(task);
+                }
+            }
+            for (File entry : entries) {
+                if (entry.isFile()) {
+                    reindex(entry);
+                }
+            }
+            for (DirectoryTask task : subtasks) {
+                task.join();
+            }
+        }
+    }
+
+}
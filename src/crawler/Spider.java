@@ -1,31 +1,44 @@
 package crawler;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-
-import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
-import javax.persistence.TypedQuery;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.IndexWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import crawler.content.Content;
 import crawler.content.Domain;
 import crawler.content.MIME;
-
-import toolbox.util.URLManipulator;
+import crawler.dedup.DuplicateDetector;
+import crawler.dedup.SimHash;
+import crawler.extract.ExtractedPage;
+import crawler.extract.PageExtractor;
+import crawler.fetch.FetchResult;
+import crawler.fetch.FetchState;
+import crawler.fetch.FetchStateStore;
+import crawler.fetch.HttpStatusException;
+import crawler.fetch.PageBuffer;
+import crawler.frontier.Fingerprint;
+import crawler.frontier.URLCanonicalizer;
+import crawler.index.ShardedIndexingService;
+import crawler.metrics.CrawlMetrics;
+import crawler.store.RawStore;
 
 /**
  * The elementary spider task of crawling on a single URL.
@@ -33,6 +46,33 @@ import toolbox.util.URLManipulator;
  * @author billy
  */
 public class Spider implements Runnable {
+    /**
+     * The buffers the fetched documents are read into. A spider borrows one
+     * for the duration of its work so that each document is downloaded once
+     * and no new buffer is allocated per page. A pool rather than a
+     * {@code ThreadLocal}, since in virtual-thread mode every spider runs on
+     * a thread of its own. It holds at most as many buffers as the crawl's
+     * concurrency; the rest are left to the garbage collector.
+     */
+    private static final Queue<PageBuffer> buffers =
+            new ConcurrentLinkedQueue<PageBuffer>();
+
+    /**
+     * The number of buffers in the pool; {@code ConcurrentLinkedQueue}
+     * counts them in linear time.
+     */
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * The name of the crawl log's logger; see {@code logback.xml}.
+     */
+    static final String LOG_NAME = "crawler.crawl";
+
+    /**
+     * The crawl log.
+     */
+    private static final Logger log = LoggerFactory.getLogger(LOG_NAME);
+
     private final int id;
 
     private final URL url;
@@ -61,67 +101,159 @@ public class Spider implements Runnable {
         StringBuilder info = new StringBuilder(1024);
 
         String strURL = this.url.toString();
-        int contentLength;
+        long contentLength;
         String contentType;
         String domainName;
         String rFilePathName;
-        String rFilePath;
         String rFileName;
-        String lFilePathName;
-        String lFilePath;
         String lFileName;
+        String lURI;
         String title = "";
         String content = "";
 
+        PageBuffer page = borrowBuffer();
+        CompletableFuture<FetchResult> fetch = null;
+        CrawlMetrics metrics = spiderman.getMetrics();
+
         info.append("##########" + "\n");
         info.append("# [" + id + "] on \" " + strURL + "\"\n");
         // The objects that we're dealing with here a strings for urls
         try {
-            HttpURLConnection conn = initHttpConn(url);
-
-            contentLength = conn.getContentLength();
-            contentType = conn.getContentType();
-
             // Prepare to everything that is needed
             domainName = url.getHost();
             rFilePathName = url.getFile();
-            rFilePath = rFilePathName.substring(0, rFilePathName.lastIndexOf('/') + 1);
             rFileName = rFilePathName.substring( (rFilePathName.lastIndexOf('/')) + 1 );
 
+            lFileName = rFileName.equalsIgnoreCase("") ? "index.html" : rFileName;
+            RawStore store = spiderman.getRawStore();
+            lURI = store.locate(url);
+
+            // In incremental mode, only ask for the page if it changed since
+            // the last crawl, provided its copy is still around.
+            FetchStateStore states = spiderman.getFetchStates();
+            FetchState previous = states == null ? null : states.get(strURL);
+            if (previous != null && !store.contains(url)) {
+                previous = null;
+            }
+
+            // Download the body once; every stage below works on this buffer.
+            fetch = spiderman.getFetcher().fetch(url, page, conditionalHeaders(previous));
+            FetchResult result;
+            try {
+                result = fetch.get(spiderman.getFetchTimeout(), TimeUnit.SECONDS);
+            }
+            catch (TimeoutException te) {
+                // A server trickling or stalling the body.
+                fetch.cancel(true);
+                throw te;
+            }
+            metrics.stage(CrawlMetrics.CONNECT).record(result.getResponseTime());
+            if (result.getStatus() >= 400) {
+                throw new HttpStatusException(result.getStatus(), strURL);
+            }
+            metrics.stage(CrawlMetrics.DOWNLOAD).record(result.getBodyTime());
+
+            // The document's links are relative to where any redirects led.
+            URL location = result.getFinalUrl();
+            if (!location.equals(url)) {
+                info.append("# Redirected to: " + location + "\n");
+                redirected(location);
+            }
+
+            contentLength = result.getContentLength();
+            contentType = result.getContentType();
+            spiderman.getBudget().downloaded(page.size());
+            metrics.fetched(page.size());
+
             info.append(
                     "# Content Length: " + contentLength  + "\n" +
                     "# Content Type: " + contentType + "\n" +
-                    "# File: " + rFileName + "\n"
+                    "# File: " + rFileName + "\n" +
+                    "# Downloaded: " + page.size() + " bytes" +
+                    (page.isTruncated() ? " (truncated)" : "") + "\n"
                     );
 
-            lFilePath = URLManipulator.constructSavePath(spiderman.getStoragePath(), domainName + rFilePath);
-            lFileName = rFileName.equalsIgnoreCase("") ? "index.html" : rFileName;
-            lFilePathName = lFilePath + lFileName;
+            long contentHash = Fingerprint.of(page.array(), 0, page.size());
+            if (previous != null && (result.getStatus() == 304 || previous.getContentHash() == contentHash)) {
+                info.append("# ** Unchanged since " + new Date(previous.getFetchTime()) + ": skipped\n");
+                putState(states, location, previous.refetched(
+                        result.header("ETag"),
+                        result.header("Last-Modified"),
+                        System.currentTimeMillis()
+                        ));
+                // Its links are still to be followed; take them from the copy.
+                if (result.getStatus() == 304) {
+                    store.read(url, page);
+                    contentType = previous.getContentType();
+                }
+                if (contentType != null && contentType.contains("text/html") && level < spiderman.getDepth()) {
+                    info.append("# Extracting links: ");
+                    long start = System.nanoTime();
+                    ExtractedPage extracted = PageExtractor.extract(page, contentType, true, spiderman.doFollowImgLinks());
+                    metrics.stage(CrawlMetrics.EXTRACT).since(start);
+                    info.append(pushLinks(extracted, location) + " new valid links found.\n");
+                }
+                return;
+            }
+
+            title = lFileName;
 
-            File path = new File(lFilePath);
-            if(!path.exists()) {
-                path.mkdirs();
+            // if url is a web page try to extract hyperlinks
+            boolean html = contentType != null && contentType.contains("text/html");
+            // Only extract links if the maximum depth is not reached yet.
+            boolean withLinks = level < spiderman.getDepth();
+            ExtractedPage extracted = null;
+            if (html) {
+                long start = System.nanoTime();
+                extracted =
+                        PageExtractor.extract(
+                                page,
+                                contentType,
+                                withLinks,
+                                spiderman.doFollowImgLinks()
+                                );
+                metrics.stage(CrawlMetrics.EXTRACT).since(start);
             }
 
-            info.append("# ** Storing to file-system (" + lFilePathName + "): ");
-            if ( storeToFileSystem(url, lFilePathName) ) {
-                info.append("OK\n");
+            // A copy of a page crawled before is not stored again; at most
+            // it is linked to the original.
+            long[] dedupKeys = dedupKeys(page, extracted);
+            DuplicateDetector.Match duplicate = checkDuplicate(dedupKeys, lURI);
+            boolean linked = duplicate != null && spiderman.isDedupLink();
+            if (duplicate != null) {
+                info.append("# ** " + (duplicate.isExact() ? "Exact" : "Near") + " copy of " + duplicate.getOriginal() + ": " + (linked ? "linked" : "skipped") + "\n");
+                spiderman.getDuplicateDetector().saved(page.size(), html && !linked ? 3 : 1);
             }
             else {
-                info.append("FAILED\n");
+                info.append("# ** Storing raw copy (" + lURI + "): ");
+                long start = System.nanoTime();
+                if ( storeRaw(store, page, result, contentType) ) {
+                    info.append("OK\n");
+                }
+                else {
+                    info.append("FAILED\n");
+                    metrics.error("store");
+                    // Later copies must not point to a copy that is not there.
+                    forgetOriginal(dedupKeys, lURI);
+                }
+                metrics.stage(CrawlMetrics.STORE).since(start);
             }
 
-            title = lFileName;
+            // If you haven't reached the maximum depth, push the links. Those
+            // of copies too: template-heavy pages, e.g. the pages of a
+            // listing, may be taken for copies while linking to new pages;
+            // the visited set makes the repeated links cheap.
+            if (html && withLinks) {
+                info.append("# Extracting links: ");
+                info.append(pushLinks(extracted, location) + " new valid links found.\n");
+            }
 
-            // if url is a web page try to extract hyperlinks
-            if(contentType.contains("text/html")) {
-                String rawPage = URLManipulator.streamURLToString(url);
-                String smallPage = rawPage.toLowerCase().replaceAll("\\s", " ");
+            if (html && (duplicate == null || linked)) {
+                String localURI = duplicate == null ? lURI : duplicate.getOriginal();
 
                 info.append("# Extracting title: ");
-                String t = URLManipulator.extractTitle(rawPage, smallPage);
-                if (!t.equals("")) {
-                    title = t;
+                if (!extracted.getTitle().equals("")) {
+                    title = extracted.getTitle();
                     info.append("OK\n");
                 }
                 else {
@@ -129,7 +261,7 @@ public class Spider implements Runnable {
                 }
 
                 info.append("# Extracting content: ");
-                content = URLManipulator.extractContentStrippingMarkup(rawPage, "<!-- ********** CONTENT ********** -->", "<!-- ********** FOOTER ********** -->");
+                content = extracted.getContent();
                 if (!content.equals("")) {
                     info.append("OK\n");
                 }
@@ -137,88 +269,336 @@ public class Spider implements Runnable {
                     info.append("FAILED\n");
                 }
 
-                // If you haven't reached the maximum depth, extract links and push them.
-                if (level < spiderman.getDepth()) {
-                    info.append("# Extracting links: ");
-                    // treat the url as an html file and try to extract links
-                    Set<String> links =
-                            URLManipulator.extractLinks(
-                                    rawPage,
-                                    smallPage,
-                                    spiderman.doFollowImgLinks()
-                                    );
-
-                    // Convert each link text to a url and enqueue
-                    int linkNumber = 0;
-                    Iterator<String> iter = links.iterator();
-
-                    while (iter.hasNext()) {
-                        try {
-                            // urls might be relative to current page
-//                            URL link = new URL(url, links.elementAt(n));
-                            URL link = new URL(iter.next());
-                            if (spiderman.crawl(new Spider(0, link, level + 1, spiderman)))
-                                linkNumber++;
-                        }
-                        catch (MalformedURLException murle) {
-                            murle.printStackTrace();
-                            // Ignore malformed URLs, the link extractor might
-                            // have failed.
-                        }
-                    }
-
-                    info.append(linkNumber + " new valid links found.\n");
-                }
-
                 info.append("# ** Storing to database: ");
-                if ( storeToDBMS(rFilePathName, lFilePathName, title, content, domainName, contentType) ) {
+                long start = System.nanoTime();
+                if ( storeToDBMS(rFilePathName, localURI, title, content, domainName, contentType) ) {
                     info.append("OK\n");
                 }
                 else {
                     info.append("FAILED\n");
+                    metrics.error("db");
                 }
+                start = metrics.stage(CrawlMetrics.DATABASE).since(start);
 
                 info.append("# ** Storing to index: ");
-                if ( storeToIndex(rFilePathName, lFilePathName, title, content, domainName, contentType) ) {
+                if ( storeToIndex(strURL, rFilePathName, localURI, title, content, domainName, contentType) ) {
                     info.append("OK\n");
                 }
                 else {
                     info.append("FAILED\n");
+                    metrics.error("index");
                 }
+                metrics.stage(CrawlMetrics.INDEX).since(start);
             }
+
+            if (states != null) {
+                putState(states, location, new FetchState(
+                        result.header("ETag"),
+                        result.header("Last-Modified"),
+                        contentType,
+                        contentHash,
+                        System.currentTimeMillis()
+                        ));
+            }
+        }
+        catch (HttpStatusException hse) {
+            metrics.error("HTTP " + hse.getStatus());
+            info.append("# ** " + hse.getMessage() + "\n");
         }
         catch (IOException ioe) {
+            metrics.error(ioe);
             ioe.printStackTrace();
 //            info.append("Failed saving to file " + saveName + " from URL " + url.toString() + " due to a " + ioe.toString() + "\n");
         }
+        catch (ExecutionException ee) {
+            // The fetch failed.
+            metrics.error(ee.getCause());
+            ee.getCause().printStackTrace();
+        }
+        catch (TimeoutException te) {
+            metrics.error(te);
+            info.append("# ** Not fetched within " + spiderman.getFetchTimeout() + " s\n");
+        }
+        catch (InterruptedException ie) {
+            // Preserve interrupt status
+            Thread.currentThread().interrupt();
+        }
         catch (Exception e) {
+            metrics.error(e);
             e.printStackTrace();
         }
         finally {
+            if (fetch == null || (fetch.isDone() && !fetch.isCancelled())) {
+                returnBuffer(page);
+            }
+            else {
+                // The fetcher may still be writing into the buffer; leave it
+                // to the garbage collector rather than to the next spider.
+                fetch.cancel(true);
+            }
+
             info.append("\n");
 
             if(spiderman.isVerbose()) {
-                if(spiderman.isRedirect()) {
-                    try {
-                        printToFile(info, spiderman.getLogFilePath());
-                    }
-                    catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-                else {
-                    printToConsole(info);
-                }
+                // Written asynchronously by the crawl log appender.
+                log.info(info.toString());
             }
         }
     }
 
 
-    private boolean storeToFileSystem(URL url, String file) {
+    /**
+     * Takes a buffer out of the pool, or creates one if none fits.
+     *
+     * @return
+     *     An empty buffer capped at the crawler's maximum body size.
+     */
+    private PageBuffer borrowBuffer() {
+        PageBuffer page = buffers.poll();
+        if (page != null) {
+            pooled.decrementAndGet();
+        }
+        if (page == null || page.getMaximumSize() != spiderman.getMaximumBodySize()) {
+            page = new PageBuffer(spiderman.getMaximumBodySize());
+        }
+
+        return page;
+    } // -- borrowBuffer
+
+
+    /**
+     * Puts a buffer back into the pool, unless the pool is full.
+     *
+     * @param page
+     *     The buffer.
+     */
+    private void returnBuffer(PageBuffer page) {
+        if (pooled.incrementAndGet() > spiderman.getConcurrency()) {
+            pooled.decrementAndGet();
+            return;
+        }
+
+        page.reset();
+        buffers.offer(page);
+    } // -- returnBuffer
+
+
+    /**
+     * Marks the URL a redirect led to as visited, so that links pointing
+     * straight to it do not fetch the same document again.
+     *
+     * @param location
+     *     The final URL of the fetch.
+     */
+    private void redirected(URL location) {
+        try {
+            spiderman.getVisited().add(spiderman.getCanonicalizer().canonicalize(location).toString());
+        }
+        catch (MalformedURLException murle) {
+            // Not one the crawler would follow anyway.
+        }
+    } // -- redirected
+
+
+    /**
+     * Records the state of the fetch under the requested URL, which the
+     * next crawl asks for, and under the final one if redirected.
+     *
+     * @param states
+     *     The fetch states.
+     * @param location
+     *     The final URL of the fetch.
+     * @param state
+     *     The state of the fetch.
+     */
+    private void putState(FetchStateStore states, URL location, FetchState state) {
+        states.put(url.toString(), state);
+        if (!location.equals(url)) {
+            states.put(location.toString(), state);
+        }
+    } // -- putState
+
+
+    /**
+     * Offers the links of the page to the crawler.
+     *
+     * @param extracted
+     *     What was extracted out of the page.
+     * @param location
+     *     The URL the page came from, after any redirects.
+     *
+     * @return
+     *     The number of links accepted by the crawler.
+     */
+    private int pushLinks(ExtractedPage extracted, URL location) {
+        Set<String> links = extracted.getLinks();
+
+        // Links are relative to the page, or to its base if any.
+        URL base = location;
+        if (extracted.getBase() != null) {
+            try {
+                base = URLCanonicalizer.resolve(location, extracted.getBase());
+            }
+            catch (MalformedURLException murle) {
+                // Ignore a broken base.
+            }
+        }
+
+        // Convert each link text to a url and enqueue
+        int linkNumber = 0;
+        Iterator<String> iter = links.iterator();
+
+        while (iter.hasNext()) {
+            try {
+                // Resolve and canonicalize, so that the visited
+                // set sees a single spelling of each URL.
+                URL link = spiderman.getCanonicalizer().canonicalize(base, iter.next());
+                if (spiderman.crawl(new Spider(0, link, level + 1, spiderman)))
+                    linkNumber++;
+            }
+            catch (MalformedURLException murle) {
+                // Ignore malformed and non-HTTP URLs, the link
+                // extractor might have failed.
+            }
+        }
+
+        return linkNumber;
+    } // -- pushLinks
+
+
+    /**
+     * Builds the headers making the request conditional on the page having
+     * changed since its last retrieval.
+     *
+     * @param previous
+     *     The state of the last retrieval; {@code null} if none.
+     *
+     * @return
+     *     The conditional request headers; empty if none apply.
+     */
+    private static Map<String, String> conditionalHeaders(FetchState previous) {
+        if (previous == null) {
+            return Collections.<String, String>emptyMap();
+        }
+
+        Map<String, String> headers = new HashMap<String, String>(4);
+        if (previous.getEtag() != null) {
+            headers.put("If-None-Match", previous.getEtag());
+        }
+        if (previous.getLastModified() != null) {
+            headers.put("If-Modified-Since", previous.getLastModified());
+        }
+
+        return headers;
+    } // -- conditionalHeaders
+
+
+    /**
+     * Computes what the downloaded web document is told apart from copies
+     * by. The extracted text is used if there is any; the raw bytes
+     * otherwise.
+     *
+     * @param page
+     *     The buffer holding the downloaded web document.
+     * @param extracted
+     *     What was extracted out of the web document; {@code null} if it is
+     *     not an HTML page.
+     *
+     * @return
+     *     The exact hash and the SimHash (0 if none) of the web document;
+     *     {@code null} if duplicate detection is off.
+     */
+    private long[] dedupKeys(PageBuffer page, ExtractedPage extracted) {
+        if (spiderman.getDuplicateDetector() == null) {
+            return null;
+        }
+
+        if (extracted != null && !extracted.getContent().isEmpty()) {
+            String text = extracted.getContent();
+            long simhash = SimHash.words(text) >= spiderman.getDedupMinWords() ? SimHash.of(text) : 0;
+            return new long[] { Fingerprint.of(text), simhash };
+        }
+
+        return new long[] { Fingerprint.of(page.array(), 0, page.size()), 0 };
+    } // -- dedupKeys
+
+
+    /**
+     * Checks whether the downloaded web document is a copy of one crawled
+     * before. If not, it is recorded as an original.
+     *
+     * @param keys
+     *     The keys of the web document, as computed by
+     *     {@link #dedupKeys(PageBuffer, ExtractedPage)}.
+     * @param localURI
+     *     Where the web document is to be stored.
+     *
+     * @return
+     *     The original, if the web document is a copy; {@code null} if it is
+     *     not or if duplicate detection is off.
+     */
+    private DuplicateDetector.Match checkDuplicate(long[] keys, String localURI) {
+        if (keys == null) {
+            return null;
+        }
+
+        return spiderman.getDuplicateDetector().check(keys[0], keys[1], localURI);
+    } // -- checkDuplicate
+
+
+    /**
+     * Withdraws the downloaded web document as an original, e.g. because
+     * storing it failed.
+     *
+     * @param keys
+     *     The keys of the web document, as computed by
+     *     {@link #dedupKeys(PageBuffer, ExtractedPage)}.
+     * @param localURI
+     *     Where the web document was to be stored.
+     */
+    private void forgetOriginal(long[] keys, String localURI) {
+        if (keys != null) {
+            spiderman.getDuplicateDetector().forget(keys[0], keys[1], localURI);
+        }
+    } // -- forgetOriginal
+
+
+    /**
+     * Stores the already downloaded web document into the raw store, along
+     * with the headers needed to make sense of it later.
+     *
+     * @param store
+     *     The raw store.
+     * @param page
+     *     The buffer holding the downloaded web document.
+     * @param result
+     *     The outcome of the fetch.
+     * @param contentType
+     *     The content type of the web document; may be {@code null}.
+     *
+     * @return
+     *     {@code true} if everything went smooth; {@code false} otherwise.
+     */
+    private boolean storeRaw(RawStore store, PageBuffer page, FetchResult result, String contentType) {
         boolean success = true;
 
+        Map<String, String> headers = new LinkedHashMap<String, String>(4);
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        for (String name : new String[] { "ETag", "Last-Modified" }) {
+            String value = result.header(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        // The copy is kept under the requested URL; keep where it came from.
+        if (!result.getFinalUrl().equals(url)) {
+            headers.put("Content-Location", result.getFinalUrl().toString());
+        }
+
         try {
-            URLManipulator.streamURLtoFile(url, file);
+            store.put(url, headers, page);
         }
         catch (IOException ioe) {
             ioe.printStackTrace();
@@ -226,11 +606,13 @@ public class Spider implements Runnable {
         }
 
         return success;
-    } // -- storeToFileSystem
+    } // -- storeRaw
 
 
     /**
-     * Stores the given information into a relational database.
+     * Hands the given information off to be stored into a relational
+     * database. The actual write happens asynchronously, in batches; this
+     * method only blocks if the database falls behind the crawl.
      *
      * @param remoteURI
      *     The remote URI of the indexed web document.
@@ -253,73 +635,68 @@ public class Spider implements Runnable {
             ) {
         boolean success = true;
 
+        Content c = toContent(remoteURI, localURI, title, content, domainName, contentType);
 
-        // TODO: Make PERSISTENCE_UNIT_NAME a property of the application.
-        EntityManagerFactory emf = Persistence.createEntityManagerFactory("jWebCrawler");
-        EntityManager em = emf.createEntityManager();
+        try {
+            spiderman.getContentWriter().submit(c);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            success = false;
+        }
 
-        // Begin a new local transaction.
-        em.getTransaction().begin();
+        return success;
+    } // -- storeToDBMS
 
-        // Read the existing entries.
 
-        // Create the content.
+    /**
+     * Builds the database entity of a web document. Its domain and MIME only
+     * carry their name and content type; they are resolved by the
+     * {@link crawler.persistence.ContentWriter}.
+     *
+     * @param remoteURI
+     *     The remote URI of the web document.
+     * @param localURI
+     *     The local URI of the web document.
+     * @param title
+     *     The title of the web document.
+     * @param content
+     *     The content of the web document.
+     * @param domainName
+     *     The domain name of the web document.
+     * @param contentType
+     *     The content type of the web document.
+     *
+     * @return
+     *     The content entity.
+     */
+    static Content toContent(String remoteURI, String localURI, String title,
+            String content, String domainName, String contentType
+            ) {
         Content c = new Content();
         c.setRemoteURI(remoteURI);
         c.setLocalURI(localURI);
         c.setTitle(title);
         c.setContent(content);
 
-        // Create the domain
-        // Check if it already exists.
-        TypedQuery<Domain> dq = em.createQuery("SELECT x FROM Domain x WHERE x.name = '" + domainName + "'", Domain.class);
-        List<Domain> dl = dq.getResultList();
-        Domain d;
-        if (dl.size() == 0) {
-            d = new Domain();
-            d.setName(domainName);
-            // Add this content to the domain's set.
-            d.getContents().add(c);
-        }
-        else {
-            assert (dl.size() == 1);
-            d = dl.remove(0);
-        }
-        // Set the domain for this content...
+        Domain d = new Domain();
+        d.setName(domainName);
         c.setDomain(d);
 
-        // Create the MIME
-        // Check if it already exists.
-        TypedQuery<MIME> mq = em.createQuery("SELECT x FROM MIME x WHERE x.contentType = '" + contentType + "'", MIME.class);
-        List<MIME> ml = mq.getResultList();
-        MIME m;
-        if (ml.size() == 0) {
-            m = new MIME();
-            m.setContentType(contentType);
-            // Add this contents to the MIME's set.
-            m.getContents().add(c);
-        }
-        else {
-            assert (ml.size() == 1);
-            m = ml.remove(0);
-        }
-        // Set the mime for this content...
+        MIME m = new MIME();
+        m.setContentType(contentType);
         c.setMime(m);
 
-        em.persist(c);
-
-        // End the local transaction by commit.
-        em.getTransaction().commit();
-
-        em.close();
-
-        return success;
-    } // -- storeToDBMS
+        return c;
+    }
 
 
     /**
-     * Stores the given information into a <emph>Lucene</emph> index.
+     * Stores the given information into a <emph>Lucene</emph> index,
+     * replacing any previous document of the same URL.
      *
+     * @param url
+     *     The full URL of the indexed web document.
      * @param remoteURI
      *     The remote URI of the indexed web document.
      * @param localURI
@@ -336,25 +713,19 @@ public class Spider implements Runnable {
      * @return
      *     {@code true} if everything went smooth; {@code false} otherwise.
      */
-    private boolean storeToIndex(String remoteURI, String localURI, String title,
-            String content, String domainName, String contentType
+    private boolean storeToIndex(String url, String remoteURI, String localURI,
+            String title, String content, String domainName, String contentType
             ) {
         boolean success = true;
-        IndexWriter iw;
+        ShardedIndexingService is;
 
-        if ( (iw = spiderman.getLuceneIndexWriter()) != null ) {
+        if ( (is = spiderman.getIndexingService()) != null ) {
             // Prepare the document.
-            Document doc = new Document();
-            doc.add(new TextField("remoteURI", remoteURI, Field.Store.YES));
-            doc.add(new TextField("localURI", localURI, Field.Store.YES));
-            doc.add(new TextField("title", title, Field.Store.YES));
-            doc.add(new TextField("content", content, Field.Store.YES));
-            doc.add(new TextField("domainName", domainName, Field.Store.YES));
-            doc.add(new TextField("contentType", contentType, Field.Store.YES));
+            Document doc = is.getSchema().document(url, remoteURI, localURI, title, content, domainName, contentType);
 
             // Write the document into the index.
             try {
-                iw.addDocument(doc);
+                is.updateDocument(doc);
             } catch (IOException e) {
                 e.printStackTrace();
                 success = false;
@@ -368,65 +739,6 @@ public class Spider implements Runnable {
     } // -- writeToIndex
 
 
-    /**
-     * Prepares an HTTP URL connection.
-     *
-     * @param url
-     *     The URL to connect to.
-     *
-     * @return An established HTTP connection to the given URL.
-     *
-     * @throws IOException
-     */
-    private HttpURLConnection initHttpConn(URL url)
-            throws IOException {
-        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-
-        String agent = WebCrawlerConfigurator.getInstance().property("agent");
-        String accept = WebCrawlerConfigurator.getInstance().property("accept");
-        int msectimeout = 1000 * WebCrawlerConfigurator.getInstance().propertyInteger("timeout");
-        conn.setDoInput(true);
-        conn.setDoOutput(true);
-        conn.setUseCaches(false);
-        conn.addRequestProperty("User-Agent", agent);
-        conn.addRequestProperty("Accept", accept);
-        conn.addRequestProperty("Cache-Control", "no-cache");
-        conn.setReadTimeout(20000);
-        conn.setConnectTimeout(msectimeout);
-        conn.connect();
-
-        return conn;
-    }
-
-    /**
-     * Prints to standard output.
-     *
-     * @param info
-     *     The string to be printed.
-     */
-    private synchronized void printToConsole(StringBuilder info) {
-        System.out.println(info.toString());
-    }
-
-    /**
-     * Print to a file.
-     *
-     * @param info
-     *     The string to be printed.
-     * @param fileName
-     *     The path to the file to be used.
-     *
-     * @throws IOException
-     */
-    private synchronized void printToFile(StringBuilder info, String filePath)
-            throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filePath, true));
-
-        writer.write(info.toString());
-        writer.close();
-    }
-
-
     // -- Getters / Setters
 
 
@@ -4,28 +4,45 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutionException;
+import java.util.Iterator;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.IndexWriterConfig.OpenMode;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.NIOFSDirectory;
-import org.apache.lucene.util.Version;
-
-import toolbox.web.sitemap.SAXSitemapParser;
-import toolbox.web.sitemap.WebPage;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+
+import crawler.dedup.DuplicateDetector;
+import crawler.fetch.FetchStateStore;
+import crawler.fetch.Fetcher;
+import crawler.fetch.HttpClientFetcher;
+import crawler.fetch.URLConnectionFetcher;
+import crawler.frontier.BloomSeenSet;
+import crawler.frontier.CompletionTracker;
+import crawler.frontier.CrawlBudget;
+import crawler.frontier.DiskFrontier;
+import crawler.frontier.FingerprintSeenSet;
+import crawler.frontier.HostScheduler;
+import crawler.frontier.SeenSet;
+import crawler.frontier.SitemapSource;
+import crawler.frontier.URLCanonicalizer;
+import crawler.index.IndexSchema;
+import crawler.index.ShardedIndexingService;
+import crawler.metrics.CrawlMetrics;
+import crawler.persistence.ContentWriter;
+import crawler.persistence.DimensionCache;
+import crawler.persistence.PersistenceService;
+import crawler.store.Codec;
+import crawler.store.FileTreeStore;
+import crawler.store.RawStore;
+import crawler.store.SegmentStore;
 
 
 /**
@@ -92,13 +109,16 @@ public class WebCrawler {
             "-H\n\tPrint the application's header information.\n" +
             "-i<PATH>\n\tSave index under PATH directory. Can alternatively be handled by setting the \"indexPath\" configuration property.\n" +
             "-m<NUMBER>\n\tSpecify NUMBER of maximum threads in the pool. Can alternatively be handled by setting the \"threadNumber\" configuration property.\n" +
-            "-n<NUMBER>\n\tBound to NUMBER maximum files downloaded. Can alternatively be handled by setting the \"maximumFileNumber\" configuration property.\n" +
+            "-w<MILLISECONDS>\n\tWait at least MILLISECONDS between two requests to the same host. Can alternatively be handled by setting the \"hostDelay\" configuration property.\n" +
+            "-n<NUMBER>\n\tBound to NUMBER maximum files downloaded. Can alternatively be handled by setting the \"maximumFileNumber\" configuration property. The \"maximumBytes\", \"maximumDuration\" (in seconds) and \"maximumDomainPages\" configuration properties bound the crawl further.\n" +
             "-o<PATHTOFILE>\n\tLog messages to the file denoted by PATHTOFILE. If no -o and/or PATHTOFILE is defined then logging will be directed to standard out. Can alternatively be handled by setting the \"logFilePath\" configuration property.\n" +
             "-p<PATH>\n\tSave retrieved files under PATH directory. Can alternatively be handled by setting the \"storagePath\" configuration property.\n" +
 //            "-R\n\tComma-separated list of rejected mimes.\n" +
+            "-r\n\tRe-crawl incrementally, only processing the pages changed since the last crawl. Can alternatively be handled by setting the \"incremental\" configuration property.\n" +
             "-s<URL>\n\tCrawl the pages dictated by the sitemap on this URL Can alternatively be handled by setting the \"sitemapURL\" configuration property.\n" +
             "-t<SECONDS>\n\tSet SECONDS for HTTP connection time-outs. Can alternatively be handled by setting the \"timeout\" configuration property.\n" +
             "-v\n\tBe verbose. Can alternatively be handled by setting the \"verbose\" configuration property.\n" +
+            "-V<NUMBER>\n\tRun each spider on a virtual thread, with at most NUMBER of them running at once, instead of on the thread pool. Can alternatively be handled by setting the \"virtualThreads\" and \"virtualThreadNumber\" configuration properties.\n" +
             "-x\n\tDo not follow the image links. Can alternatively be handled by setting the \"followImgLinks\" configuration property.\n";
 
     /**
@@ -107,14 +127,21 @@ public class WebCrawler {
     private final int threadNumber;
 
     /**
-     * Set whether you want logging output during crawl.
+     * Set whether each spider runs on a virtual thread of its own instead of
+     * on a thread of the pool.
      */
-    private final boolean verbose;
+    private final boolean virtualThreads;
+
+    /**
+     * The maximum number of spiders running at once. The number of threads
+     * in the pool, or the number of virtual threads in virtual-thread mode.
+     */
+    private final int concurrency;
 
     /**
-     * Set whether you want logging output to be redirected to a file.
+     * Set whether you want logging output during crawl.
      */
-    private final boolean redirect;
+    private final boolean verbose;
 
     /**
      * The path to the log file.
@@ -143,6 +170,17 @@ public class WebCrawler {
      */
     private final int timeout;
 
+    /**
+     * The time, in seconds, a spider waits for its document, body included,
+     * before giving up on it.
+     */
+    private final int fetchTimeout;
+
+    /**
+     * The maximum size of a fetched document in bytes; the rest is dropped.
+     */
+    private final int maximumBodySize;
+
     /**
      * How much deep in the link graph will the crawler go in the recursive
      * case. 0 (or less than?!) means the crawler will not descend further down
@@ -177,21 +215,117 @@ public class WebCrawler {
     private final ExecutorService executor;
 
     /**
-     * A Queue of futures for the submitted threads.
+     * Retrieves the web documents for the spiders.
+     */
+    private final Fetcher fetcher;
+
+    /**
+     * The per-host scheduler feeding the thread pool.
+     */
+    private final HostScheduler scheduler;
+
+    /**
+     * The queue of accepted URLs not yet handed to the scheduler.
+     */
+    private final DiskFrontier frontier;
+
+    /**
+     * The maximum number of spiders waiting in the scheduler; the rest wait
+     * in the frontier, possibly on disk.
+     */
+    private final int frontierMemory;
+
+    /**
+     * Keeps track of the outstanding spider jobs.
+     */
+    private final CompletionTracker tracker;
+
+    /**
+     * The time, as in {@link System#nanoTime()}, the crawl started.
+     */
+    private long startTime;
+
+    /**
+     * A set for storing the already visited web pages by the web crawler.
+     * Either exact, keeping 64-bit fingerprints of the URLs, or approximate,
+     * a Bloom filter, depending on the "seenSetMode" configuration property.
+     */
+    private final SeenSet visited;
+
+    /**
+     * The full-text index.
+     */
+    private ShardedIndexingService indexingService = null;
+
+    /**
+     * Where the raw copies of the fetched documents are kept.
      */
-    private final Queue<Future<?>> futures;
+    private final RawStore rawStore;
 
     /**
-     * A map for storing the already visited web pages by the web crawler.
-     * Using {@code ConcurrentMap<K, V>} to allow multiple reads, single write
-     * by the crawler's threads.
+     * The persistence layer shared by all the crawler's spiders.
      */
-    private final ConcurrentMap<String, URL> visited;
+    private final PersistenceService persistenceService;
 
     /**
-     * A writer for full-text indexing.
+     * The cache of the persisted domains and MIMEs.
      */
-    private IndexWriter luceneIndexWriter = null;
+    private final DimensionCache dimensionCache;
+
+    /**
+     * The write-behind stage storing the crawled content into the database.
+     */
+    private final ContentWriter contentWriter;
+
+    /**
+     * Turns the found links into canonical URLs.
+     */
+    private final URLCanonicalizer canonicalizer;
+
+    /**
+     * Tells the copies of the pages crawled before; {@code null} if
+     * duplicate detection is off.
+     */
+    private final DuplicateDetector duplicateDetector;
+
+    /**
+     * Set whether copies are still stored into the database and the index,
+     * pointing to the original's file, rather than skipped altogether.
+     */
+    private final boolean dedupLink;
+
+    /**
+     * The minimum number of words of a text for near copies of it to be
+     * looked for.
+     */
+    private final int dedupMinWords;
+
+    /**
+     * The limits of the crawl.
+     */
+    private final CrawlBudget budget;
+
+    /**
+     * The state of the pages crawled before; {@code null} unless crawling
+     * incrementally.
+     */
+    private FetchStateStore fetchStates = null;
+
+    /**
+     * Streams the sitemaps into the frontier; {@code null} unless the crawl
+     * is assisted by a sitemap.
+     */
+    private SitemapSource sitemapSource = null;
+
+    /**
+     * The per-stage latencies and the throughput of the crawl.
+     */
+    private final CrawlMetrics metrics;
+
+    /**
+     * The time, in seconds, between two summary lines while crawling.
+     */
+    private final int metricsInterval;
 
     /**
      * Constructor.
@@ -200,11 +334,13 @@ public class WebCrawler {
         threadNumber = configurator.propertyInteger("threadNumber");
 //        System.out.println("threadNumber " + threadNumber);
 
+        virtualThreads = configurator.propertyBoolean("virtualThreads");
+        concurrency = virtualThreads ? configurator.propertyInteger("virtualThreadNumber") : threadNumber;
+
         verbose = configurator.propertyBoolean("verbose");
 //        System.out.println("verbose " + verbose);
 
         logFilePath = configurator.property("logFilePath");
-        redirect = (logFilePath.trim().isEmpty() ? false : true);
 //        System.out.println("logFilePath " + logFilePath);
 
         storagePath = configurator.property("storagePath");
@@ -217,6 +353,8 @@ public class WebCrawler {
 //        System.out.println("maximumFileNumber " + maximumFileNumber);
 
         timeout = configurator.propertyInteger("timeout");
+        fetchTimeout = configurator.propertyInteger("fetchTimeout");
+        maximumBodySize = configurator.propertyInteger("maximumBodySize");
 //        System.out.println("timeout " + timeout);
 
         depth = configurator.propertyInteger("depth");
@@ -231,22 +369,193 @@ public class WebCrawler {
         agent = configurator.property("agent");
 //        System.out.println("agent " + agent);
 
-        executor = Executors.newFixedThreadPool(this.threadNumber);
-        futures = new LinkedList<Future<?>>();
-        visited = new ConcurrentHashMap<String, URL>();
+        if (configurator.property("fetcher").equalsIgnoreCase("urlconnection")) {
+            fetcher = new URLConnectionFetcher(agent, configurator.property("accept"), timeout);
+        }
+        else {
+            fetcher = new HttpClientFetcher(
+                    agent,
+                    configurator.property("accept"),
+                    timeout,
+                    configurator.propertyInteger("fetchMaxInFlight")
+                    );
+        }
+
+        // Spiders mostly block on network I/O; in virtual-thread mode they do
+        // not tie a platform thread up while doing so and concurrency is only
+        // bounded by the scheduler.
+        executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(this.threadNumber);
+        scheduler = new HostScheduler(
+                executor,
+                this.concurrency,
+                configurator.propertyInteger("hostConcurrency"),
+                configurator.propertyInteger("hostDelay")
+                );
+        frontierMemory = configurator.propertyInteger("frontierMemory");
+        frontier = new DiskFrontier(
+                new File(configurator.property("frontierPath")),
+                frontierMemory,
+                configurator.propertyInteger("frontierSegmentSize")
+                );
+        tracker = new CompletionTracker();
+        metrics = new CrawlMetrics();
+        metrics.setQueued(new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return scheduler.getQueued() + frontier.size();
+            }
+        });
+        metrics.setInFlight(new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return tracker.getInFlight();
+            }
+        });
+        metrics.setVisited(new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return visited.size();
+            }
+        });
+        metrics.setVisitedBytes(new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return visited.memoryUsage();
+            }
+        });
+        metricsInterval = Math.max(1, configurator.propertyInteger("metricsInterval"));
+        budget = new CrawlBudget(
+                maximumFileNumber,
+                Long.parseLong(configurator.property("maximumBytes")),
+                Long.parseLong(configurator.property("maximumDuration")),
+                configurator.propertyInteger("maximumDomainPages")
+                );
+        String dedupMode = configurator.property("dedupMode");
+        duplicateDetector = dedupMode.equalsIgnoreCase("off") ?
+                null : new DuplicateDetector(configurator.propertyInteger("dedupMaxDistance"));
+        dedupLink = dedupMode.equalsIgnoreCase("link");
+        dedupMinWords = configurator.propertyInteger("dedupMinWords");
+        if (configurator.propertyBoolean("incremental")) {
+            try {
+                fetchStates = new FetchStateStore(new File(configurator.property("fetchStatePath")));
+            }
+            catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+        canonicalizer = new URLCanonicalizer(
+                configurator.propertyBoolean("canonicalSortQuery"),
+                configurator.property("canonicalStripParameters").split(",")
+                );
+        long seenSetExpected = Long.parseLong(configurator.property("seenSetExpected"));
+        if (configurator.property("seenSetMode").equalsIgnoreCase("bloom")) {
+            visited = new BloomSeenSet(
+                    seenSetExpected,
+                    Double.parseDouble(configurator.property("seenSetFalsePositiveRate"))
+                    );
+        }
+        else {
+            visited = new FingerprintSeenSet(seenSetExpected);
+        }
+
+        // Only the content writer threads ever talk to the database.
+        int dbWriterThreads = configurator.propertyInteger("dbWriterThreads");
+        persistenceService = new PersistenceService(
+                configurator.property("persistenceUnit"),
+                dbWriterThreads
+                );
+        dimensionCache = new DimensionCache(persistenceService);
+        contentWriter = new ContentWriter(
+                persistenceService,
+                dimensionCache,
+                dbWriterThreads,
+                configurator.propertyInteger("dbQueueCapacity"),
+                configurator.propertyInteger("dbBatchSize"),
+                configurator.propertyInteger("dbFlushInterval")
+                );
 
         try {
-            Directory directory = new NIOFSDirectory(new File(this.indexPath));
-            Version lv = Version.LUCENE_41;
-            Analyzer a = new EnglishAnalyzer(lv);
-            IndexWriterConfig iwc = new IndexWriterConfig(lv, a);
-            iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
-            iwc.setWriteLockTimeout(20000);
-            luceneIndexWriter = new IndexWriter(directory, iwc);
+            indexingService = openIndex(this.indexPath);
         }
         catch (IOException ioe) {
             ioe.printStackTrace();
         }
+
+        RawStore store;
+        try {
+            store = openRawStore(this.storagePath);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+            store = new FileTreeStore(this.storagePath);
+        }
+        rawStore = store;
+    }
+
+    /**
+     * Opens the full-text index as configured.
+     *
+     * @param indexPath
+     *     The path to the file-system where the index is stored.
+     *
+     * @return
+     *     The indexing service.
+     *
+     * @throws IOException
+     *     If the index could not be opened.
+     */
+    static ShardedIndexingService openIndex(String indexPath)
+            throws IOException {
+        IndexSchema schema = new IndexSchema(
+                configurator.propertyBoolean("indexStoreContent"),
+                configurator.property("indexTitleAnalyzer"),
+                configurator.property("indexContentAnalyzer")
+                );
+
+        return new ShardedIndexingService(
+                indexPath,
+                schema,
+                configurator.propertyInteger("indexShards"),
+                configurator.property("indexShardBy"),
+                Double.parseDouble(configurator.property("indexRamBufferSize")),
+                configurator.propertyInteger("indexCommitDocuments"),
+                configurator.propertyInteger("indexCommitInterval"),
+                configurator.propertyInteger("indexRefreshInterval")
+                );
+    }
+
+    /**
+     * Opens the raw store as configured: a {@link SegmentStore}, or the
+     * one-file-per-URL {@link FileTreeStore} if {@code storageMode} is
+     * {@code files}; either compressing the copies with the
+     * {@code storageCodec}.
+     *
+     * @param storagePath
+     *     The path to the file-system where the raw copies are stored.
+     *
+     * @return
+     *     The raw store.
+     *
+     * @throws IOException
+     *     If the store could not be opened.
+     */
+    static RawStore openRawStore(String storagePath)
+            throws IOException {
+        Codec codec = Codec.forName(
+                configurator.property("storageCodec"),
+                configurator.propertyInteger("storageCompressionLevel")
+                );
+
+        if (configurator.property("storageMode").equalsIgnoreCase("files")) {
+            return new FileTreeStore(storagePath, codec);
+        }
+
+        return new SegmentStore(
+                new File(storagePath),
+                Long.parseLong(configurator.property("storageSegmentSize")),
+                configurator.propertyInteger("storageBufferSize"),
+                codec
+                );
     }
 
     /**
@@ -324,6 +633,10 @@ public class WebCrawler {
 //                        // comma-separated list of rejected extensions.
 //                        configurator.assign("accept", args[i].substring(2, args[i].length()));
 //                        break;
+                    case 'r':
+                        // Only process the pages changed since the last crawl
+                        configurator.assign("incremental", "true");
+                        break;
                     case 's':
                         // Determine the URL given is a sitemap.
                         configurator.assign("sitemapAssisted", "true");
@@ -336,6 +649,17 @@ public class WebCrawler {
                         // Turn on/off verbose mode
                         configurator.assign("verbose", "true");
                         break;
+                    case 'w':
+                        // Politeness delay between requests to the same host
+                        configurator.assign("hostDelay", args[i].substring(2, args[i].length()));
+                        break;
+                    case 'V':
+                        // Run the spiders on virtual threads
+                        configurator.assign("virtualThreads", "true");
+                        if (args[i].length() > 2) {
+                            configurator.assign("virtualThreadNumber", args[i].substring(2, args[i].length()));
+                        }
+                        break;
                     case 'x':
                         // don't follow links incorporated into images
                         configurator.assign("followImgLinks", "false");
@@ -354,7 +678,7 @@ public class WebCrawler {
                         // if it there is no url already set, then set it...
                         String tmp = new String(args[i]);
                         try {
-                            url = new URL(tmp);
+                            url = URLCanonicalizer.toURL(tmp);
                         }
                         catch (MalformedURLException murle) {
                             murle.printStackTrace();
@@ -388,8 +712,9 @@ public class WebCrawler {
 
     /**
      * Offers the given spider job to the crawler. The job's URL is checked
-     * whether it is already processed. If not, it is submitted its future
-     * added to the futures' queue. Else the job is discarded.
+     * whether it is already processed and whether the crawl budget allows
+     * for it. If so, it is appended to the frontier. Else the job is
+     * discarded.
      *
      * @param spider
      *     The {@code Runnable} job to be submitted.
@@ -402,14 +727,77 @@ public class WebCrawler {
         boolean accepted = false;
 
         // Put the job's URL to the visited registry.
-        if (visited.putIfAbsent(spider.getUrl().toString(), spider.getUrl()) == null) {
-            futures.add(executor.submit(spider));
-            accepted = true;
+        if (visited.add(spider.getUrl().toString()) && budget.admit(spider.getUrl().getHost())) {
+            // Counted before it is visible in the frontier; another thread
+            // may take it out, and even finish it, right away.
+            tracker.accepted();
+            try {
+                frontier.add(spider.getUrl(), spider.getLevel());
+                accepted = true;
+            }
+            catch (IOException ioe) {
+                ioe.printStackTrace();
+                tracker.discarded();
+            }
+            refill();
         }
 
         return accepted;
     }
 
+    /**
+     * Moves URLs from the frontier to the per-host scheduler until the latter
+     * holds {@code frontierMemory} spiders. It is called whenever a URL is
+     * accepted and whenever a spider finishes. Once the crawl budget is
+     * exhausted, it discards the frontier and the spiders waiting in the
+     * scheduler instead, rather than letting each of them wait out its
+     * host's delay only to find the budget spent.
+     */
+    private void refill() {
+        if (budget.isExhausted()) {
+            tracker.discarded(frontier.clear());
+            tracker.discarded(scheduler.clear());
+            return;
+        }
+
+        try {
+            DiskFrontier.Entry entry;
+            while (scheduler.getQueued() < frontierMemory && (entry = frontier.poll()) != null) {
+                final Spider spider = new Spider(0, entry.getUrl(), entry.getLevel(), this);
+                try {
+                    scheduler.submit(spider.getUrl().getHost(), new Runnable() {
+                        @Override
+                        public void run() {
+                            if (budget.isExhausted()) {
+                                // Draining; only the running spiders finish.
+                                tracker.discarded();
+                                refill();
+                                return;
+                            }
+
+                            tracker.started();
+                            try {
+                                spider.run();
+                            }
+                            finally {
+                                refill();
+                                tracker.finished();
+                            }
+                        }
+                    });
+                }
+                catch (RejectedExecutionException ree) {
+                    // Shutting down.
+                    tracker.discarded();
+                    break;
+                }
+            }
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
     /**
      * Triggers the crawling process.
      *
@@ -417,43 +805,69 @@ public class WebCrawler {
      *     The initial URL.
      */
     public void start(URL url) {
-        System.out.println("Starting crawler...");
+        System.out.println("Starting crawler (" + (virtualThreads ? "virtual threads" : "thread pool") + ", concurrency " + concurrency + ")...");
+        startTime = System.nanoTime();
+        budget.start();
+        metrics.start();
+        metrics.register();
+        if (indexingService != null) {
+            metrics.register("Index", null, indexingService);
+            for (int i = 0; i < indexingService.getShardNumber(); i++) {
+                metrics.register("IndexShard", String.valueOf(i), indexingService.getShard(i));
+            }
+        }
         if (isSitemapAssisted()) {
             System.out.println("Accessing sitemap: " + url.toString());
-            SAXSitemapParser parser = new SAXSitemapParser(url);
-            List<WebPage> webpages = parser.parse();
-            for (WebPage page: webpages) {
-                crawl(new Spider(0, page.getLocation(), 0, this));
-            }
+            sitemapSource = new SitemapSource(
+                    agent,
+                    timeout,
+                    configurator.propertyInteger("sitemapThreads"),
+                    configurator.propertyInteger("sitemapWindow"),
+                    new SitemapSource.Sink() {
+                        @Override
+                        public void offer(URL location, long lastModified, double priority) {
+                            seed(location);
+                        }
+                    },
+                    tracker
+                    );
+            sitemapSource.submit(url);
         }
         else {
-            crawl(new Spider(0, url, 0, this));
+            seed(url);
         }
     }
 
     /**
-     * <p>
-     * Waits on the futures queue and consumes them. This function blocks until
-     * all futures are consumed (a.k.a. all submitted spider jobs have
-     * finished).
-     * </p>
+     * Offers a starting URL to the crawler, in its canonical form.
      *
-     * <p>
-     * It seems that this function is not the optimal solution to the problem of
-     * "waiting until all tasks are finished before shutting down the executor".
-     * Not sure it works properly at all situations. Needs rework.
-     * </p>
+     * @param url
+     *     The starting URL.
+     */
+    private void seed(URL url) {
+        try {
+            crawl(new Spider(0, canonicalizer.canonicalize(url), 0, this));
+        }
+        catch (MalformedURLException murle) {
+            System.out.println("Warning: Ignoring " + url + ": " + murle.getMessage());
+        }
+    }
+
+    /**
+     * Waits until all accepted URLs have been crawled, printing a summary of
+     * the metrics every {@code metricsInterval} seconds.
      */
     public void block() {
-        while (!futures.isEmpty()) {
-            System.out.println(futures.size());
-            try {
-                futures.remove().get();
-            }
-            catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+        try {
+            while (!tracker.awaitQuiescence(metricsInterval, TimeUnit.SECONDS)) {
+                System.out.println(metrics.summary());
             }
         }
+        catch (InterruptedException ie) {
+            ie.printStackTrace();
+            // Preserve interrupt status
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -470,6 +884,10 @@ public class WebCrawler {
      */
     public void stop() {
         System.out.print("Stopping crawler: ");
+        if (sitemapSource != null) {
+            sitemapSource.close(); // Stop feeding the frontier
+        }
+        scheduler.shutdown(); // Stop dispatching to the pool
         executor.shutdown(); // Disable new tasks from being submitted
         try {
             // Wait a while for existing tasks to terminate
@@ -481,17 +899,113 @@ public class WebCrawler {
                 }
             }
 
-            // Close index writer
+            // Write out what is left of the crawl log; the rest of the
+            // logging is left running for the closes below.
+            ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+            if (loggerFactory instanceof LoggerContext) {
+                Iterator<Appender<ILoggingEvent>> appenders =
+                        ((LoggerContext) loggerFactory).getLogger(Spider.LOG_NAME).iteratorForAppenders();
+                while (appenders.hasNext()) {
+                    appenders.next().stop();
+                }
+            }
+
+            // Commit and close the index
+            try {
+                if (indexingService != null) {
+                    indexingService.close();
+                }
+            }
+            catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+
+            // Release the pooled HTTP connections
+            fetcher.close();
+
+            // Flush the raw copies still buffered
+            try {
+                rawStore.close();
+            }
+            catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+
+            // Keep the state of the crawled pages for the next crawl
             try {
-                if (luceneIndexWriter != null) {
-                    luceneIndexWriter.close();
+                if (fetchStates != null) {
+                    fetchStates.close();
                 }
             }
             catch (IOException ioe) {
                 ioe.printStackTrace();
             }
 
+            // Discard the frontier's segments
+            frontier.close();
+
+            // Flush the pending content and release the database connections
+            contentWriter.close();
+            persistenceService.close();
+
             System.out.println("OK\n");
+
+            // Throughput, to compare the execution modes
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.println(String.format(
+                    "Crawled %d pages in %.1f s (%.2f pages/s) on %s with concurrency %d.",
+                    tracker.getCompleted(),
+                    seconds,
+                    tracker.getCompleted() / Math.max(seconds, 1e-3),
+                    virtualThreads ? "virtual threads" : "a thread pool",
+                    concurrency
+                    ));
+            System.out.println(metrics.summary());
+            if (sitemapSource != null) {
+                System.out.println(String.format(
+                        "Read %d entries from %d sitemaps (%d failed).",
+                        sitemapSource.getEntries(),
+                        sitemapSource.getSitemaps(),
+                        sitemapSource.getFailures()
+                        ));
+            }
+            if (budget.getReached() != null) {
+                System.out.println("Stopped admitting pages on reaching the " + budget.getReached() + ".");
+            }
+            if (indexingService != null) {
+                System.out.println(String.format(
+                        "Indexed %d documents in %d shards with %d commits (%.1f ms average, %d ms maximum).",
+                        indexingService.getDocuments(),
+                        indexingService.getShardNumber(),
+                        indexingService.getCommits(),
+                        indexingService.getAverageCommitTime(),
+                        indexingService.getMaximumCommitTime()
+                        ));
+            }
+            System.out.println(String.format(
+                    "Saw %d URLs, taking %.1f MB in the visited set.",
+                    visited.size(),
+                    visited.memoryUsage() / 1048576.0
+                    ));
+            System.out.println(String.format(
+                    "Cached %d domains (%d hits, %d misses) and %d MIMEs (%d hits, %d misses).",
+                    dimensionCache.getDomainCount(),
+                    dimensionCache.getDomainHits(),
+                    dimensionCache.getDomainMisses(),
+                    dimensionCache.getMimeCount(),
+                    dimensionCache.getMimeHits(),
+                    dimensionCache.getMimeMisses()
+                    ));
+            if (duplicateDetector != null) {
+                System.out.println(String.format(
+                        "Found %d exact and %d near copies out of %d pages, saving %d bytes and %d writes.",
+                        duplicateDetector.getExactDuplicates(),
+                        duplicateDetector.getNearDuplicates(),
+                        duplicateDetector.getChecked(),
+                        duplicateDetector.getBytesSaved(),
+                        duplicateDetector.getWritesSaved()
+                        ));
+            }
         }
         catch (InterruptedException ie) {
             ie.printStackTrace();
@@ -501,6 +1015,9 @@ public class WebCrawler {
             // Preserve interrupt status
             Thread.currentThread().interrupt();
         }
+        finally {
+            metrics.unregister();
+        }
     }
 
 
@@ -518,25 +1035,35 @@ public class WebCrawler {
     }
 
     /**
-     * Gets the verbose switch.
+     * Gets the virtual threads switch.
      *
      * @return
-     *     {@code true} if the verbose mode is enabled; {@code false}
-     *         otherwise.
+     *     {@code true} if the spiders run on virtual threads; {@code false}
+     *     if they run on the thread pool.
      */
-    public boolean isVerbose() {
-        return verbose;
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Gets the maximum number of spiders running at once.
+     *
+     * @return
+     *     The crawl's concurrency.
+     */
+    public int getConcurrency() {
+        return concurrency;
     }
 
     /**
-     * Gets the redirect switch.
+     * Gets the verbose switch.
      *
      * @return
-     *     {@code true} if the redirect mode is enabled; {@code false}
+     *     {@code true} if the verbose mode is enabled; {@code false}
      *         otherwise.
      */
-    public boolean isRedirect() {
-        return redirect;
+    public boolean isVerbose() {
+        return verbose;
     }
 
     /**
@@ -560,6 +1087,16 @@ public class WebCrawler {
         return storagePath;
     }
 
+    /**
+     * Gets the store of the raw copies of the fetched documents.
+     *
+     * @return
+     *     The raw store.
+     */
+    public RawStore getRawStore() {
+        return rawStore;
+    }
+
     /**
      * Gets the the path to the file-system where the index will be stored
      * into.
@@ -591,6 +1128,26 @@ public class WebCrawler {
         return timeout;
     }
 
+    /**
+     * Gets the time a spider waits for its document.
+     *
+     * @return
+     *     The time, in seconds, the whole fetch may take.
+     */
+    public int getFetchTimeout() {
+        return fetchTimeout;
+    }
+
+    /**
+     * Gets the maximum size of a fetched document.
+     *
+     * @return
+     *     The maximum size in bytes.
+     */
+    public int getMaximumBodySize() {
+        return maximumBodySize;
+    }
+
     /**
      * Gets the number of levels that crawling should take place.
      *
@@ -644,33 +1201,179 @@ public class WebCrawler {
     }
 
     /**
-     * Gets the web crawler's futures.
+     * Gets the web crawler's fetcher.
      *
      * @return
-     *     The futures.
+     *     The fetcher.
      */
-    public Queue<Future<?>> getFutures() {
-        return futures;
+    public Fetcher getFetcher() {
+        return fetcher;
+    }
+
+    /**
+     * Gets the web crawler's per-host scheduler.
+     *
+     * @return
+     *     The scheduler.
+     */
+    public HostScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Gets the web crawler's frontier.
+     *
+     * @return
+     *     The frontier.
+     */
+    public DiskFrontier getFrontier() {
+        return frontier;
+    }
+
+    /**
+     * Gets the web crawler's tracker of outstanding spider jobs.
+     *
+     * @return
+     *     The completion tracker.
+     */
+    public CompletionTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Gets the per-stage latencies and the throughput of the crawl.
+     *
+     * @return
+     *     The crawl metrics.
+     */
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the limits of the crawl.
+     *
+     * @return
+     *     The crawl budget.
+     */
+    public CrawlBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the state of the pages crawled before.
+     *
+     * @return
+     *     The fetch state store; {@code null} unless crawling
+     *     incrementally.
+     */
+    public FetchStateStore getFetchStates() {
+        return fetchStates;
+    }
+
+    /**
+     * Gets the web crawler's duplicate detector.
+     *
+     * @return
+     *     The duplicate detector; {@code null} if duplicate detection is
+     *     off.
+     */
+    public DuplicateDetector getDuplicateDetector() {
+        return duplicateDetector;
+    }
+
+    /**
+     * Gets whether copies are linked to their original rather than skipped.
+     *
+     * @return
+     *     {@code true} if copies are still stored into the database and the
+     *     index; {@code false} if they are skipped altogether.
+     */
+    public boolean isDedupLink() {
+        return dedupLink;
+    }
+
+    /**
+     * Gets the minimum number of words of a text for near copies of it to
+     * be looked for.
+     *
+     * @return
+     *     The minimum number of words.
+     */
+    public int getDedupMinWords() {
+        return dedupMinWords;
+    }
+
+    /**
+     * Gets the web crawler's URL canonicalizer.
+     *
+     * @return
+     *     The canonicalizer the found links go through.
+     */
+    public URLCanonicalizer getCanonicalizer() {
+        return canonicalizer;
     }
 
     /**
      * Gets the web crawler's visited URLs.
      *
      * @return
-     *     A map containing the web crawler's visited URLs.
+     *     A set containing the web crawler's visited URLs.
      */
-    public ConcurrentMap<String, URL> getVisited() {
+    public SeenSet getVisited() {
         return visited;
     }
 
     /**
-     * Gets the web crawler's writer used for full-text indexing.
+     * Gets the web crawler's writer used for full-text indexing. With more
+     * than one shard, this is the writer of the first one only.
      *
      * @return
      *     The web crawler's lucene index writer.
      */
     public IndexWriter getLuceneIndexWriter() {
-        return luceneIndexWriter;
+        return indexingService == null ? null : indexingService.getShard(0).getWriter();
+    }
+
+    /**
+     * Gets the web crawler's full-text index.
+     *
+     * @return
+     *     The web crawler's indexing service; {@code null} if the index
+     *     could not be opened.
+     */
+    public ShardedIndexingService getIndexingService() {
+        return indexingService;
+    }
+
+    /**
+     * Gets the web crawler's persistence layer.
+     *
+     * @return
+     *     The web crawler's persistence service.
+     */
+    public PersistenceService getPersistenceService() {
+        return persistenceService;
+    }
+
+    /**
+     * Gets the web crawler's cache of the persisted domains and MIMEs.
+     *
+     * @return
+     *     The web crawler's dimension cache.
+     */
+    public DimensionCache getDimensionCache() {
+        return dimensionCache;
+    }
+
+    /**
+     * Gets the web crawler's write-behind stage for the database.
+     *
+     * @return
+     *     The web crawler's content writer.
+     */
+    public ContentWriter getContentWriter() {
+        return contentWriter;
     }
 
 }
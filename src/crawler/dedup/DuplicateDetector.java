@@ -0,0 +1,323 @@
+package crawler.dedup;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import crawler.frontier.Fingerprint;
+
+/**
+ * <p>
+ * Tells whether a crawled document is a copy of one crawled before, so that
+ * it need not be stored and indexed again.
+ * </p>
+ *
+ * <p>
+ * Exact copies are told by a 64-bit hash of their content, which is looked
+ * up in a concurrent map. Near copies are told by their {@link SimHash}: two
+ * documents are near copies if their SimHashes differ in at most
+ * {@code maxDistance} bits. To avoid comparing against every document seen,
+ * the SimHashes are split into {@code maxDistance + 1} bands and indexed by
+ * each of them; two SimHashes this close must agree on at least one band, so
+ * only the documents sharing a band are compared. The buckets are capped, so
+ * a very common band may let a near copy through, never the other way round.
+ * </p>
+ *
+ * <p>
+ * Two copies checked at the very same time may both be taken for originals.
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author billy
+ */
+public class DuplicateDetector {
+
+    /**
+     * The maximum number of documents compared against per band.
+     */
+    private static final int MAX_BUCKET = 64;
+
+    /**
+     * The maximum Hamming distance of near copies.
+     */
+    private final int maxDistance;
+
+    private final int bands;
+
+    private final int bandWidth;
+
+    /**
+     * The local URI of the original of each exact hash.
+     */
+    private final ConcurrentMap<Long, String> exact = new ConcurrentHashMap<Long, String>();
+
+    /**
+     * The originals by band of their SimHash.
+     */
+    private final ConcurrentMap<Long, Queue<Original>> near =
+            new ConcurrentHashMap<Long, Queue<Original>>();
+
+    private final AtomicLong checked = new AtomicLong();
+
+    private final AtomicLong exactDuplicates = new AtomicLong();
+
+    private final AtomicLong nearDuplicates = new AtomicLong();
+
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    private final AtomicLong writesSaved = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxDistance
+     *     The maximum number of bits the SimHashes of near copies differ in;
+     *     between 0 and 63.
+     */
+    public DuplicateDetector(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(63, maxDistance));
+        this.bands = this.maxDistance + 1;
+        this.bandWidth = 64 / bands;
+    }
+
+    /**
+     * Checks a document against the ones seen so far, and records it if it
+     * is an original.
+     *
+     * @param exactHash
+     *     The hash of the document's content.
+     * @param simhash
+     *     The SimHash of the document's text; 0 to only look for exact
+     *     copies, e.g. if the text is too short to be told apart reliably.
+     * @param localURI
+     *     Where the document is stored.
+     *
+     * @return
+     *     The original, if the document is a copy; {@code null} otherwise.
+     */
+    public Match check(long exactHash, long simhash, String localURI) {
+        checked.incrementAndGet();
+
+        String original = exact.putIfAbsent(exactHash, localURI);
+        if (original != null) {
+            exactDuplicates.incrementAndGet();
+            return new Match(original, true);
+        }
+        if (simhash == 0) {
+            return null;
+        }
+
+        for (int b = 0; b < bands; b++) {
+            Queue<Original> bucket = near.get(bandKey(simhash, b));
+            if (bucket != null) {
+                for (Original o : bucket) {
+                    if (SimHash.distance(simhash, o.simhash) <= maxDistance) {
+                        // Later exact copies of this one point to the original.
+                        exact.replace(exactHash, localURI, o.localURI);
+                        nearDuplicates.incrementAndGet();
+                        return new Match(o.localURI, false);
+                    }
+                }
+            }
+        }
+
+        Original o = new Original(simhash, localURI);
+        for (int b = 0; b < bands; b++) {
+            Long key = bandKey(simhash, b);
+            Queue<Original> bucket = near.get(key);
+            if (bucket == null) {
+                Queue<Original> created = new ConcurrentLinkedQueue<Original>();
+                bucket = near.putIfAbsent(key, created);
+                if (bucket == null) {
+                    bucket = created;
+                }
+            }
+            if (bucket.size() < MAX_BUCKET) {
+                bucket.add(o);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Withdraws an original recorded by {@link #check(long, long, String)},
+     * e.g. because storing it failed, so that later copies are not taken
+     * for copies of a document that does not exist. Copies found in the
+     * meantime still point to it.
+     *
+     * @param exactHash
+     *     The hash of the document's content.
+     * @param simhash
+     *     The SimHash of the document's text; 0 if none was checked.
+     * @param localURI
+     *     Where the document was to be stored.
+     */
+    public void forget(long exactHash, long simhash, String localURI) {
+        exact.remove(exactHash, localURI);
+        if (simhash == 0) {
+            return;
+        }
+
+        for (int b = 0; b < bands; b++) {
+            Queue<Original> bucket = near.get(bandKey(simhash, b));
+            if (bucket != null) {
+                Iterator<Original> iter = bucket.iterator();
+                while (iter.hasNext()) {
+                    Original o = iter.next();
+                    if (o.simhash == simhash && o.localURI.equals(localURI)) {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Records what skipping a copy saved.
+     *
+     * @param bytes
+     *     The number of bytes not written.
+     * @param writes
+     *     The number of writes (file, database row, index document) not
+     *     done.
+     */
+    public void saved(long bytes, int writes) {
+        bytesSaved.addAndGet(bytes);
+        writesSaved.addAndGet(writes);
+    }
+
+    /**
+     * Gets the key of a band of a SimHash.
+     *
+     * @param simhash
+     *     The SimHash.
+     * @param band
+     *     The band.
+     *
+     * @return
+     *     The key of the band's bucket.
+     */
+    private Long bandKey(long simhash, int band) {
+        int shift = band * bandWidth;
+        int width = band == bands - 1 ? 64 - shift : bandWidth;
+        long value = simhash >>> shift;
+        if (width < 64) {
+            value &= (1L << width) - 1;
+        }
+
+        // Keep the same value of different bands apart.
+        return Fingerprint.mix(value + band);
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the number of documents checked so far.
+     *
+     * @return
+     *     The number of checked documents.
+     */
+    public long getChecked() {
+        return checked.get();
+    }
+
+    /**
+     * Gets the number of exact copies found so far.
+     *
+     * @return
+     *     The number of exact copies.
+     */
+    public long getExactDuplicates() {
+        return exactDuplicates.get();
+    }
+
+    /**
+     * Gets the number of near copies found so far.
+     *
+     * @return
+     *     The number of near copies.
+     */
+    public long getNearDuplicates() {
+        return nearDuplicates.get();
+    }
+
+    /**
+     * Gets the number of bytes not written thanks to the copies found.
+     *
+     * @return
+     *     The saved bytes.
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * Gets the number of writes not done thanks to the copies found.
+     *
+     * @return
+     *     The saved writes.
+     */
+    public long getWritesSaved() {
+        return writesSaved.get();
+    }
+
+
+    /**
+     * An original document, as indexed by its SimHash bands.
+     */
+    private static class Original {
+
+        private final long simhash;
+
+        private final String localURI;
+
+        Original(long simhash, String localURI) {
+            this.simhash = simhash;
+            this.localURI = localURI;
+        }
+    }
+
+
+    /**
+     * The original a document was found to be a copy of.
+     */
+    public static class Match {
+
+        private final String original;
+
+        private final boolean exact;
+
+        Match(String original, boolean exact) {
+            this.original = original;
+            this.exact = exact;
+        }
+
+        /**
+         * Gets where the original is stored.
+         *
+         * @return
+         *     The local URI of the original.
+         */
+        public String getOriginal() {
+            return original;
+        }
+
+        /**
+         * Gets whether the document is an exact copy.
+         *
+         * @return
+         *     {@code true} if it is an exact copy; {@code false} if a near
+         *     one.
+         */
+        public boolean isExact() {
+            return exact;
+        }
+    }
+
+}
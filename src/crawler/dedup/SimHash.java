@@ -0,0 +1,115 @@
+package crawler.dedup;
+
+import crawler.frontier.Fingerprint;
+
+/**
+ * <p>
+ * Computes the 64-bit SimHash of a text.
+ * </p>
+ *
+ * <p>
+ * Every word of the text is hashed to 64 bits; each bit of the SimHash is
+ * set if more words have it set than not. Texts differing in only a few
+ * words thus get SimHashes differing in only a few bits, and near-duplicate
+ * texts can be told by the Hamming distance of their SimHashes.
+ * </p>
+ *
+ * @author billy
+ */
+public final class SimHash {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    /**
+     * Computes the SimHash of a text. Words are runs of letters and digits,
+     * compared case-insensitively.
+     *
+     * @param text
+     *     The text.
+     *
+     * @return
+     *     The SimHash; 0 if the text has no words.
+     */
+    public static long of(CharSequence text) {
+        int[] votes = new int[64];
+        int words = 0;
+
+        long h = FNV_OFFSET_BASIS;
+        boolean inWord = false;
+        int n = text.length();
+        for (int i = 0; i <= n; i++) {
+            char c = i < n ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                h ^= Character.toLowerCase(c);
+                h *= FNV_PRIME;
+                inWord = true;
+            }
+            else if (inWord) {
+                long w = Fingerprint.mix(h);
+                for (int b = 0; b < 64; b++) {
+                    votes[b] += ((w >>> b) & 1) == 1 ? 1 : -1;
+                }
+                words++;
+                h = FNV_OFFSET_BASIS;
+                inWord = false;
+            }
+        }
+
+        if (words == 0) {
+            return 0;
+        }
+
+        long simhash = 0;
+        for (int b = 0; b < 64; b++) {
+            if (votes[b] > 0) {
+                simhash |= 1L << b;
+            }
+        }
+
+        return simhash;
+    }
+
+    /**
+     * Counts the words of a text, as {@link #of(CharSequence)} sees them.
+     *
+     * @param text
+     *     The text.
+     *
+     * @return
+     *     The number of words.
+     */
+    public static int words(CharSequence text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean letter = Character.isLetterOrDigit(text.charAt(i));
+            if (letter && !inWord) {
+                words++;
+            }
+            inWord = letter;
+        }
+
+        return words;
+    }
+
+    /**
+     * Gets the number of bits two SimHashes differ in.
+     *
+     * @param a
+     *     The one SimHash.
+     * @param b
+     *     The other SimHash.
+     *
+     * @return
+     *     The Hamming distance.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+}
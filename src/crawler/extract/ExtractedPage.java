@@ -0,0 +1,83 @@
+package crawler.extract;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * What is extracted out of a single HTML page.
+ *
+ * @author billy
+ */
+public class ExtractedPage {
+
+    private final String title;
+
+    private final String content;
+
+    private final Set<String> links;
+
+    private final String base;
+
+    /**
+     * Constructor.
+     *
+     * @param title
+     *     The title of the page; empty if none was found.
+     * @param content
+     *     The text content of the page, stripped of markup.
+     * @param links
+     *     The links of the page; empty if links were not extracted.
+     * @param base
+     *     The {@code href} of the page's {@code base} element; {@code null}
+     *     if none was found.
+     */
+    public ExtractedPage(String title, String content, Set<String> links, String base) {
+        this.title = title == null ? "" : title;
+        this.content = content == null ? "" : content;
+        this.links = links == null ? Collections.<String>emptySet() : links;
+        this.base = base;
+    }
+
+    /**
+     * Gets the title of the page.
+     *
+     * @return
+     *     The title; empty if none was found.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Gets the text content of the page.
+     *
+     * @return
+     *     The content, stripped of markup.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Gets the links of the page, as they appear in it.
+     *
+     * @return
+     *     The links; empty if links were not extracted.
+     */
+    public Set<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Gets the URL the relative links of the page are relative to, if other
+     * than that of the page itself.
+     *
+     * @return
+     *     The {@code href} of the page's {@code base} element; {@code null}
+     *     if none was found.
+     */
+    public String getBase() {
+        return base;
+    }
+
+}
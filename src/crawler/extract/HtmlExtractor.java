@@ -0,0 +1,903 @@
+package crawler.extract;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * A streaming, single-pass HTML extractor.
+ * </p>
+ *
+ * <p>
+ * The raw bytes of a page are decoded chunk by chunk into a fixed buffer and
+ * fed through a small tokenizer, which collects the title, the text content
+ * stripped of markup (with whitespace collapsed and the common entities
+ * decoded) and the links, all at once. Tag and attribute names are matched
+ * case-insensitively in place; the page is never copied, lower-cased or
+ * scanned again. Apart from what is extracted, the memory used per page is
+ * fixed, and what is extracted is capped as well.
+ * </p>
+ *
+ * <p>
+ * If the page holds the {@link PageExtractor#CONTENT_START content} and
+ * {@link PageExtractor#CONTENT_END footer} markers, only the text in between
+ * makes up the content; otherwise the whole text of the page does. The text
+ * of {@code script} and {@code style} elements is skipped. The links are
+ * taken from the {@code href} of {@code a} and {@code area} and the
+ * {@code src} of {@code frame}, {@code iframe} and, optionally,
+ * {@code img}, as they appear in the page; the {@code href} of the
+ * {@code base} element is kept aside to resolve them against.
+ * </p>
+ *
+ * <p>
+ * Instances are meant to be reused across pages. This class is not
+ * thread-safe.
+ * </p>
+ *
+ * @author billy
+ */
+public class HtmlExtractor {
+
+    /**
+     * The size of the decoded chunks.
+     */
+    private static final int CHUNK = 8192;
+
+    private static final int MAX_NAME = 16;
+
+    private static final int MAX_VALUE = 2048;
+
+    private static final int MAX_TITLE = 1024;
+
+    private static final int MAX_COMMENT = 64;
+
+    private static final int MAX_ENTITY = 10;
+
+    /**
+     * The maximum capacity of the content builder retained between pages.
+     */
+    private static final int RETAINED_CAPACITY = 256 * 1024;
+
+    private static final String CONTENT_MARK = mark(PageExtractor.CONTENT_START);
+
+    private static final String FOOTER_MARK = mark(PageExtractor.CONTENT_END);
+
+    private static final char[] SCRIPT_END = "</script".toCharArray();
+
+    private static final char[] STYLE_END = "</style".toCharArray();
+
+    // -- Tokenizer states
+
+    private static final int TEXT = 0;
+
+    private static final int TAG_OPEN = 1;
+
+    private static final int TAG_NAME = 2;
+
+    private static final int END_TAG_NAME = 3;
+
+    private static final int BEFORE_ATTR = 4;
+
+    private static final int ATTR_NAME = 5;
+
+    private static final int AFTER_ATTR_NAME = 6;
+
+    private static final int BEFORE_VALUE = 7;
+
+    private static final int VALUE_DQ = 8;
+
+    private static final int VALUE_SQ = 9;
+
+    private static final int VALUE_UQ = 10;
+
+    private static final int MARKUP_DECL = 11;
+
+    private static final int COMMENT = 12;
+
+    private static final int BOGUS = 13;
+
+    private static final int RAWTEXT = 14;
+
+    /**
+     * The maximum number of characters of content extracted.
+     */
+    private final int maxContent;
+
+    /**
+     * The maximum number of links extracted.
+     */
+    private final int maxLinks;
+
+    private final CharBuffer chunk = CharBuffer.allocate(CHUNK);
+
+    private final char[] name = new char[MAX_NAME];
+
+    private final char[] attr = new char[MAX_NAME];
+
+    private final char[] comment = new char[MAX_COMMENT];
+
+    private final char[] entity = new char[MAX_ENTITY];
+
+    private final StringBuilder value = new StringBuilder(256);
+
+    private final StringBuilder title = new StringBuilder(128);
+
+    private StringBuilder content = new StringBuilder(16 * 1024);
+
+    private Set<String> links;
+
+    private String base;
+
+    private CharsetDecoder decoder;
+
+    private int state;
+
+    private int nameLength;
+
+    private boolean nameOverflow;
+
+    private int attrLength;
+
+    private boolean valueOverflow;
+
+    /**
+     * The attribute holding a link in the current tag, if any.
+     */
+    private String linkAttr;
+
+    /**
+     * Whether the current attribute value is a link.
+     */
+    private boolean capturing;
+
+    /**
+     * Whether the current tag is the {@code base} element.
+     */
+    private boolean baseTag;
+
+    private int commentLength;
+
+    private int dashes;
+
+    private int entityLength;
+
+    private char[] rawEnd;
+
+    private int rawMatch;
+
+    private boolean inTitle;
+
+    private boolean titleDone;
+
+    /**
+     * Whether the text currently goes into the content.
+     */
+    private boolean collecting;
+
+    /**
+     * Whether the content marker has been met.
+     */
+    private boolean marked;
+
+    private boolean withLinks;
+
+    private boolean followImgLinks;
+
+    /**
+     * Constructor.
+     *
+     * @param maxContent
+     *     The maximum number of characters of content extracted.
+     * @param maxLinks
+     *     The maximum number of links extracted.
+     */
+    public HtmlExtractor(int maxContent, int maxLinks) {
+        this.maxContent = maxContent;
+        this.maxLinks = maxLinks;
+    }
+
+    /**
+     * Extracts the title, content and links out of a page.
+     *
+     * @param bytes
+     *     The raw page.
+     * @param length
+     *     The number of valid bytes.
+     * @param charset
+     *     The charset of the page.
+     * @param withLinks
+     *     Whether to extract the links.
+     * @param followImgLinks
+     *     Whether to extract the links of the images as well.
+     *
+     * @return
+     *     The extracted page.
+     */
+    public ExtractedPage extract(byte[] bytes, int length, Charset charset,
+            boolean withLinks, boolean followImgLinks
+            ) {
+        reset(charset);
+        this.withLinks = withLinks;
+        this.followImgLinks = followImgLinks;
+        this.links = withLinks ? new LinkedHashSet<String>() : null;
+
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, length);
+        CoderResult result;
+        do {
+            result = decoder.decode(in, chunk, true);
+            drain();
+        } while (result.isOverflow());
+        while (decoder.flush(chunk).isOverflow()) {
+            drain();
+        }
+        drain();
+
+        if (entityLength > 0) {
+            flushEntity(false);
+        }
+
+        return new ExtractedPage(title.toString().trim(), content.toString().trim(), links, base);
+    }
+
+    /**
+     * Gets ready for the next page.
+     *
+     * @param charset
+     *     The charset of the next page.
+     */
+    private void reset(Charset charset) {
+        if (decoder == null || !decoder.charset().equals(charset)) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        else {
+            decoder.reset();
+        }
+        chunk.clear();
+
+        if (content.capacity() > RETAINED_CAPACITY) {
+            content = new StringBuilder(16 * 1024);
+        }
+        content.setLength(0);
+        title.setLength(0);
+        value.setLength(0);
+
+        state = TEXT;
+        entityLength = 0;
+        linkAttr = null;
+        capturing = false;
+        base = null;
+        inTitle = false;
+        titleDone = false;
+        collecting = true;
+        marked = false;
+    }
+
+    /**
+     * Feeds the decoded chunk through the tokenizer.
+     */
+    private void drain() {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            process(chunk.get());
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Advances the tokenizer by a single character.
+     *
+     * @param c
+     *     The character.
+     */
+    private void process(char c) {
+        if (entityLength > 0) {
+            if (entityLength < MAX_ENTITY && (Character.isLetterOrDigit(c) || c == '#')) {
+                entity[entityLength++] = c;
+                return;
+            }
+            flushEntity(c == ';');
+            if (c == ';') {
+                return;
+            }
+        }
+
+        switch (state) {
+        case TEXT:
+            if (c == '<') {
+                state = TAG_OPEN;
+            }
+            else if (c == '&') {
+                entity[0] = c;
+                entityLength = 1;
+            }
+            else {
+                text(c);
+            }
+            break;
+
+        case TAG_OPEN:
+            if (c == '!') {
+                state = MARKUP_DECL;
+                dashes = 0;
+            }
+            else if (c == '/') {
+                state = END_TAG_NAME;
+                nameLength = 0;
+                nameOverflow = false;
+            }
+            else if (isLetter(c)) {
+                state = TAG_NAME;
+                nameLength = 0;
+                nameOverflow = false;
+                appendName(c);
+            }
+            else if (c == '?') {
+                state = BOGUS;
+            }
+            else {
+                // Not a tag after all.
+                state = TEXT;
+                text('<');
+                process(c);
+            }
+            break;
+
+        case TAG_NAME:
+            if (c == '>') {
+                startTag();
+                endOfStartTag();
+            }
+            else if (isWhitespace(c) || c == '/') {
+                startTag();
+                state = BEFORE_ATTR;
+            }
+            else {
+                appendName(c);
+            }
+            break;
+
+        case END_TAG_NAME:
+            if (c == '>') {
+                endTag();
+                state = TEXT;
+            }
+            else if (isWhitespace(c)) {
+                endTag();
+                state = BOGUS;
+            }
+            else {
+                appendName(c);
+            }
+            break;
+
+        case BEFORE_ATTR:
+            if (c == '>') {
+                endOfStartTag();
+            }
+            else if (!isWhitespace(c) && c != '/') {
+                startAttr(c);
+            }
+            break;
+
+        case ATTR_NAME:
+            if (c == '=') {
+                state = BEFORE_VALUE;
+            }
+            else if (c == '>') {
+                endOfStartTag();
+            }
+            else if (isWhitespace(c)) {
+                state = AFTER_ATTR_NAME;
+            }
+            else if (c == '/') {
+                state = BEFORE_ATTR;
+            }
+            else if (attrLength < MAX_NAME) {
+                attr[attrLength++] = lower(c);
+            }
+            break;
+
+        case AFTER_ATTR_NAME:
+            if (c == '=') {
+                state = BEFORE_VALUE;
+            }
+            else if (c == '>') {
+                endOfStartTag();
+            }
+            else if (!isWhitespace(c) && c != '/') {
+                startAttr(c);
+            }
+            break;
+
+        case BEFORE_VALUE:
+            if (c == '>') {
+                endOfStartTag();
+            }
+            else if (!isWhitespace(c)) {
+                value.setLength(0);
+                valueOverflow = false;
+                capturing = linkAttr != null && attrIs(linkAttr);
+                if (c == '"') {
+                    state = VALUE_DQ;
+                }
+                else if (c == '\'') {
+                    state = VALUE_SQ;
+                }
+                else {
+                    state = VALUE_UQ;
+                    valueChar(c);
+                }
+            }
+            break;
+
+        case VALUE_DQ:
+        case VALUE_SQ:
+            if (c == (state == VALUE_DQ ? '"' : '\'')) {
+                endOfValue();
+                state = BEFORE_ATTR;
+            }
+            else {
+                valueChar(c);
+            }
+            break;
+
+        case VALUE_UQ:
+            if (c == '>') {
+                endOfValue();
+                endOfStartTag();
+            }
+            else if (isWhitespace(c)) {
+                endOfValue();
+                state = BEFORE_ATTR;
+            }
+            else {
+                valueChar(c);
+            }
+            break;
+
+        case MARKUP_DECL:
+            if (c == '-' && ++dashes == 2) {
+                state = COMMENT;
+                commentLength = 0;
+                dashes = 0;
+            }
+            else if (c == '>') {
+                state = TEXT;
+            }
+            else if (c != '-') {
+                // A doctype or the like.
+                state = BOGUS;
+            }
+            break;
+
+        case COMMENT:
+            if (c == '-') {
+                dashes++;
+            }
+            else if (c == '>' && dashes >= 2) {
+                endOfComment();
+                state = TEXT;
+            }
+            else {
+                dashes = 0;
+                if (commentLength < MAX_COMMENT) {
+                    comment[commentLength] = c;
+                }
+                commentLength++;
+            }
+            break;
+
+        case BOGUS:
+            if (c == '>') {
+                state = TEXT;
+            }
+            break;
+
+        case RAWTEXT:
+            if (lower(c) == rawEnd[rawMatch]) {
+                if (++rawMatch == rawEnd.length) {
+                    // Skip the rest of the end tag.
+                    separate();
+                    state = BOGUS;
+                }
+            }
+            else {
+                rawMatch = c == '<' ? 1 : 0;
+            }
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Handles a character of text, i.e. outside of any tag.
+     *
+     * @param c
+     *     The character.
+     */
+    private void text(char c) {
+        if (inTitle) {
+            append(title, c, MAX_TITLE);
+        }
+        else if (collecting) {
+            append(content, c, maxContent);
+        }
+    }
+
+    /**
+     * Appends a character, collapsing whitespace.
+     *
+     * @param sb
+     *     The builder to append to.
+     * @param c
+     *     The character.
+     * @param max
+     *     The maximum length of the builder.
+     */
+    private static void append(StringBuilder sb, char c, int max) {
+        int n = sb.length();
+        if (n >= max) {
+            return;
+        }
+        if (isWhitespace(c)) {
+            if (n > 0 && sb.charAt(n - 1) != ' ') {
+                sb.append(' ');
+            }
+        }
+        else {
+            sb.append(c);
+        }
+    }
+
+    /**
+     * Keeps the words on both sides of a tag apart in the content.
+     */
+    private void separate() {
+        if (collecting && !inTitle) {
+            append(content, ' ', maxContent);
+        }
+    }
+
+    private void appendName(char c) {
+        if (nameLength < MAX_NAME) {
+            name[nameLength++] = lower(c);
+        }
+        else {
+            nameOverflow = true;
+        }
+    }
+
+    private void startAttr(char c) {
+        state = ATTR_NAME;
+        attrLength = 0;
+        attr[attrLength++] = lower(c);
+    }
+
+    /**
+     * Handles the name of a start tag, once read.
+     */
+    private void startTag() {
+        linkAttr = null;
+        baseTag = false;
+        if (withLinks) {
+            if (nameIs("base")) {
+                baseTag = base == null;
+                linkAttr = baseTag ? "href" : null;
+            }
+            else if (nameIs("a") || nameIs("area")) {
+                linkAttr = "href";
+            }
+            else if (nameIs("frame") || nameIs("iframe") || (followImgLinks && nameIs("img"))) {
+                linkAttr = "src";
+            }
+        }
+        separate();
+    }
+
+    /**
+     * Handles the {@code >} of a start tag.
+     */
+    private void endOfStartTag() {
+        state = TEXT;
+        linkAttr = null;
+        capturing = false;
+
+        if (nameIs("title")) {
+            inTitle = !titleDone;
+        }
+        else if (nameIs("script")) {
+            state = RAWTEXT;
+            rawEnd = SCRIPT_END;
+            rawMatch = 0;
+        }
+        else if (nameIs("style")) {
+            state = RAWTEXT;
+            rawEnd = STYLE_END;
+            rawMatch = 0;
+        }
+    }
+
+    /**
+     * Handles the name of an end tag, once read.
+     */
+    private void endTag() {
+        if (nameIs("title") && inTitle) {
+            inTitle = false;
+            titleDone = true;
+        }
+        separate();
+    }
+
+    /**
+     * Handles a character of an attribute value.
+     *
+     * @param c
+     *     The character.
+     */
+    private void valueChar(char c) {
+        if (!capturing) {
+            return;
+        }
+        if (c == '&') {
+            entity[0] = c;
+            entityLength = 1;
+        }
+        else {
+            appendValue(c);
+        }
+    }
+
+    private void appendValue(char c) {
+        if (value.length() < MAX_VALUE) {
+            value.append(c);
+        }
+        else {
+            valueOverflow = true;
+        }
+    }
+
+    /**
+     * Handles the end of an attribute value, keeping it if it is a link.
+     */
+    private void endOfValue() {
+        if (entityLength > 0) {
+            flushEntity(false);
+        }
+        if (!capturing || valueOverflow || (!baseTag && links.size() >= maxLinks)) {
+            capturing = false;
+            return;
+        }
+        capturing = false;
+
+        int start = 0;
+        int end = value.length();
+        while (start < end && isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end || value.charAt(start) == '#'
+                || startsWithIgnoreCase(value, start, "javascript:")
+                || startsWithIgnoreCase(value, start, "mailto:")) {
+            return;
+        }
+
+        if (baseTag) {
+            base = value.substring(start, end);
+        }
+        else {
+            links.add(value.substring(start, end));
+        }
+    }
+
+    /**
+     * Handles the end of a comment, watching for the content markers.
+     */
+    private void endOfComment() {
+        if (commentIs(CONTENT_MARK)) {
+            content.setLength(0);
+            collecting = true;
+            marked = true;
+        }
+        else if (marked && commentIs(FOOTER_MARK)) {
+            collecting = false;
+        }
+    }
+
+    /**
+     * Emits the buffered character reference.
+     *
+     * @param terminated
+     *     Whether it was terminated by a {@code ;}.
+     */
+    private void flushEntity(boolean terminated) {
+        int n = entityLength;
+        entityLength = 0;
+
+        int cp = terminated ? decodeEntity(n) : -1;
+        if (cp >= 0) {
+            if (Character.isBmpCodePoint(cp)) {
+                emit((char) cp);
+            }
+            else {
+                emit(Character.highSurrogate(cp));
+                emit(Character.lowSurrogate(cp));
+            }
+        }
+        else {
+            for (int i = 0; i < n; i++) {
+                emit(entity[i]);
+            }
+            if (terminated) {
+                emit(';');
+            }
+        }
+    }
+
+    /**
+     * Emits a character of a decoded reference to where it belongs.
+     *
+     * @param c
+     *     The character.
+     */
+    private void emit(char c) {
+        if (state == TEXT) {
+            text(c);
+        }
+        else {
+            appendValue(c);
+        }
+    }
+
+    /**
+     * Decodes the buffered character reference.
+     *
+     * @param n
+     *     The number of buffered characters, including the {@code &}.
+     *
+     * @return
+     *     The code point; -1 if not known.
+     */
+    private int decodeEntity(int n) {
+        if (n > 2 && entity[1] == '#') {
+            int cp = 0;
+            boolean hex = entity[2] == 'x' || entity[2] == 'X';
+            for (int i = hex ? 3 : 2; i < n; i++) {
+                int d = Character.digit(entity[i], hex ? 16 : 10);
+                if (d < 0 || cp > 0x10FFFF) {
+                    return -1;
+                }
+                cp = cp * (hex ? 16 : 10) + d;
+            }
+            return Character.isValidCodePoint(cp) && cp > 0 ? cp : -1;
+        }
+        if (entityIs(n, "amp")) {
+            return '&';
+        }
+        if (entityIs(n, "lt")) {
+            return '<';
+        }
+        if (entityIs(n, "gt")) {
+            return '>';
+        }
+        if (entityIs(n, "quot")) {
+            return '"';
+        }
+        if (entityIs(n, "apos")) {
+            return '\'';
+        }
+        if (entityIs(n, "nbsp")) {
+            return ' ';
+        }
+
+        return -1;
+    }
+
+    private boolean entityIs(int n, String s) {
+        if (n - 1 != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (entity[i + 1] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nameIs(String s) {
+        if (nameOverflow || nameLength != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean attrIs(String s) {
+        if (attrLength != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < attrLength; i++) {
+            if (attr[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean commentIs(String s) {
+        if (commentLength > MAX_COMMENT) {
+            return false;
+        }
+        int start = 0;
+        int end = commentLength;
+        while (start < end && isWhitespace(comment[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(comment[end - 1])) {
+            end--;
+        }
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (comment[start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithIgnoreCase(StringBuilder sb, int offset, String prefix) {
+        if (sb.length() - offset < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (lower(sb.charAt(offset + i)) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Gets the text of a marker comment.
+     *
+     * @param comment
+     *     The whole comment, e.g. {@code <!-- MARK -->}.
+     *
+     * @return
+     *     The text of the comment, e.g. {@code MARK}.
+     */
+    private static String mark(String comment) {
+        return comment.substring("<!--".length(), comment.length() - "-->".length()).trim();
+    }
+
+}
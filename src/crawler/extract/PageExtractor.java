@@ -0,0 +1,90 @@
+package crawler.extract;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import crawler.fetch.PageBuffer;
+
+/**
+ * <p>
+ * Extracts the title, the text content and the links out of an HTML page.
+ * </p>
+ *
+ * <p>
+ * Both the spiders and the offline re-indexer go through this class, so that
+ * a re-built index holds exactly what a crawl would have put in it. The work
+ * is done in a single pass over the raw bytes by an {@link HtmlExtractor}
+ * borrowed from a pool.
+ * </p>
+ *
+ * @author billy
+ */
+public final class PageExtractor {
+
+    /**
+     * The marker of the beginning of the content in the crawled pages.
+     */
+    public static final String CONTENT_START = "<!-- ********** CONTENT ********** -->";
+
+    /**
+     * The marker of the end of the content in the crawled pages.
+     */
+    public static final String CONTENT_END = "<!-- ********** FOOTER ********** -->";
+
+    /**
+     * The maximum number of characters of content extracted per page.
+     */
+    public static final int MAX_CONTENT = 1024 * 1024;
+
+    /**
+     * The maximum number of links extracted per page.
+     */
+    public static final int MAX_LINKS = 10000;
+
+    /**
+     * The idle extractors. Like the page buffers, a pool rather than a
+     * {@code ThreadLocal}, since spiders may each run on a virtual thread of
+     * their own.
+     */
+    private static final Queue<HtmlExtractor> extractors =
+            new ConcurrentLinkedQueue<HtmlExtractor>();
+
+    private PageExtractor() {
+    }
+
+    /**
+     * Extracts what is needed out of a page.
+     *
+     * @param page
+     *     The buffer holding the raw page.
+     * @param contentType
+     *     The value of the HTTP {@code Content-Type} header, giving the
+     *     charset of the page; may be {@code null}.
+     * @param withLinks
+     *     Whether to extract the links too.
+     * @param followImgLinks
+     *     Whether to extract the links of the images as well.
+     *
+     * @return
+     *     The extracted page.
+     */
+    public static ExtractedPage extract(PageBuffer page, String contentType,
+            boolean withLinks, boolean followImgLinks
+            ) {
+        HtmlExtractor extractor = extractors.poll();
+        if (extractor == null) {
+            extractor = new HtmlExtractor(MAX_CONTENT, MAX_LINKS);
+        }
+
+        try {
+            return extractor.extract(
+                    page.array(), page.size(), PageBuffer.charsetOf(contentType),
+                    withLinks, followImgLinks
+                    );
+        }
+        finally {
+            extractors.offer(extractor);
+        }
+    }
+
+}
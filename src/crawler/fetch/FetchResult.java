@@ -0,0 +1,226 @@
+package crawler.fetch;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The outcome of retrieving a single web document.
+ *
+ * @author billy
+ */
+public class FetchResult {
+
+    private final URL url;
+
+    /**
+     * The URL the response came from, after any redirects.
+     */
+    private final URL finalUrl;
+
+    private final int status;
+
+    private final String contentType;
+
+    private final long contentLength;
+
+    /**
+     * The response headers, keyed case-insensitively.
+     */
+    private final Map<String, List<String>> headers;
+
+    private final PageBuffer body;
+
+    /**
+     * The time from the request to the response headers in nanoseconds.
+     */
+    private final long responseTime;
+
+    /**
+     * The time spent reading the response body in nanoseconds.
+     */
+    private final long bodyTime;
+
+    /**
+     * Constructor.
+     *
+     * @param url
+     *     The retrieved URL.
+     * @param status
+     *     The HTTP status code of the response.
+     * @param contentType
+     *     The value of the {@code Content-Type} header; may be
+     *     {@code null}.
+     * @param contentLength
+     *     The value of the {@code Content-Length} header; -1 if unknown.
+     * @param headers
+     *     The response headers.
+     * @param body
+     *     The buffer holding the body of the response.
+     */
+    public FetchResult(URL url, int status, String contentType, long contentLength,
+            Map<String, List<String>> headers, PageBuffer body
+            ) {
+        this(url, url, status, contentType, contentLength, headers, body, 0, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param url
+     *     The retrieved URL.
+     * @param finalUrl
+     *     The URL the response came from, after any redirects.
+     * @param status
+     *     The HTTP status code of the response.
+     * @param contentType
+     *     The value of the {@code Content-Type} header; may be
+     *     {@code null}.
+     * @param contentLength
+     *     The value of the {@code Content-Length} header; -1 if unknown.
+     * @param headers
+     *     The response headers.
+     * @param body
+     *     The buffer holding the body of the response.
+     * @param responseTime
+     *     The time from the request to the response headers in
+     *     nanoseconds.
+     * @param bodyTime
+     *     The time spent reading the response body in nanoseconds.
+     */
+    public FetchResult(URL url, URL finalUrl, int status, String contentType, long contentLength,
+            Map<String, List<String>> headers, PageBuffer body, long responseTime, long bodyTime
+            ) {
+        this.url = url;
+        this.finalUrl = finalUrl;
+        this.status = status;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.body = body;
+        this.responseTime = responseTime;
+        this.bodyTime = bodyTime;
+
+        this.headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            // HttpURLConnection reports the status line under a null key.
+            if (e.getKey() != null) {
+                this.headers.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets the first value of the given response header.
+     *
+     * @param name
+     *     The name of the header, in any case.
+     *
+     * @return
+     *     The first value of the header, or {@code null} if absent.
+     */
+    public String header(String name) {
+        List<String> values = headers.get(name);
+        return (values == null || values.isEmpty()) ? null : values.get(0);
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the retrieved URL.
+     *
+     * @return
+     *     The URL.
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets the URL the response came from; it differs from the retrieved
+     * one if the request was redirected. Relative links of the document are
+     * relative to it.
+     *
+     * @return
+     *     The final URL.
+     */
+    public URL getFinalUrl() {
+        return finalUrl;
+    }
+
+    /**
+     * Gets the HTTP status code of the response.
+     *
+     * @return
+     *     The status code.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the content type of the response.
+     *
+     * @return
+     *     The value of the {@code Content-Type} header; may be
+     *     {@code null}.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets the declared length of the response body.
+     *
+     * @return
+     *     The value of the {@code Content-Length} header; -1 if unknown.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Gets the response headers.
+     *
+     * @return
+     *     An unmodifiable, case-insensitive map of the response headers.
+     */
+    public Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Gets the body of the response.
+     *
+     * @return
+     *     The buffer holding the body.
+     */
+    public PageBuffer getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the time from the request to the response headers: connecting,
+     * if need be, and waiting for the server.
+     *
+     * @return
+     *     The time in nanoseconds.
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Gets the time spent reading the response body.
+     *
+     * @return
+     *     The time in nanoseconds.
+     */
+    public long getBodyTime() {
+        return bodyTime;
+    }
+
+}
@@ -0,0 +1,124 @@
+package crawler.fetch;
+
+/**
+ * What is remembered of the last retrieval of a URL, to tell whether it
+ * changed since.
+ *
+ * @author billy
+ */
+public class FetchState {
+
+    private final String etag;
+
+    private final String lastModified;
+
+    private final String contentType;
+
+    private final long contentHash;
+
+    private final long fetchTime;
+
+    /**
+     * Constructor.
+     *
+     * @param etag
+     *     The value of the {@code ETag} header; may be {@code null}.
+     * @param lastModified
+     *     The value of the {@code Last-Modified} header; may be
+     *     {@code null}.
+     * @param contentType
+     *     The value of the {@code Content-Type} header; may be
+     *     {@code null}.
+     * @param contentHash
+     *     The fingerprint of the body.
+     * @param fetchTime
+     *     The time of the retrieval, in milliseconds since the epoch.
+     */
+    public FetchState(String etag, String lastModified, String contentType,
+            long contentHash, long fetchTime
+            ) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.contentHash = contentHash;
+        this.fetchTime = fetchTime;
+    }
+
+    /**
+     * Gets the same content, retrieved again at the given time. The
+     * validators of the new response replace the old ones, so that the next
+     * conditional request matches what the server now sends.
+     *
+     * @param etag
+     *     The new value of the {@code ETag} header; {@code null} to keep
+     *     the old one.
+     * @param lastModified
+     *     The new value of the {@code Last-Modified} header; {@code null}
+     *     to keep the old one.
+     * @param time
+     *     The time of the retrieval, in milliseconds since the epoch.
+     *
+     * @return
+     *     The new state.
+     */
+    public FetchState refetched(String etag, String lastModified, long time) {
+        return new FetchState(
+                etag == null ? this.etag : etag,
+                lastModified == null ? this.lastModified : lastModified,
+                contentType,
+                contentHash,
+                time
+                );
+    }
+
+    /**
+     * Gets the value of the {@code ETag} header.
+     *
+     * @return
+     *     The entity tag; {@code null} if none was sent.
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Gets the value of the {@code Last-Modified} header.
+     *
+     * @return
+     *     The last modification date; {@code null} if none was sent.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Gets the value of the {@code Content-Type} header.
+     *
+     * @return
+     *     The content type; {@code null} if none was sent.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets the fingerprint of the body.
+     *
+     * @return
+     *     The content hash.
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Gets the time of the retrieval.
+     *
+     * @return
+     *     The time in milliseconds since the epoch.
+     */
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+}
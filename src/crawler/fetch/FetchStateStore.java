@@ -0,0 +1,235 @@
+package crawler.fetch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import crawler.frontier.Fingerprint;
+
+/**
+ * <p>
+ * The {@link FetchState} of every URL retrieved so far, kept across crawls
+ * in a local file.
+ * </p>
+ *
+ * <p>
+ * The states are held in memory, keyed by the fingerprint of the URL, and
+ * every change is appended to the file as it happens, so that a crawl
+ * stopped abruptly loses at most the unflushed tail. On start, the file is
+ * replayed, the last record of a URL winning; a truncated last record is
+ * cut off before anything is appended. On {@link #close()}, the file is rewritten with one record per
+ * URL.
+ * </p>
+ *
+ * @author billy
+ */
+public class FetchStateStore {
+
+    private final File file;
+
+    private final ConcurrentMap<Long, FetchState> states =
+            new ConcurrentHashMap<Long, FetchState>();
+
+    /**
+     * The log the changes are appended to.
+     */
+    private DataOutputStream log;
+
+    /**
+     * Constructor. Loads the states of the previous crawls, if any.
+     *
+     * @param file
+     *     The file the states are kept in. It is created if it does not
+     *     exist.
+     *
+     * @throws IOException
+     *     If the file could not be read or opened for appending.
+     */
+    public FetchStateStore(File file)
+            throws IOException {
+        this.file = file;
+
+        if (file.exists()) {
+            // The length of the whole records read.
+            long complete = 0;
+            CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try (DataInputStream in = new DataInputStream(counter)) {
+                while (true) {
+                    long key = in.readLong();
+                    states.put(key, read(in));
+                    complete = counter.count;
+                }
+            }
+            catch (EOFException eofe) {
+                // The end, possibly of a truncated record.
+            }
+
+            // Drop a truncated trailing record, or the ones appended next
+            // would be read misaligned.
+            if (complete < file.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(complete);
+                }
+            }
+        }
+        else if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * Gets the state of a URL.
+     *
+     * @param url
+     *     The URL.
+     *
+     * @return
+     *     The state of the last retrieval; {@code null} if never retrieved.
+     */
+    public FetchState get(String url) {
+        return states.get(Fingerprint.of(url));
+    }
+
+    /**
+     * Records the state of a URL.
+     *
+     * @param url
+     *     The URL.
+     * @param state
+     *     The state of its latest retrieval.
+     */
+    public void put(String url, FetchState state) {
+        long key = Fingerprint.of(url);
+        states.put(key, state);
+
+        synchronized (this) {
+            if (log != null) {
+                try {
+                    log.writeLong(key);
+                    write(log, state);
+                }
+                catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of URLs with a state.
+     *
+     * @return
+     *     The number of URLs.
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * Compacts the file to one record per URL and closes it.
+     *
+     * @throws IOException
+     */
+    public synchronized void close()
+            throws IOException {
+        if (log == null) {
+            return;
+        }
+        log.close();
+        log = null;
+
+        File compacted = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)))) {
+            for (Map.Entry<Long, FetchState> e : states.entrySet()) {
+                out.writeLong(e.getKey());
+                write(out, e.getValue());
+            }
+        }
+        // Either the old or the new file survives a crash, never neither.
+        Files.move(compacted.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(DataOutputStream out, FetchState state)
+            throws IOException {
+        out.writeUTF(state.getEtag() == null ? "" : state.getEtag());
+        out.writeUTF(state.getLastModified() == null ? "" : state.getLastModified());
+        out.writeUTF(state.getContentType() == null ? "" : state.getContentType());
+        out.writeLong(state.getContentHash());
+        out.writeLong(state.getFetchTime());
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read()
+                throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+                throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n)
+                throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static FetchState read(DataInputStream in)
+            throws IOException {
+        String etag = in.readUTF();
+        String lastModified = in.readUTF();
+        String contentType = in.readUTF();
+        long contentHash = in.readLong();
+        long fetchTime = in.readLong();
+
+        return new FetchState(
+                etag.isEmpty() ? null : etag,
+                lastModified.isEmpty() ? null : lastModified,
+                contentType.isEmpty() ? null : contentType,
+                contentHash,
+                fetchTime
+                );
+    }
+
+}
@@ -0,0 +1,59 @@
+package crawler.fetch;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Retrieves web documents on behalf of the spiders.
+ *
+ * Implementations must be safe for concurrent use by the crawler's threads.
+ *
+ * @author billy
+ */
+public interface Fetcher {
+
+    /**
+     * Starts retrieving the given URL. The body of the response is read into
+     * the given buffer, which must not be touched until the returned future
+     * completes.
+     *
+     * @param url
+     *     The URL to be retrieved.
+     * @param buffer
+     *     The buffer to read the body of the response into.
+     *
+     * @return
+     *     A future completed with the result once the whole body is read,
+     *     or exceptionally if the retrieval failed.
+     */
+    default CompletableFuture<FetchResult> fetch(URL url, PageBuffer buffer) {
+        return fetch(url, buffer, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Starts retrieving the given URL with additional request headers, e.g.
+     * to make the request conditional.
+     *
+     * @param url
+     *     The URL to be retrieved.
+     * @param buffer
+     *     The buffer to read the body of the response into.
+     * @param headers
+     *     The additional request headers.
+     *
+     * @return
+     *     A future completed with the result once the whole body is read,
+     *     or exceptionally if the retrieval failed. A {@code 304} response
+     *     leaves the buffer empty. Cancelling it aborts the retrieval, though
+     *     the buffer may still be written to for a while.
+     */
+    CompletableFuture<FetchResult> fetch(URL url, PageBuffer buffer, Map<String, String> headers);
+
+    /**
+     * Releases the fetcher's resources (e.g. pooled connections).
+     */
+    void close();
+
+}
@@ -0,0 +1,241 @@
+package crawler.fetch;
+
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A non-blocking {@link Fetcher} built on a single, shared
+ * {@code java.net.http.HttpClient}.
+ * </p>
+ *
+ * <p>
+ * The client keeps a pool of connections per host, reusing them (and their
+ * TLS sessions) across requests, and multiplexes concurrent requests to the
+ * same host over one HTTP/2 connection where the server supports it. The
+ * response body is streamed straight into the caller's buffer as it arrives.
+ * At most {@code maxInFlight} requests are outstanding at once;
+ * {@link #fetch(URL, PageBuffer, Map)} blocks the caller until one completes
+ * beyond that.
+ * </p>
+ *
+ * @author billy
+ */
+public class HttpClientFetcher implements Fetcher {
+
+    /**
+     * The time, in milliseconds, to wait for the response headers before
+     * giving up; the spiders put a deadline on the whole fetch.
+     */
+    private static final int READ_TIMEOUT = 20000;
+
+    private final HttpClient client;
+
+    private final String agent;
+
+    private final String accept;
+
+    /**
+     * One permit per request allowed to be outstanding.
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * Constructor.
+     *
+     * @param agent
+     *     The agent name to introduce the crawler with.
+     * @param accept
+     *     The value of the {@code Accept} header; may be {@code null}.
+     * @param timeout
+     *     The connection timeout in seconds.
+     * @param maxInFlight
+     *     The maximum number of requests outstanding at once.
+     */
+    public HttpClientFetcher(String agent, String accept, int timeout, int maxInFlight) {
+        this.agent = agent;
+        this.accept = accept;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(timeout))
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<FetchResult> fetch(final URL url, final PageBuffer buffer,
+            Map<String, String> headers
+            ) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(url.toURI())
+                    .timeout(Duration.ofMillis(READ_TIMEOUT))
+                    .header("User-Agent", agent)
+                    .GET();
+            if (accept != null && !accept.isEmpty()) {
+                builder.header("Accept", accept);
+            }
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                builder.header(h.getKey(), h.getValue());
+            }
+            request = builder.build();
+        }
+        catch (URISyntaxException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        try {
+            inFlight.acquire();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(ie);
+        }
+
+        buffer.reset();
+        final long start = System.nanoTime();
+        // Set once the headers are in, before the body is read.
+        final long[] headersAt = new long[1];
+        final CompletableFuture<HttpResponse<PageBuffer>> sent =
+                client.sendAsync(request, new HttpResponse.BodyHandler<PageBuffer>() {
+                    @Override
+                    public HttpResponse.BodySubscriber<PageBuffer> apply(HttpResponse.ResponseInfo info) {
+                        headersAt[0] = System.nanoTime();
+                        return new PageBufferSubscriber(buffer);
+                    }
+                });
+        CompletableFuture<FetchResult> result = sent
+                .whenComplete(new BiConsumer<HttpResponse<PageBuffer>, Throwable>() {
+                    @Override
+                    public void accept(HttpResponse<PageBuffer> response, Throwable failure) {
+                        inFlight.release();
+                    }
+                })
+                .thenApply(new Function<HttpResponse<PageBuffer>, FetchResult>() {
+                    @Override
+                    public FetchResult apply(HttpResponse<PageBuffer> response) {
+                        long end = System.nanoTime();
+                        long headers = headersAt[0] == 0 ? end : headersAt[0];
+                        return new FetchResult(
+                                url,
+                                finalUrl(url, response),
+                                response.statusCode(),
+                                response.headers().firstValue("Content-Type").orElse(null),
+                                response.headers().firstValueAsLong("Content-Length").orElse(-1),
+                                response.headers().map(),
+                                response.body(),
+                                headers - start,
+                                end - headers
+                                );
+                    }
+                });
+        // Cancelling the result, e.g. past the spider's deadline, aborts the
+        // exchange and releases its permit; the client's own futures happen
+        // to pass it on too, but that is nowhere specified.
+        result.whenComplete(new BiConsumer<FetchResult, Throwable>() {
+            @Override
+            public void accept(FetchResult r, Throwable failure) {
+                if (failure instanceof CancellationException) {
+                    sent.cancel(true);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * Gets the URL a response came from, after the redirects followed by
+     * the client.
+     *
+     * @param url
+     *     The requested URL.
+     * @param response
+     *     The response.
+     *
+     * @return
+     *     The final URL; the requested one if it cannot be converted.
+     */
+    private static URL finalUrl(URL url, HttpResponse<?> response) {
+        try {
+            return response.uri().toURL();
+        }
+        catch (MalformedURLException | IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+
+    /**
+     * Appends the chunks of a response body to a {@link PageBuffer} as they
+     * arrive. Once the buffer is full, the rest of the body is not read.
+     */
+    private static class PageBufferSubscriber implements HttpResponse.BodySubscriber<PageBuffer> {
+
+        private final PageBuffer buffer;
+
+        private final CompletableFuture<PageBuffer> body = new CompletableFuture<PageBuffer>();
+
+        private Flow.Subscription subscription;
+
+        PageBufferSubscriber(PageBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> chunks) {
+            for (ByteBuffer chunk : chunks) {
+                if (!buffer.append(chunk)) {
+                    // Past the maximum body size; keep what fits.
+                    subscription.cancel();
+                    body.complete(buffer);
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            body.completeExceptionally(failure);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(buffer);
+        }
+
+        @Override
+        public CompletionStage<PageBuffer> getBody() {
+            return body;
+        }
+    }
+
+}
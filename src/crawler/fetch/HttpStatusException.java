@@ -0,0 +1,39 @@
+package crawler.fetch;
+
+import java.io.IOException;
+
+/**
+ * Signals that the server answered a request with an error status.
+ *
+ * @author billy
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    /**
+     * Constructor.
+     *
+     * @param status
+     *     The HTTP status code of the response.
+     * @param url
+     *     The requested URL.
+     */
+    public HttpStatusException(int status, String url) {
+        super("Server returned HTTP response code: " + status + " for URL: " + url);
+        this.status = status;
+    }
+
+    /**
+     * Gets the HTTP status code of the response.
+     *
+     * @return
+     *     The status code.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+}
@@ -0,0 +1,301 @@
+package crawler.fetch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A growable byte buffer holding the body of a single fetched web document.
+ * </p>
+ *
+ * <p>
+ * The body is read from the network exactly once and the very same bytes are
+ * then handed to every subsequent stage of the spider (file-system storage,
+ * extraction, indexing). Instances are meant to be reused across documents;
+ * see {@link #reset()}.
+ * </p>
+ *
+ * <p>
+ * A buffer may be given a maximum size. Whatever comes past it is dropped
+ * and the buffer is marked {@link #isTruncated() truncated}, so that a huge
+ * or lying response cannot exhaust the heap.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author billy
+ */
+public class PageBuffer {
+
+    /**
+     * The initial capacity of a freshly created buffer.
+     */
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    /**
+     * The maximum capacity retained between documents. A buffer that grew
+     * beyond this point (due to an unusually large document) is trimmed back
+     * on {@link #reset()} so that a single outlier does not pin memory for
+     * the lifetime of the buffer.
+     */
+    private static final int RETAINED_CAPACITY = 1024 * 1024;
+
+    /**
+     * The charset assumed when the server does not declare one.
+     */
+    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The largest array the VM can reliably allocate.
+     */
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    /**
+     * The maximum number of bytes held.
+     */
+    private final int maximumSize;
+
+    /**
+     * The backing array.
+     */
+    private byte[] bytes;
+
+    /**
+     * The number of valid bytes in the backing array.
+     */
+    private int size;
+
+    /**
+     * Whether bytes were dropped for exceeding the maximum size.
+     */
+    private boolean truncated;
+
+    /**
+     * Constructor. The buffer is only bounded by the size of an array.
+     */
+    public PageBuffer() {
+        this(MAX_ARRAY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maximumSize
+     *     The maximum number of bytes held; the rest of a longer document is
+     *     dropped.
+     */
+    public PageBuffer(int maximumSize) {
+        this.maximumSize = Math.max(1, Math.min(maximumSize, MAX_ARRAY));
+        bytes = new byte[Math.min(INITIAL_CAPACITY, this.maximumSize)];
+        size = 0;
+        truncated = false;
+    }
+
+    /**
+     * Discards the buffered content, making the buffer ready for the next
+     * document.
+     */
+    public void reset() {
+        size = 0;
+        truncated = false;
+        if (bytes.length > RETAINED_CAPACITY) {
+            bytes = new byte[Math.min(INITIAL_CAPACITY, maximumSize)];
+        }
+    }
+
+    /**
+     * Reads the given stream into the buffer, replacing any previously
+     * buffered content. The stream is read until its end, or until the
+     * maximum size is exceeded; it is not closed.
+     *
+     * @param in
+     *     The stream to be consumed.
+     * @param expectedLength
+     *     A hint on the length of the stream (e.g. the HTTP
+     *     {@code Content-Length}); non-positive if unknown. It is not
+     *     trusted beyond the maximum size.
+     *
+     * @return
+     *     The number of bytes read.
+     *
+     * @throws IOException
+     */
+    public int readFully(InputStream in, int expectedLength)
+            throws IOException {
+        reset();
+        if (expectedLength > 0) {
+            ensureCapacity(Math.min(expectedLength, maximumSize));
+        }
+
+        int n;
+        while ((n = in.read(bytes, size, bytes.length - size)) != -1) {
+            size += n;
+            if (size == bytes.length) {
+                if (size == maximumSize) {
+                    // Full; only tell whether there was more.
+                    truncated = in.read() != -1;
+                    break;
+                }
+                ensureCapacity(size + 1);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer, as far as the maximum
+     * size allows. The rest is skipped.
+     *
+     * @param src
+     *     The buffer to be consumed.
+     *
+     * @return
+     *     {@code false} if bytes had to be dropped, i.e. the buffer is full;
+     *     {@code true} otherwise.
+     */
+    public boolean append(ByteBuffer src) {
+        int n = src.remaining();
+        if (n > maximumSize - size) {
+            n = maximumSize - size;
+            truncated = true;
+        }
+        ensureCapacity(size + n);
+        src.get(bytes, size, n);
+        size += n;
+        src.position(src.limit());
+
+        return !truncated;
+    }
+
+    /**
+     * Writes the buffered content to the given stream. The stream is neither
+     * flushed nor closed.
+     *
+     * @param out
+     *     The stream to write to.
+     *
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out)
+            throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * Decodes the buffered content into a {@code String} using the charset
+     * declared in the given HTTP content type, or UTF-8 if none is declared
+     * or the declared one is not supported.
+     *
+     * @param contentType
+     *     The value of the HTTP {@code Content-Type} header; may be
+     *     {@code null}.
+     *
+     * @return
+     *     The decoded content.
+     */
+    public String decode(String contentType) {
+        return new String(bytes, 0, size, charsetOf(contentType));
+    }
+
+    /**
+     * Gets the number of buffered bytes.
+     *
+     * @return
+     *     The number of buffered bytes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets whether the buffered document was cut at the maximum size.
+     *
+     * @return
+     *     {@code true} if bytes were dropped; {@code false} otherwise.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Gets the maximum number of bytes held.
+     *
+     * @return
+     *     The maximum size.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets the backing array. Only the first {@link #size()} bytes are valid.
+     *
+     * @return
+     *     The backing array.
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Makes sure the backing array can hold at least the given number of
+     * bytes, growing it geometrically if needed.
+     *
+     * @param capacity
+     *     The minimum capacity required.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            int newCapacity = Math.max(capacity, bytes.length << 1);
+            if (newCapacity < 0 || newCapacity > maximumSize) {
+                // Overflow, or past what is ever held.
+                newCapacity = Math.max(capacity, maximumSize);
+            }
+            bytes = Arrays.copyOf(bytes, newCapacity);
+        }
+    }
+
+    /**
+     * Extracts the charset out of an HTTP content type.
+     *
+     * @param contentType
+     *     The value of the HTTP {@code Content-Type} header; may be
+     *     {@code null}.
+     *
+     * @return
+     *     The declared charset if any and supported; UTF-8 otherwise.
+     */
+    public static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            int i = contentType.toLowerCase().indexOf("charset=");
+            if (i != -1) {
+                String name = contentType.substring(i + "charset=".length()).trim();
+                int end = name.indexOf(';');
+                if (end != -1) {
+                    name = name.substring(0, end).trim();
+                }
+                if (name.length() > 1 && name.charAt(0) == '"') {
+                    name = name.substring(1, name.length() - 1);
+                }
+                try {
+                    return Charset.forName(name);
+                }
+                catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    // Fall back to the default one.
+                }
+            }
+        }
+
+        return DEFAULT_CHARSET;
+    }
+
+}
@@ -0,0 +1,130 @@
+package crawler.fetch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link Fetcher} retrieving each document synchronously, on the calling
+ * thread, over a {@code HttpURLConnection} of its own. Connections are only
+ * reused to the extent the JDK's keep-alive cache allows.
+ *
+ * @author billy
+ */
+public class URLConnectionFetcher implements Fetcher {
+
+    /**
+     * The time, in milliseconds, to wait for data before giving up.
+     */
+    private static final int READ_TIMEOUT = 20000;
+
+    private final String agent;
+
+    private final String accept;
+
+    /**
+     * The connection timeout in milliseconds.
+     */
+    private final int connectTimeout;
+
+    /**
+     * Constructor.
+     *
+     * @param agent
+     *     The agent name to introduce the crawler with.
+     * @param accept
+     *     The value of the {@code Accept} header; may be {@code null}.
+     * @param timeout
+     *     The connection timeout in seconds.
+     */
+    public URLConnectionFetcher(String agent, String accept, int timeout) {
+        this.agent = agent;
+        this.accept = accept;
+        this.connectTimeout = 1000 * timeout;
+    }
+
+    @Override
+    public CompletableFuture<FetchResult> fetch(URL url, PageBuffer buffer,
+            Map<String, String> headers
+            ) {
+        CompletableFuture<FetchResult> result = new CompletableFuture<FetchResult>();
+        try {
+            result.complete(get(url, buffer, headers));
+        }
+        catch (IOException ioe) {
+            result.completeExceptionally(ioe);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release.
+    }
+
+    /**
+     * Retrieves the given URL.
+     *
+     * @param url
+     *     The URL to be retrieved.
+     * @param buffer
+     *     The buffer to read the body of the response into.
+     * @param headers
+     *     The additional request headers.
+     *
+     * @return
+     *     The result.
+     *
+     * @throws IOException
+     */
+    private FetchResult get(URL url, PageBuffer buffer, Map<String, String> headers)
+            throws IOException {
+        URLConnection c = url.openConnection();
+        if (!(c instanceof HttpURLConnection)) {
+            throw new IOException("Not an HTTP URL: " + url);
+        }
+        HttpURLConnection conn = (HttpURLConnection) c;
+
+        conn.setDoInput(true);
+        conn.setUseCaches(false);
+        conn.addRequestProperty("User-Agent", agent);
+        if (accept != null && !accept.isEmpty()) {
+            conn.addRequestProperty("Accept", accept);
+        }
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            conn.addRequestProperty(h.getKey(), h.getValue());
+        }
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setConnectTimeout(connectTimeout);
+        long start = System.nanoTime();
+        conn.connect();
+
+        int status = conn.getResponseCode();
+        long response = System.nanoTime();
+        buffer.reset();
+        if (status < 400 && status != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            try (InputStream in = conn.getInputStream()) {
+                buffer.readFully(in, conn.getContentLength());
+            }
+        }
+
+        return new FetchResult(
+                url,
+                // Where any redirects led to.
+                conn.getURL(),
+                status,
+                conn.getContentType(),
+                conn.getContentLengthLong(),
+                conn.getHeaderFields(),
+                buffer,
+                response - start,
+                System.nanoTime() - response
+                );
+    }
+
+}
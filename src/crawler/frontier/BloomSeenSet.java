@@ -0,0 +1,145 @@
+package crawler.frontier;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * An approximate {@link SeenSet} backed by a Bloom filter.
+ * </p>
+ *
+ * <p>
+ * The filter is sized up-front from the expected number of URLs and the
+ * desired false-positive rate, e.g. about 1.8 bytes per URL for a 0.1% rate.
+ * A false positive makes the crawler skip a URL it has never visited; URLs
+ * are never visited twice, except when two threads race to add the same URL,
+ * in which case both may be let through. Bits are set with compare-and-set,
+ * so adders never block each other.
+ * </p>
+ *
+ * @author billy
+ */
+public class BloomSeenSet implements SeenSet {
+
+    /**
+     * The bits of the filter.
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * The number of bits of the filter.
+     */
+    private final long bitNumber;
+
+    /**
+     * The number of bits set per URL.
+     */
+    private final int hashNumber;
+
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param expected
+     *     The expected number of URLs.
+     * @param falsePositiveRate
+     *     The desired false-positive rate once {@code expected} URLs
+     *     are added, e.g. {@code 0.001}.
+     */
+    public BloomSeenSet(long expected, double falsePositiveRate) {
+        expected = Math.max(1, expected);
+        double ln2 = Math.log(2);
+
+        long m = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (ln2 * ln2));
+        long words = Math.min(Integer.MAX_VALUE, Math.max(1, (m + 63) >>> 6));
+
+        bits = new AtomicLongArray((int) words);
+        bitNumber = words << 6;
+        hashNumber = Math.max(1, (int) Math.round((double) bitNumber / expected * ln2));
+    }
+
+    @Override
+    public boolean add(String url) {
+        long fp = Fingerprint.of(url);
+
+        boolean changed = false;
+        for (int i = 1; i <= hashNumber; i++) {
+            long bit = bit(fp, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            while (true) {
+                long current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        if (changed) {
+            size.incrementAndGet();
+        }
+
+        return changed;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long fp = Fingerprint.of(url);
+
+        for (int i = 1; i <= hashNumber; i++) {
+            long bit = bit(fp, i);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public long memoryUsage() {
+        return 8L * bits.length();
+    }
+
+    /**
+     * Computes the i-th bit of a fingerprint by double hashing, i.e. as
+     * {@code h1 + i * h2} where {@code h1} and {@code h2} are the fingerprint's
+     * halves.
+     *
+     * @param fp
+     *     The fingerprint.
+     * @param i
+     *     The index of the bit, from 1 to {@code hashNumber}.
+     *
+     * @return
+     *     The position of the bit in the filter.
+     */
+    private long bit(long fp, int i) {
+        long h1 = fp & 0xffffffffL;
+        long h2 = fp >>> 32;
+
+        return ((h1 + i * h2) & Long.MAX_VALUE) % bitNumber;
+    }
+
+    /**
+     * Gets the number of bits set per URL.
+     *
+     * @return
+     *     The number of hash functions.
+     */
+    public int getHashNumber() {
+        return hashNumber;
+    }
+
+}
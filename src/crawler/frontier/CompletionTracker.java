@@ -0,0 +1,161 @@
+package crawler.frontier;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Keeps track of the crawl's outstanding work so that one can wait for the
+ * crawl to finish without holding on to a future per spider.
+ * </p>
+ *
+ * <p>
+ * A URL is <em>pending</em> from the moment it is accepted until its spider
+ * has finished (or it is discarded). A spider only accepts the links it
+ * extracts before it finishes itself, so the pending count only drops to
+ * zero once the whole crawl is over.
+ * </p>
+ *
+ * @author billy
+ */
+public class CompletionTracker {
+
+    /**
+     * The number of accepted URLs whose spider has not finished yet.
+     */
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * The number of spiders currently running.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The number of spiders finished so far.
+     */
+    private final AtomicLong completed = new AtomicLong();
+
+    /**
+     * Notified whenever the pending count drops to zero.
+     */
+    private final Object quiescence = new Object();
+
+    /**
+     * Records that a URL has been accepted.
+     */
+    public void accepted() {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Records that the spider of an accepted URL has started.
+     */
+    public void started() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Records that a started spider has finished.
+     */
+    public void finished() {
+        inFlight.decrementAndGet();
+        completed.incrementAndGet();
+        release();
+    }
+
+    /**
+     * Records that an accepted URL is never going to be crawled.
+     */
+    public void discarded() {
+        release();
+    }
+
+    /**
+     * Records that a number of accepted URLs are never going to be crawled.
+     *
+     * @param n
+     *     The number of URLs.
+     */
+    public void discarded(long n) {
+        if (n > 0 && pending.addAndGet(-n) == 0) {
+            synchronized (quiescence) {
+                quiescence.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until there is no pending work left, or the given time elapses.
+     *
+     * @param timeout
+     *     The maximum time to wait.
+     * @param unit
+     *     The unit of the {@code timeout} argument.
+     *
+     * @return
+     *     {@code true} if there is no pending work left; {@code false} if
+     *     the time elapsed first.
+     *
+     * @throws InterruptedException
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (quiescence) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(quiescence, remaining);
+            }
+        }
+
+        return true;
+    }
+
+    private void release() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (quiescence) {
+                quiescence.notifyAll();
+            }
+        }
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the number of accepted URLs whose spider has not finished yet.
+     *
+     * @return
+     *     The number of pending URLs.
+     */
+    public long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Gets the number of spiders currently running.
+     *
+     * @return
+     *     The number of in-flight spiders.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Gets the number of spiders finished so far.
+     *
+     * @return
+     *     The number of completed spiders.
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+}
@@ -0,0 +1,216 @@
+package crawler.frontier;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * The limits a crawl is bound to: the number of pages, overall and per
+ * domain, the number of bytes downloaded and the wall-clock duration.
+ * </p>
+ *
+ * <p>
+ * The page limits are enforced on admission: once reached, no more URLs are
+ * {@link #admit(String) admitted}, while the ones already admitted are still
+ * crawled. The byte and time limits cannot be foreseen; once either is
+ * reached the budget is {@link #isExhausted() exhausted} and the crawler is
+ * expected to stop starting new work and drain. All counters are updated
+ * without locking. A non-positive limit means no limit.
+ * </p>
+ *
+ * @author billy
+ */
+public class CrawlBudget {
+
+    private final long maxPages;
+
+    private final long maxBytes;
+
+    private final long maxDuration;
+
+    private final int maxDomainPages;
+
+    private final AtomicLong pages = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final ConcurrentMap<String, AtomicInteger> domainPages =
+            new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Why the budget was first hit; {@code null} if it has not been yet.
+     */
+    private final AtomicReference<String> reached = new AtomicReference<String>();
+
+    /**
+     * Set once the byte or time budget is used up.
+     */
+    private volatile boolean exhausted = false;
+
+    /**
+     * The time, as in {@link System#nanoTime()}, the crawl started.
+     */
+    private volatile long startTime = System.nanoTime();
+
+    /**
+     * Constructor.
+     *
+     * @param maxPages
+     *     The maximum number of pages crawled.
+     * @param maxBytes
+     *     The maximum number of bytes downloaded.
+     * @param maxDuration
+     *     The maximum duration of the crawl in seconds.
+     * @param maxDomainPages
+     *     The maximum number of pages crawled per domain.
+     */
+    public CrawlBudget(long maxPages, long maxBytes, long maxDuration, int maxDomainPages) {
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+        this.maxDuration = TimeUnit.SECONDS.toNanos(maxDuration);
+        this.maxDomainPages = maxDomainPages;
+    }
+
+    /**
+     * Starts the clock of the time budget.
+     */
+    public void start() {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Takes a page out of the budget, if it allows for it.
+     *
+     * @param host
+     *     The host of the page.
+     *
+     * @return
+     *     {@code true} if the page is admitted; {@code false} if a limit is
+     *     reached.
+     */
+    public boolean admit(String host) {
+        if (isExhausted()) {
+            return false;
+        }
+
+        AtomicInteger domain = null;
+        if (maxDomainPages > 0) {
+            domain = domainPages.get(host);
+            if (domain == null) {
+                AtomicInteger created = new AtomicInteger();
+                domain = domainPages.putIfAbsent(host, created);
+                if (domain == null) {
+                    domain = created;
+                }
+            }
+            if (!tryIncrement(domain, maxDomainPages)) {
+                return false;
+            }
+        }
+
+        if (maxPages > 0) {
+            long n;
+            do {
+                n = pages.get();
+                if (n >= maxPages) {
+                    if (domain != null) {
+                        // Give the domain its page back.
+                        domain.decrementAndGet();
+                    }
+                    reach("page limit of " + maxPages);
+                    return false;
+                }
+            } while (!pages.compareAndSet(n, n + 1));
+        }
+        else {
+            pages.incrementAndGet();
+        }
+
+        return true;
+    }
+
+    /**
+     * Records downloaded bytes.
+     *
+     * @param n
+     *     The number of bytes downloaded.
+     */
+    public void downloaded(long n) {
+        if (bytes.addAndGet(n) >= maxBytes && maxBytes > 0) {
+            exhausted = true;
+            reach("byte limit of " + maxBytes);
+        }
+    }
+
+    /**
+     * Checks whether the byte or time budget is used up, in which case no
+     * more work is to be started.
+     *
+     * @return
+     *     {@code true} if the budget is exhausted; {@code false} otherwise.
+     */
+    public boolean isExhausted() {
+        if (!exhausted && maxDuration > 0 && System.nanoTime() - startTime >= maxDuration) {
+            exhausted = true;
+            reach("time limit of " + TimeUnit.NANOSECONDS.toSeconds(maxDuration) + " s");
+        }
+
+        return exhausted;
+    }
+
+    private static boolean tryIncrement(AtomicInteger counter, int max) {
+        int n;
+        do {
+            n = counter.get();
+            if (n >= max) {
+                return false;
+            }
+        } while (!counter.compareAndSet(n, n + 1));
+
+        return true;
+    }
+
+    private void reach(String why) {
+        reached.compareAndSet(null, why);
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the number of pages admitted so far.
+     *
+     * @return
+     *     The number of pages.
+     */
+    public long getPages() {
+        return pages.get();
+    }
+
+    /**
+     * Gets the number of bytes downloaded so far.
+     *
+     * @return
+     *     The number of bytes.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets which limit was reached first, if any. The per-domain limits do
+     * not count.
+     *
+     * @return
+     *     A description of the limit; {@code null} if none was reached.
+     */
+    public String getReached() {
+        return reached.get();
+    }
+
+}
@@ -0,0 +1,360 @@
+package crawler.frontier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>
+ * A FIFO queue of URLs waiting to be crawled which does not need to fit in
+ * the heap.
+ * </p>
+ *
+ * <p>
+ * Up to {@code headCapacity} entries are kept in memory. Once that is
+ * exceeded, newer entries are appended to memory-mapped segment files under
+ * the frontier directory; a new segment is started whenever the current one
+ * is full. As the in-memory head drains, entries are loaded back from the
+ * oldest segment, which is deleted once fully consumed. Entries always come
+ * out in the order they went in.
+ * </p>
+ *
+ * <p>
+ * Each record of a segment is laid out as the length of the UTF-8 encoded
+ * URL, the level and the encoded URL itself. The segments only live for the
+ * duration of a crawl; the read and write positions are kept in memory.
+ * </p>
+ *
+ * @author billy
+ */
+public class DiskFrontier {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The size of the fixed part of a record: the length and the level.
+     */
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * The directory holding the segment files.
+     */
+    private final File directory;
+
+    /**
+     * The maximum number of entries kept in memory.
+     */
+    private final int headCapacity;
+
+    /**
+     * The size of a segment file in bytes.
+     */
+    private final int segmentSize;
+
+    /**
+     * The in-memory head of the queue.
+     */
+    private final Deque<Entry> head;
+
+    /**
+     * The segments holding the spilled entries, oldest first.
+     */
+    private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+    /**
+     * The number of entries currently spilled to disk.
+     */
+    private long spilled = 0;
+
+    /**
+     * A sequence number for naming the segment files.
+     */
+    private long nextSegment = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *     The directory to store the segment files into. It is created if
+     *     it does not exist.
+     * @param headCapacity
+     *     The maximum number of entries kept in memory.
+     * @param segmentSize
+     *     The size of each segment file in bytes.
+     */
+    public DiskFrontier(File directory, int headCapacity, int segmentSize) {
+        this.directory = directory;
+        this.headCapacity = Math.max(1, headCapacity);
+        this.segmentSize = segmentSize;
+        this.head = new ArrayDeque<Entry>(Math.min(this.headCapacity, 1024));
+    }
+
+    /**
+     * Appends an entry to the tail of the queue.
+     *
+     * @param url
+     *     The URL to be crawled.
+     * @param level
+     *     The (depth) level of the URL.
+     *
+     * @throws IOException
+     *     If the entry had to be spilled to disk and this failed.
+     */
+    public synchronized void add(URL url, int level)
+            throws IOException {
+        // Only keep entries in memory while nothing is on disk, or they
+        // would overtake the spilled ones.
+        if (spilled == 0 && head.size() < headCapacity) {
+            head.add(new Entry(url, level));
+        }
+        else {
+            spill(url.toString().getBytes(UTF8), level);
+        }
+    }
+
+    /**
+     * Removes the entry at the head of the queue.
+     *
+     * @return
+     *     The head entry, or {@code null} if the queue is empty.
+     *
+     * @throws IOException
+     *     If the entries had to be loaded from disk and this failed.
+     */
+    public synchronized Entry poll()
+            throws IOException {
+        if (head.isEmpty() && spilled > 0) {
+            load();
+        }
+
+        return head.poll();
+    }
+
+    /**
+     * Gets the number of entries in the queue.
+     *
+     * @return
+     *     The number of entries, both in memory and on disk.
+     */
+    public synchronized long size() {
+        return head.size() + spilled;
+    }
+
+    /**
+     * Gets the number of entries currently spilled to disk.
+     *
+     * @return
+     *     The number of entries on disk.
+     */
+    public synchronized long getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Checks whether the queue is empty.
+     *
+     * @return
+     *     {@code true} if there are no entries; {@code false} otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return head.isEmpty() && spilled == 0;
+    }
+
+    /**
+     * Discards all entries and deletes the segment files. The frontier can
+     * still be used afterwards.
+     *
+     * @return
+     *     The number of entries discarded.
+     */
+    public synchronized long clear() {
+        long n = head.size() + spilled;
+        head.clear();
+        while (!segments.isEmpty()) {
+            segments.poll().delete();
+        }
+        spilled = 0;
+
+        return n;
+    }
+
+    /**
+     * Discards all entries and deletes the segment files.
+     */
+    public synchronized void close() {
+        clear();
+    }
+
+    /**
+     * Appends a record to the newest segment, starting a new one if needed.
+     *
+     * @param url
+     *     The encoded URL.
+     * @param level
+     *     The level of the URL.
+     *
+     * @throws IOException
+     */
+    private void spill(byte[] url, int level)
+            throws IOException {
+        int recordSize = RECORD_HEADER + url.length;
+        if (recordSize > segmentSize) {
+            throw new IOException("URL too long for a frontier segment: " + url.length + " bytes");
+        }
+
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.writePosition + recordSize > segmentSize) {
+            tail = new Segment(new File(directory, "frontier-" + (nextSegment++) + ".seg"));
+            segments.add(tail);
+        }
+
+        ByteBuffer w = tail.buffer.duplicate();
+        w.position(tail.writePosition);
+        w.putInt(url.length);
+        w.putInt(level);
+        w.put(url);
+        tail.writePosition = w.position();
+        spilled++;
+    }
+
+    /**
+     * Refills the in-memory head from the oldest segment.
+     *
+     * @throws IOException
+     */
+    private void load()
+            throws IOException {
+        while (head.size() < headCapacity && spilled > 0) {
+            Segment oldest = segments.peek();
+
+            if (oldest.readPosition >= oldest.writePosition) {
+                // Fully consumed; a newer segment must hold the rest.
+                segments.poll().delete();
+                continue;
+            }
+
+            ByteBuffer r = oldest.buffer.duplicate();
+            r.position(oldest.readPosition);
+            int length = r.getInt();
+            int level = r.getInt();
+            byte[] url = new byte[length];
+            r.get(url);
+            oldest.readPosition = r.position();
+            spilled--;
+
+            try {
+                head.add(new Entry(URLCanonicalizer.toURL(new String(url, UTF8)), level));
+            }
+            catch (MalformedURLException murle) {
+                // It was a valid URL when spilled.
+                throw new IOException(murle);
+            }
+        }
+
+        Segment oldest = segments.peek();
+        if (oldest != null && oldest.readPosition >= oldest.writePosition) {
+            if (oldest != segments.peekLast()) {
+                segments.poll().delete();
+            }
+            else {
+                // Everything spilled has been consumed; rewind and reuse it.
+                oldest.readPosition = 0;
+                oldest.writePosition = 0;
+            }
+        }
+    }
+
+
+    /**
+     * An entry of the frontier.
+     */
+    public static class Entry {
+
+        private final URL url;
+
+        private final int level;
+
+        Entry(URL url, int level) {
+            this.url = url;
+            this.level = level;
+        }
+
+        /**
+         * Gets the URL to be crawled.
+         *
+         * @return
+         *     The URL.
+         */
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * Gets the (depth) level of the URL.
+         *
+         * @return
+         *     The level.
+         */
+        public int getLevel() {
+            return level;
+        }
+    }
+
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private class Segment {
+
+        private final File file;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int writePosition = 0;
+
+        private int readPosition = 0;
+
+        Segment(File file)
+                throws IOException {
+            if (!directory.exists()) {
+                directory.mkdirs();
+            }
+            this.file = file;
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+            catch (IOException ioe) {
+                raf.close();
+                throw ioe;
+            }
+        }
+
+        /**
+         * Closes and deletes the segment file. The mapping itself is released
+         * by the garbage collector.
+         */
+        void delete() {
+            try {
+                channel.close();
+            }
+            catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+            file.delete();
+        }
+    }
+
+}
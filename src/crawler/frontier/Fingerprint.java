@@ -0,0 +1,87 @@
+package crawler.frontier;
+
+/**
+ * Computes 64-bit fingerprints of strings.
+ *
+ * The fingerprint is a 64-bit FNV-1a hash of the string's characters run
+ * through the MurmurHash3 finalizer for a good spread of all of its bits.
+ * With 64 bits the chance of two of a billion URLs colliding is about 3%.
+ *
+ * @author billy
+ */
+public final class Fingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Fingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of the given string.
+     *
+     * @param s
+     *     The string.
+     *
+     * @return
+     *     The fingerprint; never zero.
+     */
+    public static long of(CharSequence s) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            h ^= c & 0xff;
+            h *= FNV_PRIME;
+            h ^= c >>> 8;
+            h *= FNV_PRIME;
+        }
+
+        h = mix(h);
+        // Zero marks the empty slots of the fingerprint tables.
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Computes the fingerprint of the given bytes.
+     *
+     * @param bytes
+     *     The array holding the bytes.
+     * @param offset
+     *     The index of the first byte.
+     * @param length
+     *     The number of bytes.
+     *
+     * @return
+     *     The fingerprint; never zero.
+     */
+    public static long of(byte[] bytes, int offset, int length) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= FNV_PRIME;
+        }
+
+        h = mix(h);
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * The MurmurHash3 64-bit finalizer.
+     *
+     * @param h
+     *     The value to be mixed.
+     *
+     * @return
+     *     The mixed value.
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,214 @@
+package crawler.frontier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * An exact {@link SeenSet} storing the 64-bit {@link Fingerprint}s of the
+ * URLs instead of the URLs themselves, i.e. 8 bytes per URL plus the free
+ * slots.
+ * </p>
+ *
+ * <p>
+ * The fingerprints live in open-addressing, linear-probing tables of
+ * primitive {@code long}s, split in segments by the fingerprint's top bits.
+ * Inserts claim a free slot with a compare-and-set and never block each
+ * other; a segment only holds its adders back while it is being doubled,
+ * which happens once its load factor exceeds {@value #MAX_LOAD}.
+ * </p>
+ *
+ * <p>
+ * Look-ups take no lock at all. Inserts do take a segment's read lock,
+ * shared with every other adder, and the tables are on-heap
+ * {@code AtomicLongArray}s rather than off-heap memory. Both follow from a
+ * single reason: a segment's table is replaced when it doubles. The lock
+ * keeps inserts from landing in a table that is being copied, which a
+ * lock-free table would need a slot-by-slot hand-off for, and once the
+ * lock is released the garbage collector reclaims the old table, where
+ * off-heap memory would have to be freed only after every look-up still
+ * probing it is done.
+ * </p>
+ *
+ * @author billy
+ */
+public class FingerprintSeenSet implements SeenSet {
+
+    /**
+     * The number of the fingerprint's top bits selecting the segment.
+     */
+    private static final int SEGMENT_BITS = 6;
+
+    /**
+     * The load factor above which a segment is doubled.
+     */
+    private static final double MAX_LOAD = 0.7;
+
+    private final Segment[] segments;
+
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param expected
+     *     The expected number of URLs; the tables are sized to hold these
+     *     without growing.
+     */
+    public FingerprintSeenSet(long expected) {
+        segments = new Segment[1 << SEGMENT_BITS];
+
+        long perSegment = (long) (expected / segments.length / MAX_LOAD) + 1;
+        int capacity = 16;
+        while (capacity < perSegment && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    @Override
+    public boolean add(String url) {
+        long fp = Fingerprint.of(url);
+        boolean added = segments[(int) (fp >>> (64 - SEGMENT_BITS))].add(fp);
+        if (added) {
+            size.incrementAndGet();
+        }
+
+        return added;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long fp = Fingerprint.of(url);
+        return segments[(int) (fp >>> (64 - SEGMENT_BITS))].contains(fp);
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public long memoryUsage() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += 8L * segment.table.length();
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * A segment of the set.
+     */
+    private static class Segment {
+
+        /**
+         * Taken shared by the adders and exclusively while doubling.
+         */
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * The slots; zero marks a free one.
+         */
+        private volatile AtomicLongArray table;
+
+        /**
+         * The number of occupied slots.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        Segment(int capacity) {
+            table = new AtomicLongArray(capacity);
+        }
+
+        boolean add(long fp) {
+            while (true) {
+                AtomicLongArray t;
+
+                lock.readLock().lock();
+                try {
+                    t = table;
+                    if (count.get() < MAX_LOAD * t.length()) {
+                        int mask = t.length() - 1;
+                        int i = (int) fp & mask;
+                        while (true) {
+                            long current = t.get(i);
+                            if (current == fp) {
+                                return false;
+                            }
+                            if (current == 0) {
+                                if (t.compareAndSet(i, 0, fp)) {
+                                    count.incrementAndGet();
+                                    return true;
+                                }
+                                // Lost the slot; look at it again.
+                                continue;
+                            }
+                            i = (i + 1) & mask;
+                        }
+                    }
+                }
+                finally {
+                    lock.readLock().unlock();
+                }
+
+                grow(t);
+            }
+        }
+
+        boolean contains(long fp) {
+            // No lock: a replaced table is never written to again and holds
+            // every fingerprint added before its replacement.
+            AtomicLongArray t = table;
+            int mask = t.length() - 1;
+            int i = (int) fp & mask;
+            long current;
+            while ((current = t.get(i)) != 0) {
+                if (current == fp) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+
+            return false;
+        }
+
+        /**
+         * Doubles the table, unless another thread already did.
+         *
+         * @param full
+         *     The table found to be full.
+         */
+        private void grow(AtomicLongArray full) {
+            lock.writeLock().lock();
+            try {
+                if (table == full) {
+                    AtomicLongArray t = new AtomicLongArray(full.length() << 1);
+                    int mask = t.length() - 1;
+                    for (int j = 0; j < full.length(); j++) {
+                        long fp = full.get(j);
+                        if (fp != 0) {
+                            int i = (int) fp & mask;
+                            while (t.get(i) != 0) {
+                                i = (i + 1) & mask;
+                            }
+                            t.set(i, fp);
+                        }
+                    }
+                    table = t;
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+}
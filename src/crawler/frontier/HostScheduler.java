@@ -0,0 +1,354 @@
+package crawler.frontier;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A politeness-aware scheduler sitting in front of the crawler's worker pool.
+ * </p>
+ *
+ * <p>
+ * Submitted tasks are kept in one FIFO queue per host. A host becomes
+ * <em>ready</em> when it has pending tasks, fewer than
+ * {@code hostConcurrency} of its tasks are running and at least
+ * {@code hostDelay} milliseconds have passed since its last task was
+ * started. A single dispatcher thread hands the next task of the earliest
+ * ready host to the executor whenever one of its workers is free, so the
+ * workers are shared round-robin among the hosts instead of being hogged by
+ * the one with the most links.
+ * </p>
+ *
+ * @author billy
+ */
+public class HostScheduler {
+
+    /**
+     * The executor running the dispatched tasks.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of tasks of the same host running at once.
+     */
+    private final int hostConcurrency;
+
+    /**
+     * The minimum time, in nanoseconds, between the start of two consecutive
+     * tasks of the same host.
+     */
+    private final long hostDelay;
+
+    /**
+     * One permit per task allowed to run at once, e.g. per executor worker; a
+     * task is only dispatched when a worker is free to run it.
+     */
+    private final Semaphore workers;
+
+    /**
+     * The per-host queues.
+     */
+    private final ConcurrentMap<String, HostQueue> hosts =
+            new ConcurrentHashMap<String, HostQueue>();
+
+    /**
+     * The hosts having a task ready to be dispatched, ordered by the time
+     * they become ready.
+     */
+    private final DelayQueue<HostQueue> ready = new DelayQueue<HostQueue>();
+
+    /**
+     * The number of tasks waiting in the per-host queues.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The dispatcher thread.
+     */
+    private final Thread dispatcher;
+
+    /**
+     * Set once the scheduler is shut down.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor. The dispatcher thread is started right away.
+     *
+     * @param executor
+     *     The executor running the dispatched tasks.
+     * @param workerNumber
+     *     The maximum number of tasks running at once, e.g. the number of
+     *     the executor's workers.
+     * @param hostConcurrency
+     *     The maximum number of tasks of the same host running at once.
+     * @param hostDelay
+     *     The minimum time, in milliseconds, between the start of two
+     *     consecutive tasks of the same host.
+     */
+    public HostScheduler(Executor executor, int workerNumber, int hostConcurrency,
+            long hostDelay
+            ) {
+        this.executor = executor;
+        this.workers = new Semaphore(Math.max(1, workerNumber));
+        this.hostConcurrency = Math.max(1, hostConcurrency);
+        this.hostDelay = TimeUnit.MILLISECONDS.toNanos(Math.max(0, hostDelay));
+
+        dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "host-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues a task to be run against the given host.
+     *
+     * @param host
+     *     The host the task is going to access.
+     * @param task
+     *     The task.
+     */
+    public void submit(String host, Runnable task) {
+        if (closed) {
+            throw new RejectedExecutionException("Host scheduler is shut down");
+        }
+
+        HostQueue hq = hosts.get(host);
+        if (hq == null) {
+            HostQueue created = new HostQueue(host);
+            hq = hosts.putIfAbsent(host, created);
+            if (hq == null) {
+                hq = created;
+            }
+        }
+
+        synchronized (hq) {
+            hq.pending.add(task);
+            queued.incrementAndGet();
+            hq.maybeSchedule();
+        }
+    }
+
+    /**
+     * Discards the tasks waiting in the per-host queues, e.g. once the crawl
+     * budget is spent; tasks already handed to the executor are not
+     * affected.
+     *
+     * @return
+     *     The number of discarded tasks.
+     */
+    public int clear() {
+        int n = 0;
+        for (HostQueue hq : hosts.values()) {
+            synchronized (hq) {
+                n += hq.pending.size();
+                queued.addAndGet(-hq.pending.size());
+                hq.pending.clear();
+                if (hq.scheduled) {
+                    ready.remove(hq);
+                    hq.scheduled = false;
+                }
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     * Stops dispatching. Tasks still waiting in the per-host queues are
+     * discarded; tasks already handed to the executor are not affected.
+     */
+    public void shutdown() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The loop of the dispatcher thread.
+     */
+    private void dispatch() {
+        try {
+            while (!closed) {
+                workers.acquire();
+
+                final HostQueue hq;
+                try {
+                    hq = ready.take();
+                }
+                catch (InterruptedException ie) {
+                    workers.release();
+                    throw ie;
+                }
+
+                final Runnable task;
+                synchronized (hq) {
+                    hq.scheduled = false;
+                    // A host is only scheduled with pending tasks, and only
+                    // the dispatcher takes them out, unless they were
+                    // cleared since it was taken out of the ready queue.
+                    task = hq.pending.poll();
+                    if (task != null) {
+                        queued.decrementAndGet();
+                        hq.active++;
+                        hq.lastStart = System.nanoTime();
+                        hq.started = true;
+                        hq.maybeSchedule();
+                    }
+                }
+                if (task == null) {
+                    workers.release();
+                    continue;
+                }
+
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                task.run();
+                            }
+                            finally {
+                                synchronized (hq) {
+                                    hq.active--;
+                                    hq.maybeSchedule();
+                                }
+                                workers.release();
+                            }
+                        }
+                    });
+                }
+                catch (RejectedExecutionException ree) {
+                    // The executor is shutting down.
+                    synchronized (hq) {
+                        hq.active--;
+                    }
+                    workers.release();
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            // Shutting down.
+        }
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the number of tasks waiting in the per-host queues.
+     *
+     * @return
+     *     The number of queued tasks.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the number of distinct hosts seen so far.
+     *
+     * @return
+     *     The number of hosts.
+     */
+    public int getHostNumber() {
+        return hosts.size();
+    }
+
+
+    /**
+     * The queue of a single host.
+     */
+    private class HostQueue implements Delayed {
+
+        private final String host;
+
+        /**
+         * The tasks of this host waiting to be dispatched.
+         */
+        private final Queue<Runnable> pending = new LinkedList<Runnable>();
+
+        /**
+         * The number of tasks of this host currently running.
+         */
+        private int active = 0;
+
+        /**
+         * Whether a task of this host has ever been started.
+         */
+        private boolean started = false;
+
+        /**
+         * The time, as in {@link System#nanoTime()}, the last task of this
+         * host was started.
+         */
+        private long lastStart;
+
+        /**
+         * Whether this host currently sits in the ready queue.
+         */
+        private boolean scheduled = false;
+
+        /**
+         * The time, as in {@link System#nanoTime()}, this host becomes ready.
+         */
+        private long readyAt;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+
+        /**
+         * Puts this host in the ready queue if it has pending tasks, is
+         * allowed to run one more and is not already there. Must be called
+         * while holding this object's lock.
+         */
+        void maybeSchedule() {
+            if (!scheduled && !pending.isEmpty() && active < hostConcurrency) {
+                readyAt = started ? lastStart + hostDelay : System.nanoTime();
+                scheduled = true;
+                ready.add(this);
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            long diff = readyAt - ((HostQueue) other).readyAt;
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return host;
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package crawler.frontier;
+
+/**
+ * The registry of the URLs already accepted by the crawler.
+ *
+ * Implementations must be safe for concurrent use by the crawler's threads
+ * without external locking.
+ *
+ * @author billy
+ */
+public interface SeenSet {
+
+    /**
+     * Registers the given URL, unless already registered. This is an atomic
+     * check-and-insert; of several threads adding the same URL at once
+     * exactly one gets {@code true}, unless the implementation documents
+     * otherwise.
+     *
+     * @param url
+     *     The URL, as a {@code String}.
+     *
+     * @return
+     *     {@code true} if the URL was not seen before; {@code false}
+     *     otherwise.
+     */
+    boolean add(String url);
+
+    /**
+     * Checks whether the given URL is registered.
+     *
+     * @param url
+     *     The URL, as a {@code String}.
+     *
+     * @return
+     *     {@code true} if the URL was seen before; {@code false} otherwise.
+     */
+    boolean contains(String url);
+
+    /**
+     * Gets the number of URLs registered so far.
+     *
+     * @return
+     *     The number of registered URLs.
+     */
+    long size();
+
+    /**
+     * Gets the memory occupied by the set.
+     *
+     * @return
+     *     The approximate size of the set's tables in bytes.
+     */
+    long memoryUsage();
+
+}
@@ -0,0 +1,482 @@
+package crawler.frontier;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * <p>
+ * Feeds the URLs of sitemaps to the crawler as they are parsed, instead of
+ * after the whole sitemap is read into memory.
+ * </p>
+ *
+ * <p>
+ * Each sitemap is streamed through a SAX parser, decompressed on the fly if
+ * gzipped (told by its magic number, whatever its name or headers say). The
+ * children of a sitemap index are parsed concurrently on a small pool of
+ * their own, up to a few levels deep and each at most once. The entries of a
+ * sitemap pass through a bounded window that hands out the one with the
+ * highest {@code <priority>}, then the most recent {@code <lastmod>}, first;
+ * so the order is improved locally without holding the sitemap in memory.
+ * </p>
+ *
+ * <p>
+ * Every sitemap being parsed is counted as pending work by the crawl's
+ * {@link CompletionTracker}, so that the crawl does not look finished while
+ * URLs may still come.
+ * </p>
+ *
+ * @author billy
+ */
+public class SitemapSource {
+
+    /**
+     * The time, in milliseconds, to wait for data before giving up.
+     */
+    private static final int READ_TIMEOUT = 20000;
+
+    /**
+     * How deep sitemap indexes are followed.
+     */
+    private static final int MAX_DEPTH = 4;
+
+    /**
+     * The maximum length of the text of an element.
+     */
+    private static final int MAX_TEXT = 4096;
+
+    /**
+     * The priority of an entry without one, as in the sitemap protocol.
+     */
+    private static final double DEFAULT_PRIORITY = 0.5;
+
+    /**
+     * Receives the entries of the sitemaps.
+     */
+    public interface Sink {
+
+        /**
+         * Offers an entry to the crawler.
+         *
+         * @param url
+         *     The URL of the page.
+         * @param lastModified
+         *     The {@code <lastmod>} of the page in milliseconds since the
+         *     epoch; -1 if unknown.
+         * @param priority
+         *     The {@code <priority>} of the page.
+         */
+        void offer(URL url, long lastModified, double priority);
+    }
+
+    private final String agent;
+
+    /**
+     * The connection timeout in milliseconds.
+     */
+    private final int connectTimeout;
+
+    /**
+     * The size of the reordering window of each sitemap.
+     */
+    private final int window;
+
+    private final Sink sink;
+
+    private final CompletionTracker tracker;
+
+    private final ExecutorService executor;
+
+    private final SAXParserFactory factory;
+
+    /**
+     * The sitemaps submitted so far, so that each is parsed once.
+     */
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong sitemaps = new AtomicLong();
+
+    private final AtomicLong entries = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param agent
+     *     The agent name to introduce the crawler with.
+     * @param timeout
+     *     The connection timeout in seconds.
+     * @param threads
+     *     The number of sitemaps parsed at once.
+     * @param window
+     *     The number of entries of a sitemap reordered at once.
+     * @param sink
+     *     Where the entries go.
+     * @param tracker
+     *     The tracker of the crawl's pending work.
+     */
+    public SitemapSource(String agent, int timeout, int threads, int window,
+            Sink sink, CompletionTracker tracker
+            ) {
+        this.agent = agent;
+        this.connectTimeout = 1000 * timeout;
+        this.window = Math.max(1, window);
+        this.sink = sink;
+        this.tracker = tracker;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "sitemap-source");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            // Sitemaps come from anywhere; do not resolve their entities.
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        }
+        catch (ParserConfigurationException | SAXException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts parsing a sitemap, or a sitemap index, in the background.
+     *
+     * @param sitemap
+     *     The URL of the sitemap.
+     */
+    public void submit(URL sitemap) {
+        submit(sitemap, 0);
+    }
+
+    /**
+     * Stops parsing. The sitemaps still being parsed are abandoned.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void submit(final URL sitemap, final int depth) {
+        if (depth > MAX_DEPTH || !seen.add(sitemap.toString())) {
+            return;
+        }
+
+        tracker.accepted();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        parse(sitemap, depth);
+                        sitemaps.incrementAndGet();
+                    }
+                    catch (IOException | SAXException | ParserConfigurationException e) {
+                        System.out.println("Warning: Sitemap " + sitemap + " failed: " + e);
+                        failures.incrementAndGet();
+                    }
+                    finally {
+                        // No spider stands for a sitemap.
+                        tracker.discarded();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException ree) {
+            tracker.discarded();
+        }
+    }
+
+    /**
+     * Parses a sitemap on the calling thread.
+     *
+     * @param sitemap
+     *     The URL of the sitemap.
+     * @param depth
+     *     How many sitemap indexes lead to it.
+     *
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    private void parse(URL sitemap, int depth)
+            throws IOException, SAXException, ParserConfigurationException {
+        URLConnection conn = sitemap.openConnection();
+        conn.addRequestProperty("User-Agent", agent);
+        conn.addRequestProperty("Accept-Encoding", "gzip");
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(READ_TIMEOUT);
+        if (conn instanceof HttpURLConnection) {
+            int status = ((HttpURLConnection) conn).getResponseCode();
+            if (status >= 400) {
+                throw new IOException("Server returned HTTP response code: " + status);
+            }
+        }
+
+        try (InputStream in = decompressed(conn.getInputStream())) {
+            SAXParser parser = factory.newSAXParser();
+            SitemapHandler handler = new SitemapHandler(sitemap, depth);
+            parser.parse(in, handler);
+            handler.flush();
+        }
+    }
+
+    /**
+     * Wraps a stream into a gzip one if it is gzipped.
+     *
+     * @param raw
+     *     The stream as received.
+     *
+     * @return
+     *     The decompressed stream.
+     *
+     * @throws IOException
+     */
+    private static InputStream decompressed(InputStream raw)
+            throws IOException {
+        PushbackInputStream in = new PushbackInputStream(new BufferedInputStream(raw), 2);
+        int b1 = in.read();
+        int b2 = in.read();
+        if (b2 != -1) {
+            in.unread(b2);
+        }
+        if (b1 != -1) {
+            in.unread(b1);
+        }
+
+        if (b1 == 0x1f && b2 == 0x8b) {
+            return new GZIPInputStream(in, 8192);
+        }
+
+        return in;
+    }
+
+    /**
+     * Parses a W3C date-time, as found in {@code <lastmod>}.
+     *
+     * @param s
+     *     The date-time, e.g. {@code 2024-01-31} or
+     *     {@code 2024-01-31T10:00:00+02:00}.
+     *
+     * @return
+     *     The time in milliseconds since the epoch; -1 if not parsable.
+     */
+    static long parseLastModified(String s) {
+        String t = s.trim();
+        try {
+            if (t.length() <= 10) {
+                return LocalDate.parse(t).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            return OffsetDateTime.parse(t).toInstant().toEpochMilli();
+        }
+        catch (DateTimeParseException dtpe) {
+            return -1;
+        }
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the number of sitemaps parsed so far.
+     *
+     * @return
+     *     The number of sitemaps.
+     */
+    public long getSitemaps() {
+        return sitemaps.get();
+    }
+
+    /**
+     * Gets the number of entries offered so far.
+     *
+     * @return
+     *     The number of entries.
+     */
+    public long getEntries() {
+        return entries.get();
+    }
+
+    /**
+     * Gets the number of sitemaps that failed.
+     *
+     * @return
+     *     The number of failures.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+
+    /**
+     * An entry of a sitemap.
+     */
+    private static class Entry {
+
+        private final URL url;
+
+        private final long lastModified;
+
+        private final double priority;
+
+        Entry(URL url, long lastModified, double priority) {
+            this.url = url;
+            this.lastModified = lastModified;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * The most urgent entries first: the highest priority, then the most
+     * recently modified.
+     */
+    private static final Comparator<Entry> URGENCY = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int c = Double.compare(b.priority, a.priority);
+            return c != 0 ? c : Long.compare(b.lastModified, a.lastModified);
+        }
+    };
+
+
+    /**
+     * Handles the SAX events of a single sitemap or sitemap index.
+     */
+    private class SitemapHandler extends DefaultHandler {
+
+        private final URL sitemap;
+
+        private final int depth;
+
+        /**
+         * The entries waiting to be offered, most urgent first.
+         */
+        private final PriorityQueue<Entry> pending = new PriorityQueue<Entry>(64, URGENCY);
+
+        private final StringBuilder text = new StringBuilder(256);
+
+        private boolean inText = false;
+
+        private String loc;
+
+        private long lastModified;
+
+        private double priority;
+
+        SitemapHandler(URL sitemap, int depth) {
+            this.sitemap = sitemap;
+            this.depth = depth;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName.isEmpty() ? qName : localName;
+            if (name.equals("url") || name.equals("sitemap")) {
+                loc = null;
+                lastModified = -1;
+                priority = DEFAULT_PRIORITY;
+            }
+            else if (name.equals("loc") || name.equals("lastmod") || name.equals("priority")) {
+                text.setLength(0);
+                inText = true;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText && text.length() < MAX_TEXT) {
+                text.append(ch, start, Math.min(length, MAX_TEXT - text.length()));
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String name = localName.isEmpty() ? qName : localName;
+            inText = false;
+
+            if (name.equals("loc")) {
+                loc = text.toString().trim();
+            }
+            else if (name.equals("lastmod")) {
+                lastModified = parseLastModified(text.toString());
+            }
+            else if (name.equals("priority")) {
+                try {
+                    priority = Double.parseDouble(text.toString().trim());
+                }
+                catch (NumberFormatException nfe) {
+                    priority = DEFAULT_PRIORITY;
+                }
+            }
+            else if (name.equals("url") && loc != null) {
+                try {
+                    pending.add(new Entry(URLCanonicalizer.resolve(sitemap, loc), lastModified, priority));
+                    if (pending.size() >= window) {
+                        offer(pending.poll());
+                    }
+                }
+                catch (MalformedURLException murle) {
+                    // Skip it.
+                }
+            }
+            else if (name.equals("sitemap") && loc != null) {
+                try {
+                    submit(URLCanonicalizer.resolve(sitemap, loc), depth + 1);
+                }
+                catch (MalformedURLException murle) {
+                    // Skip it.
+                }
+            }
+        }
+
+        /**
+         * Offers the entries left in the window.
+         */
+        void flush() {
+            Entry e;
+            while ((e = pending.poll()) != null) {
+                offer(e);
+            }
+        }
+
+        private void offer(Entry e) {
+            entries.incrementAndGet();
+            sink.offer(e.url, e.lastModified, e.priority);
+        }
+    }
+
+}
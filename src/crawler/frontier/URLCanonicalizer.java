@@ -0,0 +1,499 @@
+package crawler.frontier;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Turns the links found in the crawled pages into absolute URLs in a
+ * canonical form, so that the same page reached through different spellings
+ * of its URL is only crawled once.
+ * </p>
+ *
+ * <p>
+ * A link is resolved against the URL (or {@code base}) of the page it was
+ * found in. Then the scheme and the host are lower-cased, the default port,
+ * the fragment and any {@code ;jsessionid} are dropped, the percent-encoding
+ * is normalized (unreserved characters decoded, the rest upper-cased, raw
+ * spaces and non-ASCII characters encoded) and the {@code .} and {@code ..}
+ * segments of the path are removed. Finally, the query parameters matching
+ * the configured names are dropped and the rest are optionally sorted.
+ * </p>
+ *
+ * <p>
+ * Only {@code http} and {@code https} URLs are accepted. This class is
+ * thread-safe.
+ * </p>
+ *
+ * @author billy
+ */
+public class URLCanonicalizer {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Orders the query parameters by name alone.
+     */
+    private static final Comparator<String> BY_NAME = new Comparator<String>() {
+        @Override
+        public int compare(String p1, String p2) {
+            return name(p1).compareTo(name(p2));
+        }
+    };
+
+    /**
+     * Whether the query parameters are sorted.
+     */
+    private final boolean sortQuery;
+
+    /**
+     * The lower-cased names of the dropped query parameters. A name ending in
+     * {@code *} matches every parameter starting with it.
+     */
+    private final String[] strippedParameters;
+
+    /**
+     * Constructor.
+     *
+     * @param sortQuery
+     *     Whether the query parameters are sorted.
+     * @param strippedParameters
+     *     The names of the query parameters to be dropped, e.g. tracking or
+     *     session ones; a trailing {@code *} matches any suffix.
+     */
+    public URLCanonicalizer(boolean sortQuery, String... strippedParameters) {
+        this.sortQuery = sortQuery;
+
+        List<String> names = new ArrayList<String>();
+        for (String name : strippedParameters) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.strippedParameters = names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Resolves a link against the page it was found in and canonicalizes it.
+     *
+     * @param base
+     *     The URL of the page, or its {@code base}.
+     * @param link
+     *     The link, as found in the page.
+     *
+     * @return
+     *     The canonical URL.
+     *
+     * @throws MalformedURLException
+     *     If the link is not a valid, or not an HTTP(S), URL.
+     */
+    public URL canonicalize(URL base, String link)
+            throws MalformedURLException {
+        return canonicalize(resolve(base, link));
+    }
+
+    /**
+     * Resolves a link against the page it was found in, without
+     * canonicalizing it. Unlike {@link URI#resolve(URI)}, it puts up with the
+     * raw spaces, non-ASCII characters and stray {@code %} found in the wild
+     * by escaping them first; the fragment is dropped.
+     *
+     * @param base
+     *     The URL of the page, or its {@code base}.
+     * @param link
+     *     The link, as found in the page.
+     *
+     * @return
+     *     The absolute URL.
+     *
+     * @throws MalformedURLException
+     *     If the link is not a valid URL.
+     */
+    public static URL resolve(URL base, String link)
+            throws MalformedURLException {
+        URI b = toURI(base.toString());
+        String l = stripFragment(link.trim());
+        if (l.isEmpty()) {
+            // java.net.URI would drop the last segment.
+            return toURL(b);
+        }
+        if (l.startsWith("?")) {
+            // java.net.URI follows RFC 2396 here and drops the last segment.
+            String path = b.getRawPath();
+            l = (path == null || path.isEmpty() ? "/" : path) + l;
+        }
+
+        return toURL(b.resolve(toURI(l)));
+    }
+
+    /**
+     * Parses an absolute URL, escaping the characters {@link URI} rejects as
+     * {@link #resolve(URL, String)} does.
+     *
+     * @param url
+     *     The URL.
+     *
+     * @return
+     *     The URL.
+     *
+     * @throws MalformedURLException
+     *     If it is not a valid, absolute URL.
+     */
+    public static URL toURL(String url)
+            throws MalformedURLException {
+        return toURL(toURI(url));
+    }
+
+    private static URL toURL(URI uri)
+            throws MalformedURLException {
+        try {
+            return uri.toURL();
+        }
+        catch (IllegalArgumentException iae) {
+            // Not absolute.
+            throw new MalformedURLException(iae.getMessage() + ": " + uri);
+        }
+    }
+
+    /**
+     * Parses a URL or link, escaping what {@link URI} rejects: spaces,
+     * controls and non-ASCII characters, the few ASCII ones that are never
+     * allowed, brackets outside of the authority and {@code %} not followed
+     * by two hex digits. The fragment is dropped.
+     *
+     * @param s
+     *     The URL or link.
+     *
+     * @return
+     *     The URI.
+     *
+     * @throws MalformedURLException
+     *     If it is still not a valid URI.
+     */
+    static URI toURI(String s)
+            throws MalformedURLException {
+        s = stripFragment(s);
+
+        // Where the authority, in which brackets enclose IPv6 addresses,
+        // ends; zero if there is none.
+        int authorityEnd = 0;
+        int slashes = s.indexOf("//");
+        if (slashes == 0 || (slashes > 0 && s.indexOf(':') == slashes - 1)) {
+            authorityEnd = s.length();
+            for (int i = slashes + 2; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '/' || c == '?') {
+                    authorityEnd = i;
+                    break;
+                }
+            }
+        }
+
+        StringBuilder sb = null;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            boolean escaped;
+            if (c == '%') {
+                escaped = !(i + 2 < n && isHex(s.charAt(i + 1)) && isHex(s.charAt(i + 2)));
+            }
+            else if (c == '[' || c == ']') {
+                escaped = i >= authorityEnd;
+            }
+            else {
+                escaped = c <= 0x20 || c >= 0x7F || "\"<>\\^`{|}".indexOf(c) != -1;
+            }
+
+            if (escaped) {
+                if (sb == null) {
+                    sb = new StringBuilder(n + 16).append(s, 0, i);
+                }
+                int end = i + 1;
+                if (Character.isHighSurrogate(c) && end < n && Character.isLowSurrogate(s.charAt(end))) {
+                    end++;
+                }
+                for (byte b : s.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+                i = end - 1;
+            }
+            else if (sb != null) {
+                sb.append(c);
+            }
+        }
+
+        try {
+            return new URI(sb == null ? s : sb.toString());
+        }
+        catch (URISyntaxException use) {
+            throw new MalformedURLException(use.getMessage());
+        }
+    }
+
+    private static String stripFragment(String s) {
+        int hash = s.indexOf('#');
+        return hash == -1 ? s : s.substring(0, hash);
+    }
+
+    /**
+     * Canonicalizes an absolute URL.
+     *
+     * @param url
+     *     The URL.
+     *
+     * @return
+     *     The canonical URL.
+     *
+     * @throws MalformedURLException
+     *     If the URL is not an HTTP(S) one.
+     */
+    public URL canonicalize(URL url)
+            throws MalformedURLException {
+        String scheme = url.getProtocol().toLowerCase(Locale.ROOT);
+        int defaultPort;
+        if (scheme.equals("http")) {
+            defaultPort = 80;
+        }
+        else if (scheme.equals("https")) {
+            defaultPort = 443;
+        }
+        else {
+            throw new MalformedURLException("Unsupported protocol: " + url);
+        }
+
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        while (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (host.isEmpty()) {
+            throw new MalformedURLException("No host: " + url);
+        }
+
+        StringBuilder sb = new StringBuilder(url.toString().length());
+        sb.append(scheme).append("://");
+        if (url.getUserInfo() != null) {
+            sb.append(url.getUserInfo()).append('@');
+        }
+        sb.append(host);
+        if (url.getPort() != -1 && url.getPort() != defaultPort) {
+            sb.append(':').append(url.getPort());
+        }
+
+        String path = url.getPath();
+        path = stripSessionId(path);
+        sb.append(removeDotSegments(normalizeEncoding(path.isEmpty() ? "/" : path)));
+
+        String query = url.getQuery();
+        if (query != null) {
+            query = canonicalizeQuery(normalizeEncoding(query));
+            if (!query.isEmpty()) {
+                sb.append('?').append(query);
+            }
+        }
+
+        return toURL(sb.toString());
+    }
+
+    /**
+     * Drops the unwanted query parameters and sorts the rest if configured.
+     *
+     * @param query
+     *     The query, without the {@code ?}.
+     *
+     * @return
+     *     The canonical query; empty if no parameter is left.
+     */
+    private String canonicalizeQuery(String query) {
+        List<String> parameters = new ArrayList<String>();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty() && !isStripped(parameter)) {
+                parameters.add(parameter);
+            }
+        }
+        if (sortQuery) {
+            // By name only and stable, so the values of a repeated name keep
+            // their order, which the server may depend on.
+            Collections.sort(parameters, BY_NAME);
+        }
+
+        StringBuilder sb = new StringBuilder(query.length());
+        for (String parameter : parameters) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(parameter);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Checks whether a query parameter is to be dropped.
+     *
+     * @param parameter
+     *     The parameter, as in {@code name=value}.
+     *
+     * @return
+     *     {@code true} if it is to be dropped; {@code false} otherwise.
+     */
+    private boolean isStripped(String parameter) {
+        String name = name(parameter).toLowerCase(Locale.ROOT);
+        for (String stripped : strippedParameters) {
+            if (stripped.endsWith("*") ?
+                    name.startsWith(stripped.substring(0, stripped.length() - 1)) :
+                    name.equals(stripped)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the name of a query parameter.
+     *
+     * @param parameter
+     *     The parameter, as in {@code name=value}.
+     *
+     * @return
+     *     The name.
+     */
+    private static String name(String parameter) {
+        int eq = parameter.indexOf('=');
+        return eq == -1 ? parameter : parameter.substring(0, eq);
+    }
+
+    /**
+     * Removes a {@code ;jsessionid=...} path parameter.
+     *
+     * @param path
+     *     The path.
+     *
+     * @return
+     *     The path without the session id.
+     */
+    static String stripSessionId(String path) {
+        int i = path.toLowerCase(Locale.ROOT).indexOf(";jsessionid=");
+        if (i == -1) {
+            return path;
+        }
+        int end = path.indexOf('/', i);
+
+        return path.substring(0, i) + (end == -1 ? "" : path.substring(end));
+    }
+
+    /**
+     * Removes the {@code .} and {@code ..} segments of a path, as in RFC
+     * 3986, section 5.2.4.
+     *
+     * @param path
+     *     An absolute path.
+     *
+     * @return
+     *     The path without dot segments.
+     */
+    static String removeDotSegments(String path) {
+        if (path.indexOf('.') == -1) {
+            return path;
+        }
+
+        String[] segments = path.split("/", -1);
+        List<String> out = new ArrayList<String>(segments.length);
+        boolean trailing = false;
+        // The first segment is the empty one before the leading slash.
+        for (String segment : Arrays.asList(segments).subList(1, segments.length)) {
+            trailing = false;
+            if (segment.equals(".")) {
+                trailing = true;
+            }
+            else if (segment.equals("..")) {
+                if (!out.isEmpty()) {
+                    out.remove(out.size() - 1);
+                }
+                trailing = true;
+            }
+            else {
+                out.add(segment);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(path.length());
+        for (String segment : out) {
+            sb.append('/').append(segment);
+        }
+        if (trailing || sb.length() == 0) {
+            sb.append('/');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Normalizes the percent-encoding of a path or query: unreserved
+     * characters are decoded, the hex digits of the rest are upper-cased
+     * and spaces, controls and non-ASCII characters are encoded as UTF-8.
+     *
+     * @param s
+     *     The path or query.
+     *
+     * @return
+     *     The normalized path or query.
+     */
+    static String normalizeEncoding(String s) {
+        StringBuilder sb = null;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < n && isHex(s.charAt(i + 1)) && isHex(s.charAt(i + 2))) {
+                if (sb == null) {
+                    sb = new StringBuilder(n + 16).append(s, 0, i);
+                }
+                int v = Character.digit(s.charAt(i + 1), 16) * 16 + Character.digit(s.charAt(i + 2), 16);
+                if (isUnreserved((char) v)) {
+                    sb.append((char) v);
+                }
+                else {
+                    sb.append('%').append(HEX[v >> 4]).append(HEX[v & 0xF]);
+                }
+                i += 2;
+            }
+            else if (c <= 0x20 || c >= 0x7F) {
+                if (sb == null) {
+                    sb = new StringBuilder(n + 16).append(s, 0, i);
+                }
+                int end = i + 1;
+                if (Character.isHighSurrogate(c) && end < n && Character.isLowSurrogate(s.charAt(end))) {
+                    end++;
+                }
+                for (byte b : s.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+                i = end - 1;
+            }
+            else if (sb != null) {
+                sb.append(c);
+            }
+        }
+
+        return sb == null ? s : sb.toString();
+    }
+
+    private static boolean isHex(char c) {
+        return Character.digit(c, 16) != -1 && c < 0x80;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+}
@@ -0,0 +1,187 @@
+package crawler.index;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+
+/**
+ * <p>
+ * The layout of the documents in the crawler's <emph>Lucene</emph> index.
+ * </p>
+ *
+ * <p>
+ * Identifiers (the URL, the remote and local URIs, the domain name and the
+ * content type) are indexed as single, non-tokenized terms, which is cheaper
+ * to build and store and allows exact look-ups. Only the title and the
+ * content are analyzed, each with an analyzer of its own. The content is
+ * indexed but, unless configured otherwise, not stored since it already lives
+ * on the file-system and in the database. Each document is keyed by its
+ * full URL so that re-crawling a page replaces its document.
+ * </p>
+ *
+ * @author billy
+ */
+public class IndexSchema {
+
+    public static final String URL = "url";
+
+    public static final String REMOTE_URI = "remoteURI";
+
+    public static final String LOCAL_URI = "localURI";
+
+    public static final String TITLE = "title";
+
+    public static final String CONTENT = "content";
+
+    public static final String DOMAIN_NAME = "domainName";
+
+    public static final String CONTENT_TYPE = "contentType";
+
+    /**
+     * Whether the content is stored along with being indexed.
+     */
+    private final boolean storeContent;
+
+    /**
+     * The analyzer of the title and content fields.
+     */
+    private final Analyzer analyzer;
+
+    /**
+     * Constructor.
+     *
+     * @param storeContent
+     *     Whether the content is stored along with being indexed.
+     * @param titleAnalyzer
+     *     The name of the analyzer of the title field; one of
+     *     {@code english}, {@code standard}, {@code simple},
+     *     {@code whitespace} and {@code keyword}.
+     * @param contentAnalyzer
+     *     The name of the analyzer of the content field.
+     */
+    public IndexSchema(boolean storeContent, String titleAnalyzer, String contentAnalyzer) {
+        this.storeContent = storeContent;
+
+        Map<String, Analyzer> analyzers = new HashMap<String, Analyzer>();
+        analyzers.put(TITLE, analyzer(titleAnalyzer));
+        analyzers.put(CONTENT, analyzer(contentAnalyzer));
+        // Any other (i.e. identifier) field is kept as a single term.
+        this.analyzer = new PerFieldAnalyzerWrapper(new KeywordAnalyzer(), analyzers);
+    }
+
+    /**
+     * Builds the document of a web page.
+     *
+     * @param url
+     *     The full URL of the web page; the document's key.
+     * @param remoteURI
+     *     The remote URI of the web page.
+     * @param localURI
+     *     The local URI of the web page.
+     * @param title
+     *     The title of the web page.
+     * @param content
+     *     The content of the web page.
+     * @param domainName
+     *     The domain name of the web page.
+     * @param contentType
+     *     The content type of the web page.
+     *
+     * @return
+     *     The document.
+     */
+    public Document document(String url, String remoteURI, String localURI,
+            String title, String content, String domainName, String contentType
+            ) {
+        Document doc = new Document();
+        doc.add(new StringField(URL, url, Field.Store.YES));
+        doc.add(new StringField(REMOTE_URI, remoteURI, Field.Store.YES));
+        doc.add(new StringField(LOCAL_URI, localURI, Field.Store.YES));
+        doc.add(new TextField(TITLE, title, Field.Store.YES));
+        doc.add(new TextField(CONTENT, content, storeContent ? Field.Store.YES : Field.Store.NO));
+        doc.add(new StringField(DOMAIN_NAME, domainName, Field.Store.YES));
+        doc.add(new StringField(CONTENT_TYPE, contentType, Field.Store.YES));
+
+        return doc;
+    }
+
+    /**
+     * Gets the term identifying the document of the given URL.
+     *
+     * @param url
+     *     The full URL of the web page.
+     *
+     * @return
+     *     The key term.
+     */
+    public Term key(String url) {
+        return new Term(URL, url);
+    }
+
+    /**
+     * Gets the analyzer of the documents.
+     *
+     * @return
+     *     The per-field analyzer.
+     */
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Gets whether the content is stored.
+     *
+     * @return
+     *     {@code true} if the content is stored; {@code false} if it is only
+     *     indexed.
+     */
+    public boolean isStoreContent() {
+        return storeContent;
+    }
+
+    /**
+     * Creates an analyzer by name.
+     *
+     * @param name
+     *     The name of the analyzer.
+     *
+     * @return
+     *     The analyzer.
+     *
+     * @throws IllegalArgumentException
+     *     If the name is not known.
+     */
+    static Analyzer analyzer(String name) {
+        String n = name.trim().toLowerCase();
+        if (n.equals("english")) {
+            return new EnglishAnalyzer(IndexingService.LUCENE_VERSION);
+        }
+        else if (n.equals("standard")) {
+            return new StandardAnalyzer(IndexingService.LUCENE_VERSION);
+        }
+        else if (n.equals("simple")) {
+            return new SimpleAnalyzer(IndexingService.LUCENE_VERSION);
+        }
+        else if (n.equals("whitespace")) {
+            return new WhitespaceAnalyzer(IndexingService.LUCENE_VERSION);
+        }
+        else if (n.equals("keyword")) {
+            return new KeywordAnalyzer();
+        }
+
+        throw new IllegalArgumentException("Unknown analyzer: " + name);
+    }
+
+}
@@ -0,0 +1,433 @@
+package crawler.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * <p>
+ * A managed <emph>Lucene</emph> index the crawler's spiders write into.
+ * </p>
+ *
+ * <p>
+ * The index is committed, and thus made durable, every
+ * {@code commitDocuments} added documents or every {@code commitInterval}
+ * milliseconds, whichever comes first, instead of only when the crawler
+ * stops. In between, the documents are searchable in near-real-time through
+ * {@link #acquire()}, which is refreshed every {@code refreshInterval}
+ * milliseconds.
+ * </p>
+ *
+ * @author billy
+ */
+public class IndexingService implements IndexingServiceMXBean {
+
+    /**
+     * The Lucene version the index is compatible with.
+     */
+    public static final Version LUCENE_VERSION = Version.LUCENE_41;
+
+    private final Directory directory;
+
+    /**
+     * The layout of the indexed documents.
+     */
+    private final IndexSchema schema;
+
+    private final IndexWriter writer;
+
+    /**
+     * Provides the near-real-time searchers.
+     */
+    private final SearcherManager searcherManager;
+
+    /**
+     * The number of documents added after which the index is committed.
+     */
+    private final int commitDocuments;
+
+    /**
+     * Runs the periodic commits and refreshes.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Makes sure only one commit runs at a time.
+     */
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    /**
+     * The number of documents added since the last commit.
+     */
+    private final AtomicLong uncommitted = new AtomicLong();
+
+    private final AtomicLong documents = new AtomicLong();
+
+    private final AtomicLong commits = new AtomicLong();
+
+    private final AtomicLong totalCommitTime = new AtomicLong();
+
+    private volatile long lastCommitTime = 0;
+
+    private volatile long maximumCommitTime = 0;
+
+    /**
+     * Constructor. Opens (or creates) the index.
+     *
+     * @param indexPath
+     *     The path to the file-system where the index is stored.
+     * @param schema
+     *     The layout of the indexed documents.
+     * @param ramBufferSize
+     *     The memory, in MB, the writer may buffer documents in before
+     *     flushing them to the directory.
+     * @param commitDocuments
+     *     The number of documents added after which the index is
+     *     committed; non-positive to commit on time only.
+     * @param commitInterval
+     *     The maximum time, in milliseconds, between two commits.
+     * @param refreshInterval
+     *     The time, in milliseconds, between two refreshes of the
+     *     near-real-time searcher.
+     *
+     * @throws IOException
+     *     If the index could not be opened.
+     */
+    public IndexingService(String indexPath, IndexSchema schema, double ramBufferSize,
+            int commitDocuments, long commitInterval, long refreshInterval
+            ) throws IOException {
+        this.schema = schema;
+        this.commitDocuments = commitDocuments;
+
+        directory = new NIOFSDirectory(new File(indexPath));
+        IndexWriterConfig iwc = new IndexWriterConfig(LUCENE_VERSION, schema.getAnalyzer());
+        iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
+        iwc.setWriteLockTimeout(20000);
+        iwc.setRAMBufferSizeMB(ramBufferSize);
+        // Each index merges on its own threads.
+        iwc.setMergeScheduler(new ConcurrentMergeScheduler());
+        writer = new IndexWriter(directory, iwc);
+        searcherManager = new SearcherManager(writer, true, new SearcherFactory());
+
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "indexing-service");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (uncommitted.get() > 0) {
+                    commit();
+                }
+            }
+        }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a document to the index, committing if due.
+     *
+     * @param doc
+     *     The document to be added.
+     *
+     * @throws IOException
+     */
+    public void addDocument(Document doc)
+            throws IOException {
+        writer.addDocument(doc);
+        added();
+    }
+
+    /**
+     * Adds a document to the index, replacing any previous document with the
+     * same URL, and commits if due.
+     *
+     * @param doc
+     *     The document to be added, as built by the schema.
+     *
+     * @throws IOException
+     */
+    public void updateDocument(Document doc)
+            throws IOException {
+        writer.updateDocument(schema.key(doc.get(IndexSchema.URL)), doc);
+        added();
+    }
+
+    /**
+     * Deletes every document of the index. The deletion only becomes durable
+     * with the next commit.
+     *
+     * @throws IOException
+     */
+    public void deleteAll()
+            throws IOException {
+        writer.deleteAll();
+    }
+
+    /**
+     * Commits the pending changes of the index. If another commit is already
+     * running, it returns immediately as that one will cover them.
+     *
+     * @return
+     *     {@code true} if the commit succeeded; {@code false} if it failed
+     *     or was left to another thread.
+     */
+    public boolean commit() {
+        if (!commitLock.tryLock()) {
+            return false;
+        }
+
+        long pending = uncommitted.getAndSet(0);
+        try {
+            long start = System.nanoTime();
+            writer.commit();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            commits.incrementAndGet();
+            totalCommitTime.addAndGet(elapsed);
+            lastCommitTime = elapsed;
+            if (elapsed > maximumCommitTime) {
+                maximumCommitTime = elapsed;
+            }
+
+            return true;
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+            // They are still in the writer; the next commit will retry.
+            uncommitted.addAndGet(pending);
+            return false;
+        }
+        finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Acquires a near-real-time searcher over the index. It must be
+     * {@link #release(IndexSearcher) released} once done with.
+     *
+     * @return
+     *     A searcher.
+     *
+     * @throws IOException
+     */
+    public IndexSearcher acquire()
+            throws IOException {
+        return searcherManager.acquire();
+    }
+
+    /**
+     * Releases a searcher acquired through {@link #acquire()}.
+     *
+     * @param searcher
+     *     The searcher to be released.
+     *
+     * @throws IOException
+     */
+    public void release(IndexSearcher searcher)
+            throws IOException {
+        searcherManager.release(searcher);
+    }
+
+    /**
+     * Stops the periodic tasks, commits and closes the index.
+     *
+     * @throws IOException
+     */
+    public void close()
+            throws IOException {
+        // Let a running commit or refresh finish: interrupting Lucene's file
+        // I/O closes its channels and may leave the writer unusable.
+        timer.shutdown();
+        try {
+            if (!timer.awaitTermination(60, TimeUnit.SECONDS)) {
+                System.err.println("Indexing service timer did not terminate");
+            }
+        }
+        catch (InterruptedException ie) {
+            // Preserve interrupt status
+            Thread.currentThread().interrupt();
+        }
+        try {
+            searcherManager.close();
+        }
+        finally {
+            try {
+                writer.close();
+            }
+            finally {
+                directory.close();
+            }
+        }
+    }
+
+    /**
+     * Records that a document was added, committing if enough have been.
+     */
+    private void added() {
+        documents.incrementAndGet();
+        if (uncommitted.incrementAndGet() >= commitDocuments && commitDocuments > 0) {
+            commit();
+        }
+    }
+
+    /**
+     * Makes the recently added documents visible to newly acquired searchers.
+     */
+    private void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the underlying index writer.
+     *
+     * @return
+     *     The index writer.
+     */
+    public IndexWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Gets the layout of the indexed documents.
+     *
+     * @return
+     *     The schema.
+     */
+    public IndexSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets the number of documents added so far.
+     *
+     * @return
+     *     The number of added documents.
+     */
+    @Override
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    /**
+     * Gets the number of documents added since the last commit.
+     *
+     * @return
+     *     The number of uncommitted documents.
+     */
+    @Override
+    public long getUncommitted() {
+        return uncommitted.get();
+    }
+
+    /**
+     * Gets the number of commits so far.
+     *
+     * @return
+     *     The number of commits.
+     */
+    @Override
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * Gets the duration of the last commit.
+     *
+     * @return
+     *     The duration of the last commit in milliseconds.
+     */
+    @Override
+    public long getLastCommitTime() {
+        return lastCommitTime;
+    }
+
+    /**
+     * Gets the duration of the longest commit.
+     *
+     * @return
+     *     The duration of the longest commit in milliseconds.
+     */
+    @Override
+    public long getMaximumCommitTime() {
+        return maximumCommitTime;
+    }
+
+    /**
+     * Gets the average duration of the commits.
+     *
+     * @return
+     *     The average duration of the commits in milliseconds.
+     */
+    @Override
+    public double getAverageCommitTime() {
+        long n = commits.get();
+        return n == 0 ? 0 : (double) totalCommitTime.get() / n;
+    }
+
+    /**
+     * Gets the time spent committing.
+     *
+     * @return
+     *     The total duration of the commits in milliseconds.
+     */
+    public long getTotalCommitTime() {
+        return totalCommitTime.get();
+    }
+
+    /**
+     * Gets the memory used by the writer to buffer the documents not yet
+     * flushed to the directory.
+     *
+     * @return
+     *     The buffered RAM in bytes.
+     */
+    @Override
+    public long getBufferedBytes() {
+        try {
+            return writer.ramSizeInBytes();
+        }
+        catch (AlreadyClosedException ace) {
+            // Everything was flushed on close.
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package crawler.index;
+
+/**
+ * The JMX view of an {@link IndexingService}, or of all the shards of a
+ * {@link ShardedIndexingService} together.
+ *
+ * @author billy
+ */
+public interface IndexingServiceMXBean {
+
+    /**
+     * @return
+     *     The number of documents added so far.
+     */
+    long getDocuments();
+
+    /**
+     * @return
+     *     The number of documents added since the last commit.
+     */
+    long getUncommitted();
+
+    /**
+     * @return
+     *     The number of commits so far.
+     */
+    long getCommits();
+
+    /**
+     * @return
+     *     The duration of the last commit in milliseconds.
+     */
+    long getLastCommitTime();
+
+    /**
+     * @return
+     *     The duration of the longest commit in milliseconds.
+     */
+    long getMaximumCommitTime();
+
+    /**
+     * @return
+     *     The average duration of the commits in milliseconds.
+     */
+    double getAverageCommitTime();
+
+    /**
+     * @return
+     *     The memory, in bytes, buffering the documents not yet flushed.
+     */
+    long getBufferedBytes();
+
+}
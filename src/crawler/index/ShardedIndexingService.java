@@ -0,0 +1,514 @@
+package crawler.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * <p>
+ * A <emph>Lucene</emph> index split into a number of shards, each being an
+ * {@link IndexingService} of its own, with its own writer, RAM buffer, merge
+ * scheduler and commits, so that the spiders do not all contend on a single
+ * writer.
+ * </p>
+ *
+ * <p>
+ * A document is routed to a shard by the hash of either its domain name or
+ * its URL; either way a page always lands on the same shard, which keeps the
+ * updates by URL correct. With a single shard the index lives directly under
+ * the index path, as it did before sharding; otherwise shard {@code i} lives
+ * under {@code <indexPath>/shard-<i>}. The shards are searched together
+ * through {@link #acquire()}.
+ * </p>
+ *
+ * <p>
+ * Since a document's shard depends on their number, the number is recorded
+ * in the {@value #SHARDS_FILE} file of the index path, and an index is
+ * refused if opened with another number: changing it means deleting the
+ * index and re-indexing.
+ * </p>
+ *
+ * @author billy
+ */
+public class ShardedIndexingService implements IndexingServiceMXBean {
+
+    /**
+     * The file of the index path recording the number of shards.
+     */
+    public static final String SHARDS_FILE = "index.shards";
+
+    /**
+     * The layout of the indexed documents, shared by all shards.
+     */
+    private final IndexSchema schema;
+
+    private final IndexingService[] shards;
+
+    /**
+     * Whether documents are routed by their domain name rather than their
+     * URL.
+     */
+    private final boolean byDomain;
+
+    /**
+     * Constructor. Opens (or creates) every shard.
+     *
+     * @param indexPath
+     *     The path to the file-system where the shards are stored.
+     * @param schema
+     *     The layout of the indexed documents.
+     * @param shardNumber
+     *     The number of shards.
+     * @param shardBy
+     *     What the documents are routed by; either {@code domain} or
+     *     {@code url}.
+     * @param ramBufferSize
+     *     The memory, in MB, each shard may buffer documents in.
+     * @param commitDocuments
+     *     The number of documents added to a shard after which it is
+     *     committed; non-positive to commit on time only.
+     * @param commitInterval
+     *     The maximum time, in milliseconds, between two commits of a shard.
+     * @param refreshInterval
+     *     The time, in milliseconds, between two refreshes of the
+     *     near-real-time searchers.
+     *
+     * @throws IOException
+     *     If the index was created with another number of shards, or if a
+     *     shard could not be opened; the ones already opened are closed.
+     */
+    public ShardedIndexingService(String indexPath, IndexSchema schema, int shardNumber,
+            String shardBy, double ramBufferSize, int commitDocuments,
+            long commitInterval, long refreshInterval
+            ) throws IOException {
+        if (!shardBy.equalsIgnoreCase("domain") && !shardBy.equalsIgnoreCase("url")) {
+            throw new IllegalArgumentException("Unknown shard key: " + shardBy);
+        }
+
+        this.schema = schema;
+        this.byDomain = shardBy.equalsIgnoreCase("domain");
+        this.shards = new IndexingService[Math.max(1, shardNumber)];
+        checkShardNumber(new File(indexPath), shards.length);
+
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                String path = shards.length == 1 ?
+                        indexPath : new File(indexPath, "shard-" + i).getPath();
+                shards[i] = new IndexingService(
+                        path, schema, ramBufferSize,
+                        commitDocuments, commitInterval, refreshInterval
+                        );
+            }
+        }
+        catch (IOException ioe) {
+            closeQuietly();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Adds a document to its shard.
+     *
+     * @param doc
+     *     The document to be added, as built by the schema.
+     *
+     * @throws IOException
+     */
+    public void addDocument(Document doc)
+            throws IOException {
+        shardOf(doc).addDocument(doc);
+    }
+
+    /**
+     * Adds a document to its shard, replacing any previous document with the
+     * same URL.
+     *
+     * @param doc
+     *     The document to be added, as built by the schema.
+     *
+     * @throws IOException
+     */
+    public void updateDocument(Document doc)
+            throws IOException {
+        shardOf(doc).updateDocument(doc);
+    }
+
+    /**
+     * Deletes every document of every shard. The deletion only becomes
+     * durable with the next commit.
+     *
+     * @throws IOException
+     */
+    public void deleteAll()
+            throws IOException {
+        for (IndexingService shard : shards) {
+            shard.deleteAll();
+        }
+    }
+
+    /**
+     * Commits the pending changes of every shard.
+     *
+     * @return
+     *     {@code true} if every commit succeeded; {@code false} otherwise.
+     */
+    public boolean commit() {
+        boolean success = true;
+        for (IndexingService shard : shards) {
+            success &= shard.commit();
+        }
+
+        return success;
+    }
+
+    /**
+     * Acquires a near-real-time searcher over all the shards. It must be
+     * {@link Searcher#release() released} once done with.
+     *
+     * @return
+     *     A searcher.
+     *
+     * @throws IOException
+     */
+    public Searcher acquire()
+            throws IOException {
+        IndexSearcher[] parts = new IndexSearcher[shards.length];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                parts[i] = shards[i].acquire();
+            }
+        }
+        catch (IOException ioe) {
+            for (int i = 0; i < shards.length && parts[i] != null; i++) {
+                shards[i].release(parts[i]);
+            }
+            throw ioe;
+        }
+
+        return new Searcher(parts);
+    }
+
+    /**
+     * Closes every shard.
+     *
+     * @throws IOException
+     *     The first failure, once all the shards have been attempted.
+     */
+    public void close()
+            throws IOException {
+        IOException failure = null;
+        for (IndexingService shard : shards) {
+            try {
+                shard.close();
+            }
+            catch (IOException ioe) {
+                if (failure == null) {
+                    failure = ioe;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Checks the number of shards against the one the index was created
+     * with, and records it if the index is new. Indexes created before the
+     * number was recorded are told by their layout.
+     *
+     * @param directory
+     *     The index path.
+     * @param shardNumber
+     *     The number of shards.
+     *
+     * @throws IOException
+     *     If the index was created with another number of shards, or if
+     *     the number could not be read or recorded.
+     */
+    private static void checkShardNumber(File directory, int shardNumber)
+            throws IOException {
+        File file = new File(directory, SHARDS_FILE);
+        int existing = 0;
+        if (file.isFile()) {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            try {
+                existing = Integer.parseInt(content);
+            }
+            catch (NumberFormatException nfe) {
+                throw new IOException("Malformed " + file + ": " + content);
+            }
+        }
+        else {
+            boolean unsharded = false;
+            File[] entries = directory.listFiles();
+            if (entries != null) {
+                for (File entry : entries) {
+                    if (entry.isDirectory() && entry.getName().startsWith("shard-")) {
+                        existing++;
+                    }
+                    else if (entry.getName().startsWith("segments")) {
+                        unsharded = true;
+                    }
+                }
+            }
+            if (existing == 0 && unsharded) {
+                existing = 1;
+            }
+        }
+
+        if (existing != 0 && existing != shardNumber) {
+            throw new IOException(
+                    "The index at " + directory + " has " + existing + " shards, not " + shardNumber +
+                    "; delete it and re-index to change the number of shards"
+                    );
+        }
+        if (!file.isFile()) {
+            directory.mkdirs();
+            Files.write(file.toPath(), String.valueOf(shardNumber).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Closes the shards opened so far, ignoring any failure.
+     */
+    private void closeQuietly() {
+        for (IndexingService shard : shards) {
+            if (shard != null) {
+                try {
+                    shard.close();
+                }
+                catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the shard of a document.
+     *
+     * @param doc
+     *     The document.
+     *
+     * @return
+     *     The shard the document belongs to.
+     */
+    private IndexingService shardOf(Document doc) {
+        if (shards.length == 1) {
+            return shards[0];
+        }
+
+        String key = doc.get(byDomain ? IndexSchema.DOMAIN_NAME : IndexSchema.URL);
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the layout of the indexed documents.
+     *
+     * @return
+     *     The schema.
+     */
+    public IndexSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return
+     *     The number of shards.
+     */
+    public int getShardNumber() {
+        return shards.length;
+    }
+
+    /**
+     * Gets a single shard.
+     *
+     * @param i
+     *     The index of the shard.
+     *
+     * @return
+     *     The shard.
+     */
+    public IndexingService getShard(int i) {
+        return shards[i];
+    }
+
+    /**
+     * Gets the number of documents added to all the shards so far.
+     *
+     * @return
+     *     The number of added documents.
+     */
+    @Override
+    public long getDocuments() {
+        long n = 0;
+        for (IndexingService shard : shards) {
+            n += shard.getDocuments();
+        }
+        return n;
+    }
+
+    /**
+     * Gets the number of documents not yet committed in all the shards.
+     *
+     * @return
+     *     The number of uncommitted documents.
+     */
+    @Override
+    public long getUncommitted() {
+        long n = 0;
+        for (IndexingService shard : shards) {
+            n += shard.getUncommitted();
+        }
+        return n;
+    }
+
+    /**
+     * Gets the number of commits of all the shards so far.
+     *
+     * @return
+     *     The number of commits.
+     */
+    @Override
+    public long getCommits() {
+        long n = 0;
+        for (IndexingService shard : shards) {
+            n += shard.getCommits();
+        }
+        return n;
+    }
+
+    /**
+     * Gets the duration of the longest of the shards' last commits.
+     *
+     * @return
+     *     The duration of the longest last commit in milliseconds.
+     */
+    @Override
+    public long getLastCommitTime() {
+        long n = 0;
+        for (IndexingService shard : shards) {
+            n = Math.max(n, shard.getLastCommitTime());
+        }
+        return n;
+    }
+
+    /**
+     * Gets the duration of the longest commit of all the shards.
+     *
+     * @return
+     *     The duration of the longest commit in milliseconds.
+     */
+    @Override
+    public long getMaximumCommitTime() {
+        long n = 0;
+        for (IndexingService shard : shards) {
+            n = Math.max(n, shard.getMaximumCommitTime());
+        }
+        return n;
+    }
+
+    /**
+     * Gets the average duration of the commits of all the shards.
+     *
+     * @return
+     *     The average duration of the commits in milliseconds.
+     */
+    @Override
+    public double getAverageCommitTime() {
+        long commits = 0;
+        long time = 0;
+        for (IndexingService shard : shards) {
+            commits += shard.getCommits();
+            time += shard.getTotalCommitTime();
+        }
+        return commits == 0 ? 0 : (double) time / commits;
+    }
+
+    /**
+     * Gets the memory used by all the shards to buffer the documents not yet
+     * flushed.
+     *
+     * @return
+     *     The buffered RAM in bytes.
+     */
+    @Override
+    public long getBufferedBytes() {
+        long n = 0;
+        for (IndexingService shard : shards) {
+            n += shard.getBufferedBytes();
+        }
+        return n;
+    }
+
+
+    /**
+     * A searcher over all the shards, made of one near-real-time searcher
+     * per shard.
+     */
+    public class Searcher {
+
+        private final IndexSearcher[] parts;
+
+        private final MultiReader reader;
+
+        private final IndexSearcher searcher;
+
+        Searcher(IndexSearcher[] parts) {
+            this.parts = parts;
+
+            IndexReader[] readers = new IndexReader[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                readers[i] = parts[i].getIndexReader();
+            }
+            // The shards' readers belong to their searcher managers.
+            reader = new MultiReader(readers, false);
+            searcher = new IndexSearcher(reader);
+        }
+
+        /**
+         * Gets the searcher over all the shards.
+         *
+         * @return
+         *     The searcher.
+         */
+        public IndexSearcher getSearcher() {
+            return searcher;
+        }
+
+        /**
+         * Releases the per-shard searchers.
+         *
+         * @throws IOException
+         */
+        public void release()
+                throws IOException {
+            try {
+                reader.close();
+            }
+            finally {
+                for (int i = 0; i < parts.length; i++) {
+                    shards[i].release(parts[i]);
+                }
+            }
+        }
+    }
+
+}
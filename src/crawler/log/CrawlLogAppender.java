@@ -0,0 +1,318 @@
+package crawler.log;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+import crawler.WebCrawlerConfigurator;
+
+/**
+ * <p>
+ * The <emph>logback</emph> appender of the crawl log, the block of lines
+ * every spider reports about its page.
+ * </p>
+ *
+ * <p>
+ * Spiders only put their entries on a lock-free queue; a single writer
+ * thread drains it in batches into a file kept open, behind a large buffer
+ * flushed every {@code flushInterval} milliseconds. Entries are thus never
+ * interleaved, and a spider never waits for the disk. Should the writer fall
+ * {@code queueCapacity} entries behind, new entries are dropped, and their
+ * number noted in the log, rather than slowing the crawl down.
+ * </p>
+ *
+ * <p>
+ * The file is the {@code file} property of the appender if set, or else the
+ * crawler's {@code logFilePath}; it is only looked up with the first entry,
+ * once the command line has been parsed. If neither is set, or the file
+ * cannot be opened, the entries go to standard out.
+ * </p>
+ *
+ * @author billy
+ */
+public class CrawlLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * How long the writer sleeps when there is nothing to write, in
+     * nanoseconds.
+     */
+    private static final long IDLE_SLEEP = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final Queue<ILoggingEvent> queue = new ConcurrentLinkedQueue<ILoggingEvent>();
+
+    /**
+     * The number of entries on the queue; {@code ConcurrentLinkedQueue}
+     * counts them in linear time.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The entries dropped since the last note of it.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private String file = null;
+
+    private Layout<ILoggingEvent> layout = null;
+
+    private int queueCapacity = 100000;
+
+    private int batchSize = 512;
+
+    private int bufferSize = 64 * 1024;
+
+    private long flushInterval = 1000;
+
+    private Thread writer;
+
+    private volatile boolean running = false;
+
+    @Override
+    public void start() {
+        if (queueCapacity < 1 || batchSize < 1 || bufferSize < 1) {
+            addError("Invalid queueCapacity, batchSize or bufferSize of appender " + getName());
+            return;
+        }
+
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "crawl-log");
+        writer.setDaemon(true);
+        writer.start();
+        super.start();
+    }
+
+    /**
+     * Stops taking entries and waits for the writer to write the ones
+     * queued and close the file.
+     */
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+
+        super.stop();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+
+        // The writer thread formats it; capture what belongs to this one.
+        event.prepareForDeferredProcessing();
+        queue.offer(event);
+    }
+
+    /**
+     * The loop of the writer thread.
+     */
+    private void drain() {
+        Writer out = null;
+        boolean console = false;
+        long lastFlush = System.nanoTime();
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+
+        try {
+            while (running || !queue.isEmpty()) {
+                int n = 0;
+                ILoggingEvent event;
+                while (n < batchSize && (event = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    if (out == null) {
+                        String path = file != null && !file.trim().isEmpty() ?
+                                file : WebCrawlerConfigurator.getInstance().property("logFilePath");
+                        OutputStream stream = null;
+                        if (path != null && !path.trim().isEmpty()) {
+                            try {
+                                stream = new FileOutputStream(path.trim(), true);
+                            }
+                            catch (IOException ioe) {
+                                // Better on the console than lost.
+                                addError("Could not open the crawl log " + path.trim() + "; writing it to standard out", ioe);
+                            }
+                        }
+                        console = stream == null;
+                        out = new BufferedWriter(
+                                new OutputStreamWriter(console ? System.out : stream, UTF8),
+                                bufferSize
+                                );
+                    }
+                    out.write(layout == null ? event.getFormattedMessage() + "\n" : layout.doLayout(event));
+                    n++;
+                }
+
+                long lost = dropped.getAndSet(0);
+                if (lost > 0 && out != null) {
+                    out.write("# ** " + lost + " crawl log entries dropped\n");
+                }
+                if (n > 0) {
+                    written.addAndGet(n);
+                    batches.incrementAndGet();
+                }
+
+                long now = System.nanoTime();
+                if (out != null && now - lastFlush >= flushNanos) {
+                    out.flush();
+                    lastFlush = now;
+                }
+
+                if (n < batchSize && running) {
+                    LockSupport.parkNanos(this, Math.min(IDLE_SLEEP, flushNanos));
+                }
+            }
+        }
+        catch (IOException ioe) {
+            addError("Failed writing the crawl log", ioe);
+        }
+        finally {
+            if (out != null) {
+                try {
+                    if (console) {
+                        // Standard out is not ours to close.
+                        out.flush();
+                    }
+                    else {
+                        out.close();
+                    }
+                }
+                catch (IOException ioe) {
+                    addError("Failed closing the crawl log", ioe);
+                }
+            }
+        }
+    }
+
+
+    // -- Getters / Setters
+
+
+    /**
+     * Sets the file to write to, overriding the crawler's
+     * {@code logFilePath}.
+     *
+     * @param file
+     *     The path to the file.
+     */
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets the layout of the entries; by default, the message alone on a
+     * line.
+     *
+     * @param layout
+     *     The layout.
+     */
+    public void setLayout(Layout<ILoggingEvent> layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Sets the maximum number of entries waiting to be written.
+     *
+     * @param queueCapacity
+     *     The capacity of the queue.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of entries written in one go.
+     *
+     * @param batchSize
+     *     The size of a batch.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the size of the write buffer.
+     *
+     * @param bufferSize
+     *     The size of the buffer in characters.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Sets the maximum time the entries stay in the write buffer.
+     *
+     * @param flushInterval
+     *     The time between two flushes in milliseconds.
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Gets the number of entries written so far.
+     *
+     * @return
+     *     The number of entries.
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Gets the number of batches written so far.
+     *
+     * @return
+     *     The number of batches.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Gets the number of entries waiting to be written.
+     *
+     * @return
+     *     The number of entries.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+}
@@ -0,0 +1,375 @@
+package crawler.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * The instruments of a crawl: a {@link LatencyHistogram} per stage of the
+ * spiders, the pages and bytes fetched, the failures by cause, and the depth
+ * of the queue and the number of pages in flight.
+ * </p>
+ *
+ * <p>
+ * Everything is lock-free and cheap enough to record for every page. The
+ * metrics are published over JMX, under the {@code crawler} domain, and
+ * summed up in a single line by {@link #summary()}.
+ * </p>
+ *
+ * @author billy
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+
+    /**
+     * The stage from the request to the response headers: connecting, if
+     * need be, and waiting for the server.
+     */
+    public static final String CONNECT = "connect";
+
+    /**
+     * The stage of reading the response body.
+     */
+    public static final String DOWNLOAD = "download";
+
+    /**
+     * The stage of storing the raw copy.
+     */
+    public static final String STORE = "store";
+
+    /**
+     * The stage of extracting the title, the content and the links.
+     */
+    public static final String EXTRACT = "extract";
+
+    /**
+     * The stage of handing the page to the database writers; it only takes
+     * long if they fall behind.
+     */
+    public static final String DATABASE = "db";
+
+    /**
+     * The stage of adding the page to the index.
+     */
+    public static final String INDEX = "index";
+
+    private static final String DOMAIN = "crawler";
+
+    private final Map<String, LatencyHistogram> stages;
+
+    private final LongAdder pages = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final ConcurrentMap<String, LongAdder> errors =
+            new ConcurrentHashMap<String, LongAdder>();
+
+    private LongSupplier queued = null;
+
+    private LongSupplier inFlight = null;
+
+    private LongSupplier visited = null;
+
+    private LongSupplier visitedBytes = null;
+
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    private volatile long startTime = System.nanoTime();
+
+    /**
+     * The counts at the last summary, to tell the rates since.
+     */
+    private long lastTime = startTime;
+
+    private long lastPages = 0;
+
+    private long lastBytes = 0;
+
+    /**
+     * Constructor.
+     */
+    public CrawlMetrics() {
+        Map<String, LatencyHistogram> m = new LinkedHashMap<String, LatencyHistogram>();
+        for (String stage : new String[] { CONNECT, DOWNLOAD, STORE, EXTRACT, DATABASE, INDEX }) {
+            m.put(stage, new LatencyHistogram());
+        }
+        stages = Collections.unmodifiableMap(m);
+    }
+
+    /**
+     * Marks the start of the crawl, for the rates.
+     */
+    public synchronized void start() {
+        startTime = System.nanoTime();
+        lastTime = startTime;
+    }
+
+    /**
+     * Gets the histogram of a stage.
+     *
+     * @param stage
+     *     The stage, e.g. {@link #CONNECT}.
+     *
+     * @return
+     *     The histogram.
+     */
+    public LatencyHistogram stage(String stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Records a fetched page.
+     *
+     * @param size
+     *     The number of bytes downloaded.
+     */
+    public void fetched(long size) {
+        pages.increment();
+        bytes.add(size);
+    }
+
+    /**
+     * Records a failed page.
+     *
+     * @param cause
+     *     The cause of the failure, e.g. {@code HTTP 404}.
+     */
+    public void error(String cause) {
+        LongAdder n = errors.get(cause);
+        if (n == null) {
+            LongAdder created = new LongAdder();
+            n = errors.putIfAbsent(cause, created);
+            if (n == null) {
+                n = created;
+            }
+        }
+        n.increment();
+    }
+
+    /**
+     * Records a failed page.
+     *
+     * @param failure
+     *     The failure; it is counted by its class.
+     */
+    public void error(Throwable failure) {
+        error(failure.getClass().getSimpleName());
+    }
+
+    /**
+     * Publishes the metrics over JMX.
+     */
+    public synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=Crawl"), this);
+            for (Map.Entry<String, LatencyHistogram> e : stages.entrySet()) {
+                register(server, new ObjectName(DOMAIN + ":type=Stage,name=" + e.getKey()), e.getValue());
+            }
+        }
+        catch (JMException jme) {
+            // A crawl still runs without them.
+            jme.printStackTrace();
+        }
+    }
+
+    /**
+     * Withdraws the metrics from JMX.
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            }
+            catch (JMException jme) {
+                jme.printStackTrace();
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Publishes another bean over JMX along with the metrics, e.g. the
+     * index's. It is withdrawn by {@link #unregister()}.
+     *
+     * @param type
+     *     The type of the bean, e.g. {@code Index}.
+     * @param name
+     *     The name of the bean among those of its type; {@code null} if
+     *     there is only one.
+     * @param bean
+     *     The MBean or MXBean.
+     */
+    public synchronized void register(String type, String name, Object bean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=" + type + (name == null ? "" : ",name=" + name)), bean);
+        }
+        catch (JMException jme) {
+            jme.printStackTrace();
+        }
+    }
+
+    private void register(MBeanServer server, ObjectName name, Object bean)
+            throws JMException {
+        if (server.isRegistered(name)) {
+            // Left by another crawler of this JVM.
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+        registered.add(name);
+    }
+
+    /**
+     * Sums the crawl up in a line: the rates since the previous summary,
+     * the queue, the failures, and the median and 99th percentile latency
+     * of every stage in milliseconds.
+     *
+     * @return
+     *     The summary.
+     */
+    public synchronized String summary() {
+        long now = System.nanoTime();
+        long p = pages.sum();
+        long b = bytes.sum();
+        double seconds = Math.max((now - lastTime) / 1e9, 1e-3);
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(String.format(
+                "pages %d (%.1f/s), %.1f MB (%.2f MB/s), in-flight %d, queued %d, errors %d |",
+                p,
+                (p - lastPages) / seconds,
+                b / 1048576.0,
+                (b - lastBytes) / 1048576.0 / seconds,
+                getInFlight(),
+                getQueued(),
+                getErrorCount()
+                ));
+        for (Map.Entry<String, LatencyHistogram> e : stages.entrySet()) {
+            sb.append(String.format(" %s %.1f/%.1f", e.getKey(), e.getValue().getPercentile50(), e.getValue().getPercentile99()));
+        }
+        sb.append(" ms");
+
+        lastTime = now;
+        lastPages = p;
+        lastBytes = b;
+
+        return sb.toString();
+    }
+
+
+    // -- Getters / Setters
+
+
+    /**
+     * Sets where the number of URLs waiting to be crawled comes from.
+     *
+     * @param queued
+     *     The gauge of the queue.
+     */
+    public void setQueued(LongSupplier queued) {
+        this.queued = queued;
+    }
+
+    /**
+     * Sets where the number of pages being crawled comes from.
+     *
+     * @param inFlight
+     *     The gauge of the pages in flight.
+     */
+    public void setInFlight(LongSupplier inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * Sets where the number of URLs seen comes from.
+     *
+     * @param visited
+     *     The gauge of the {@code visited} set's size.
+     */
+    public void setVisited(LongSupplier visited) {
+        this.visited = visited;
+    }
+
+    /**
+     * Sets where the memory taken by the URLs seen comes from.
+     *
+     * @param visitedBytes
+     *     The gauge of the {@code visited} set's footprint.
+     */
+    public void setVisitedBytes(LongSupplier visitedBytes) {
+        this.visitedBytes = visitedBytes;
+    }
+
+    @Override
+    public long getPages() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return pages.sum() / Math.max((System.nanoTime() - startTime) / 1e9, 1e-3);
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return bytes.sum() / Math.max((System.nanoTime() - startTime) / 1e9, 1e-3);
+    }
+
+    @Override
+    public long getErrorCount() {
+        long n = 0;
+        for (LongAdder e : errors.values()) {
+            n += e.sum();
+        }
+        return n;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> m = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> e : errors.entrySet()) {
+            m.put(e.getKey(), e.getValue().sum());
+        }
+        return m;
+    }
+
+    @Override
+    public long getQueued() {
+        return queued == null ? 0 : queued.getAsLong();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight == null ? 0 : inFlight.getAsLong();
+    }
+
+    @Override
+    public long getVisited() {
+        return visited == null ? 0 : visited.getAsLong();
+    }
+
+    @Override
+    public long getVisitedBytes() {
+        return visitedBytes == null ? 0 : visitedBytes.getAsLong();
+    }
+
+}
@@ -0,0 +1,73 @@
+package crawler.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the {@link CrawlMetrics}.
+ *
+ * @author billy
+ */
+public interface CrawlMetricsMXBean {
+
+    /**
+     * @return
+     *     The number of pages fetched.
+     */
+    long getPages();
+
+    /**
+     * @return
+     *     The number of bytes downloaded.
+     */
+    long getBytes();
+
+    /**
+     * @return
+     *     The pages fetched per second since the start of the crawl.
+     */
+    double getPagesPerSecond();
+
+    /**
+     * @return
+     *     The bytes downloaded per second since the start of the crawl.
+     */
+    double getBytesPerSecond();
+
+    /**
+     * @return
+     *     The number of failed pages.
+     */
+    long getErrorCount();
+
+    /**
+     * @return
+     *     The number of failed pages by cause, e.g. {@code HTTP 404} or
+     *     {@code SocketTimeoutException}.
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * @return
+     *     The number of URLs waiting to be crawled.
+     */
+    long getQueued();
+
+    /**
+     * @return
+     *     The number of pages being crawled.
+     */
+    long getInFlight();
+
+    /**
+     * @return
+     *     The number of URLs seen, i.e. held by the {@code visited} set.
+     */
+    long getVisited();
+
+    /**
+     * @return
+     *     The memory, in bytes, taken by the {@code visited} set.
+     */
+    long getVisitedBytes();
+
+}
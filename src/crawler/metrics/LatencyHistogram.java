@@ -0,0 +1,189 @@
+package crawler.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A lock-free histogram of latencies, in the fashion of
+ * <emph>HdrHistogram</emph>.
+ * </p>
+ *
+ * <p>
+ * Latencies are recorded in microseconds into log-linear buckets: exact up
+ * to 64 &micro;s, then 32 buckets per power of two, so that any percentile is
+ * off by at most about 3%, from a microsecond to centuries, in a fixed
+ * array of counters. Recording is a few arithmetic operations and an atomic
+ * increment; percentiles are computed by walking a snapshot of the counters.
+ * </p>
+ *
+ * @author billy
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    /**
+     * The number of bits of a value kept by a bucket past the first.
+     */
+    private static final int SUB_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * The values below this one have a bucket each.
+     */
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    private static final int BUCKETS = LINEAR + (62 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final AtomicLong maximum = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *     The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        total.add(micros);
+
+        long max;
+        while (micros > (max = maximum.get()) && !maximum.compareAndSet(max, micros)) {
+            // Retry.
+        }
+    }
+
+    /**
+     * Records the latency since the given time.
+     *
+     * @param start
+     *     The start time, as in {@link System#nanoTime()}.
+     *
+     * @return
+     *     The current time, to chain the next stage from.
+     */
+    public long since(long start) {
+        long now = System.nanoTime();
+        record(now - start);
+        return now;
+    }
+
+    /**
+     * Gets a percentile of the latencies.
+     *
+     * @param percentile
+     *     The percentile, between 0 and 100.
+     *
+     * @return
+     *     The latency in milliseconds; 0 if none was recorded.
+     */
+    public double percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(value(i), maximum.get()) / 1000.0;
+            }
+        }
+
+        return maximum.get() / 1000.0;
+    }
+
+    /**
+     * Maps a value to its bucket.
+     *
+     * @param micros
+     *     The value.
+     *
+     * @return
+     *     The index of the bucket.
+     */
+    static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+        int top = (int) (micros >>> shift);
+
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    /**
+     * Maps a bucket to the highest value it holds.
+     *
+     * @param index
+     *     The index of the bucket.
+     *
+     * @return
+     *     The highest value of the bucket.
+     */
+    static long value(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+
+        int k = index - LINEAR;
+        int shift = k / SUB_BUCKETS + 1;
+        long top = k % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((top + 1) << shift) - 1;
+    }
+
+
+    // -- Getters
+
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public double getPercentile50() {
+        return percentile(50);
+    }
+
+    @Override
+    public double getPercentile90() {
+        return percentile(90);
+    }
+
+    @Override
+    public double getPercentile99() {
+        return percentile(99);
+    }
+
+    @Override
+    public double getMaximum() {
+        return maximum.get() / 1000.0;
+    }
+
+}
@@ -0,0 +1,47 @@
+package crawler.metrics;
+
+/**
+ * The JMX view of a {@link LatencyHistogram}. Latencies are in
+ * milliseconds.
+ *
+ * @author billy
+ */
+public interface LatencyHistogramMXBean {
+
+    /**
+     * @return
+     *     The number of latencies recorded.
+     */
+    long getCount();
+
+    /**
+     * @return
+     *     The mean latency.
+     */
+    double getMean();
+
+    /**
+     * @return
+     *     The median latency.
+     */
+    double getPercentile50();
+
+    /**
+     * @return
+     *     The 90th percentile of the latencies.
+     */
+    double getPercentile90();
+
+    /**
+     * @return
+     *     The 99th percentile of the latencies.
+     */
+    double getPercentile99();
+
+    /**
+     * @return
+     *     The highest latency.
+     */
+    double getMaximum();
+
+}
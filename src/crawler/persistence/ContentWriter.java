@@ -0,0 +1,374 @@
+package crawler.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+
+import crawler.content.Content;
+import crawler.content.Domain;
+import crawler.content.MIME;
+
+/**
+ * <p>
+ * A write-behind stage persisting {@link Content} records in batches.
+ * </p>
+ *
+ * <p>
+ * Spiders hand off their records through {@link #submit(Content)} to a
+ * bounded queue and carry on crawling. A few dedicated writer threads drain
+ * the queue and commit what they got in a single transaction once either
+ * {@code batchSize} records have been collected or {@code flushInterval}
+ * milliseconds have passed since the first one. When the database falls
+ * behind the queue fills up and {@code submit} blocks, slowing the spiders
+ * down.
+ * </p>
+ *
+ * <p>
+ * The submitted records carry <em>unresolved</em> {@link Domain} and
+ * {@link MIME} objects, that is objects with only their name and content type
+ * set respectively; these are resolved to the persisted ones by the writer
+ * through a {@link DimensionCache}.
+ * </p>
+ *
+ * @author billy
+ */
+public class ContentWriter {
+
+    /**
+     * The queue of records waiting to be written.
+     */
+    private final BlockingQueue<Content> queue;
+
+    /**
+     * The persistence layer providing the writers' entity managers.
+     */
+    private final PersistenceService persistenceService;
+
+    /**
+     * The cache resolving the records' domains and MIMEs.
+     */
+    private final DimensionCache dimensionCache;
+
+    /**
+     * The maximum number of records committed in one transaction.
+     */
+    private final int batchSize;
+
+    /**
+     * The maximum time, in milliseconds, a record may wait for its batch to
+     * fill up.
+     */
+    private final long flushInterval;
+
+    /**
+     * The writer threads.
+     */
+    private final Thread[] writers;
+
+    /**
+     * Set once no more records are to be submitted.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The number of records written so far.
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * The number of records that failed to be written.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * The number of batches committed so far.
+     */
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Constructor. The writer threads are started right away.
+     *
+     * @param persistenceService
+     *     The persistence layer to write through.
+     * @param dimensionCache
+     *     The cache resolving the records' domains and MIMEs.
+     * @param threadNumber
+     *     The number of writer threads.
+     * @param capacity
+     *     The maximum number of records waiting to be written before
+     *     {@link #submit(Content)} blocks.
+     * @param batchSize
+     *     The maximum number of records committed in one transaction.
+     * @param flushInterval
+     *     The maximum time, in milliseconds, a record may wait for its
+     *     batch to fill up.
+     */
+    public ContentWriter(PersistenceService persistenceService,
+            DimensionCache dimensionCache, int threadNumber,
+            int capacity, int batchSize, long flushInterval
+            ) {
+        this.persistenceService = persistenceService;
+        this.dimensionCache = dimensionCache;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.queue = new ArrayBlockingQueue<Content>(Math.max(this.batchSize, capacity));
+
+        writers = new Thread[Math.max(1, threadNumber)];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(new Writer(), "content-writer-" + i);
+            writers[i].start();
+        }
+    }
+
+    /**
+     * Hands off a record to be written. Blocks while the queue is full.
+     *
+     * @param content
+     *     The record to be written, with unresolved domain and MIME.
+     *
+     * @throws InterruptedException
+     *     If interrupted while waiting for space in the queue.
+     */
+    public void submit(Content content)
+            throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Content writer is closed");
+        }
+        queue.put(content);
+    }
+
+    /**
+     * Stops accepting records, waits for the pending ones to be written and
+     * for the writer threads to finish.
+     *
+     * @throws InterruptedException
+     *     If interrupted while waiting for the writer threads.
+     */
+    public void close()
+            throws InterruptedException {
+        closed = true;
+        for (Thread writer : writers) {
+            writer.join();
+        }
+    }
+
+    /**
+     * Writes the given batch in a single transaction. If that fails, the
+     * records are written one by one, so that a bad record does not take
+     * the rest of its batch down with it.
+     *
+     * @param batch
+     *     The records to be written.
+     */
+    private void write(List<Content> batch) {
+        if (persist(batch)) {
+            return;
+        }
+
+        if (batch.size() == 1) {
+            failed.incrementAndGet();
+            return;
+        }
+
+        for (Content c : batch) {
+            if (!persist(Collections.singletonList(c))) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Writes the given records in a single transaction. If it fails, the
+     * records are left as submitted, ready to be written again.
+     *
+     * @param batch
+     *     The records to be written.
+     *
+     * @return
+     *     {@code true} if the records were committed; {@code false}
+     *     otherwise.
+     */
+    private boolean persist(List<Content> batch) {
+        EntityManager em = persistenceService.entityManager();
+
+        // The unresolved dimensions, to retry with.
+        Domain[] domains = new Domain[batch.size()];
+        MIME[] mimes = new MIME[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            domains[i] = batch.get(i).getDomain();
+            mimes[i] = batch.get(i).getMime();
+        }
+
+        try {
+            // Resolve the dimensions first; any missing ones are created in
+            // transactions of their own.
+            int[] domainIds = new int[batch.size()];
+            int[] mimeIds = new int[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                domainIds[i] = dimensionCache.domainId(domains[i].getName());
+                mimeIds[i] = dimensionCache.mimeId(mimes[i].getContentType());
+            }
+
+            em.getTransaction().begin();
+
+            for (int i = 0; i < batch.size(); i++) {
+                Content c = batch.get(i);
+                c.setDomain(em.getReference(Domain.class, domainIds[i]));
+                c.setMime(em.getReference(MIME.class, mimeIds[i]));
+                em.persist(c);
+            }
+
+            em.getTransaction().commit();
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+
+            return true;
+        }
+        catch (RuntimeException re) {
+            // Not only PersistenceExceptions; whatever it is, the writer
+            // thread must survive it or the spiders block for good.
+            re.printStackTrace();
+            try {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            }
+            catch (RuntimeException rbe) {
+                rbe.printStackTrace();
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Content c = batch.get(i);
+                c.setId(0);
+                c.setDomain(domains[i]);
+                c.setMime(mimes[i]);
+            }
+
+            return false;
+        }
+        finally {
+            em.clear();
+        }
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the number of records waiting to be written.
+     *
+     * @return
+     *     The number of queued records.
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of records written so far.
+     *
+     * @return
+     *     The number of written records.
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Gets the number of records that failed to be written.
+     *
+     * @return
+     *     The number of failed records.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Gets the number of batches committed so far.
+     *
+     * @return
+     *     The number of committed batches.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+
+    /**
+     * The loop of a writer thread.
+     */
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            List<Content> batch = new ArrayList<Content>(batchSize);
+
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    collect(batch);
+                    if (!batch.isEmpty()) {
+                        try {
+                            write(batch);
+                        }
+                        catch (RuntimeException re) {
+                            // E.g. no entity manager to be had; drop the
+                            // batch but keep draining the queue.
+                            re.printStackTrace();
+                            failed.addAndGet(batch.size());
+                        }
+                        finally {
+                            batch.clear();
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException ie) {
+                // Write whatever was collected and leave.
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Collects records into the given batch until it is full or the flush
+         * interval has passed since the first one.
+         *
+         * @param batch
+         *     The batch to be filled.
+         *
+         * @throws InterruptedException
+         */
+        private void collect(List<Content> batch)
+                throws InterruptedException {
+            Content c = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+            if (c == null) {
+                return;
+            }
+            batch.add(c);
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+            while (batch.size() < batchSize) {
+                queue.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0) {
+                    break;
+                }
+                c = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (c == null) {
+                    break;
+                }
+                batch.add(c);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+package crawler.persistence;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import crawler.content.Domain;
+import crawler.content.MIME;
+
+/**
+ * <p>
+ * An in-memory cache of the {@link Domain} and {@link MIME} dimensions,
+ * mapping domain names and content types to the identification numbers of
+ * their persisted rows.
+ * </p>
+ *
+ * <p>
+ * The cache is preloaded with the existing rows on construction, so that the
+ * database is only hit for names never seen before. A miss creates the row
+ * while holding the dimension's lock, which guarantees that concurrent
+ * writers never insert the same name twice.
+ * </p>
+ *
+ * @author billy
+ */
+public class DimensionCache {
+
+    /**
+     * The persistence layer the missing rows are created through.
+     */
+    private final PersistenceService persistenceService;
+
+    /**
+     * The domain name to domain id mapping.
+     */
+    private final ConcurrentMap<String, Integer> domains =
+            new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The content type to MIME id mapping.
+     */
+    private final ConcurrentMap<String, Integer> mimes =
+            new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Guards the creation of new domains.
+     */
+    private final Object domainLock = new Object();
+
+    /**
+     * Guards the creation of new MIMEs.
+     */
+    private final Object mimeLock = new Object();
+
+    private final AtomicLong domainHits = new AtomicLong();
+
+    private final AtomicLong domainMisses = new AtomicLong();
+
+    private final AtomicLong mimeHits = new AtomicLong();
+
+    private final AtomicLong mimeMisses = new AtomicLong();
+
+    /**
+     * Constructor. Preloads the cache with all the persisted dimensions.
+     *
+     * @param persistenceService
+     *     The persistence layer to read and create the dimensions through.
+     */
+    public DimensionCache(PersistenceService persistenceService) {
+        this.persistenceService = persistenceService;
+
+        EntityManager em = persistenceService.getEntityManagerFactory().createEntityManager();
+        try {
+            for (Domain d : em.createQuery("SELECT x FROM Domain x", Domain.class).getResultList()) {
+                domains.putIfAbsent(d.getName(), d.getId());
+            }
+            for (MIME m : em.createQuery("SELECT x FROM MIME x", MIME.class).getResultList()) {
+                mimes.putIfAbsent(m.getContentType(), m.getId());
+            }
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Gets the id of the domain with the given name, creating it if needed.
+     *
+     * @param name
+     *     The domain name.
+     *
+     * @return
+     *     The id of the persisted domain.
+     *
+     * @throws PersistenceException
+     *     If the domain had to be created and this failed.
+     */
+    public int domainId(String name) {
+        Integer id = domains.get(name);
+        if (id != null) {
+            domainHits.incrementAndGet();
+            return id;
+        }
+
+        synchronized (domainLock) {
+            // Another writer may have created it while we were waiting.
+            id = domains.get(name);
+            if (id == null) {
+                domainMisses.incrementAndGet();
+                Domain d = new Domain();
+                d.setName(name);
+                create(d);
+                id = d.getId();
+                domains.put(name, id);
+            }
+            else {
+                domainHits.incrementAndGet();
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Gets the id of the MIME with the given content type, creating it if
+     * needed.
+     *
+     * @param contentType
+     *     The content type.
+     *
+     * @return
+     *     The id of the persisted MIME.
+     *
+     * @throws PersistenceException
+     *     If the MIME had to be created and this failed.
+     */
+    public int mimeId(String contentType) {
+        Integer id = mimes.get(contentType);
+        if (id != null) {
+            mimeHits.incrementAndGet();
+            return id;
+        }
+
+        synchronized (mimeLock) {
+            // Another writer may have created it while we were waiting.
+            id = mimes.get(contentType);
+            if (id == null) {
+                mimeMisses.incrementAndGet();
+                MIME m = new MIME();
+                m.setContentType(contentType);
+                create(m);
+                id = m.getId();
+                mimes.put(contentType, id);
+            }
+            else {
+                mimeHits.incrementAndGet();
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Persists the given dimension in a transaction of its own, so that its
+     * generated id is available on return.
+     *
+     * @param dimension
+     *     The dimension to be persisted.
+     */
+    private void create(Object dimension) {
+        EntityManager em = persistenceService.getEntityManagerFactory().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(dimension);
+            em.getTransaction().commit();
+        }
+        finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the number of domain look-ups answered from the cache.
+     *
+     * @return
+     *     The number of domain hits.
+     */
+    public long getDomainHits() {
+        return domainHits.get();
+    }
+
+    /**
+     * Gets the number of domain look-ups that created a new domain.
+     *
+     * @return
+     *     The number of domain misses.
+     */
+    public long getDomainMisses() {
+        return domainMisses.get();
+    }
+
+    /**
+     * Gets the number of MIME look-ups answered from the cache.
+     *
+     * @return
+     *     The number of MIME hits.
+     */
+    public long getMimeHits() {
+        return mimeHits.get();
+    }
+
+    /**
+     * Gets the number of MIME look-ups that created a new MIME.
+     *
+     * @return
+     *     The number of MIME misses.
+     */
+    public long getMimeMisses() {
+        return mimeMisses.get();
+    }
+
+    /**
+     * Gets the number of cached domains.
+     *
+     * @return
+     *     The number of cached domains.
+     */
+    public int getDomainCount() {
+        return domains.size();
+    }
+
+    /**
+     * Gets the number of cached MIMEs.
+     *
+     * @return
+     *     The number of cached MIMEs.
+     */
+    public int getMimeCount() {
+        return mimes.size();
+    }
+
+}
@@ -0,0 +1,152 @@
+package crawler.persistence;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * <p>
+ * The crawler-scoped persistence layer.
+ * </p>
+ *
+ * <p>
+ * A single {@code EntityManagerFactory} is created when the service is
+ * constructed and is shared by all the crawler's threads. Since an
+ * {@code EntityManager} is not thread-safe, each thread is handed its own one
+ * which is kept for the lifetime of the service; all of them are closed,
+ * along with the factory, on {@link #close()}.
+ * </p>
+ *
+ * @author billy
+ */
+public class PersistenceService {
+
+    /**
+     * The prefix of the EclipseLink properties configuring the default
+     * connection pool.
+     */
+    private static final String POOL_PROPERTY_PREFIX =
+            "eclipselink.connection-pool.default.";
+
+    /**
+     * The factory shared by all the crawler's threads.
+     */
+    private final EntityManagerFactory emf;
+
+    /**
+     * The entity manager of each thread.
+     */
+    private final ThreadLocal<EntityManager> entityManagers;
+
+    /**
+     * All the entity managers handed out so far, kept in order to close them
+     * on shutdown.
+     */
+    private final Queue<EntityManager> opened;
+
+    /**
+     * Constructor.
+     *
+     * @param persistenceUnitName
+     *     The name of the persistence unit (as in {@code persistence.xml}).
+     * @param maximumConnections
+     *     The maximum number of JDBC connections in the pool. Should
+     *     be close to the number of threads using the service; a
+     *     non-positive value leaves the provider's default in place.
+     */
+    public PersistenceService(String persistenceUnitName, int maximumConnections) {
+        this(Persistence.createEntityManagerFactory(
+                persistenceUnitName, poolProperties(maximumConnections)
+                ));
+    }
+
+    /**
+     * Constructor over an already created factory, e.g. one that needs no
+     * database.
+     *
+     * @param emf
+     *     The factory to be shared by all the crawler's threads; it is
+     *     closed along with the service.
+     */
+    PersistenceService(final EntityManagerFactory emf) {
+        this.emf = emf;
+        opened = new ConcurrentLinkedQueue<EntityManager>();
+        entityManagers = new ThreadLocal<EntityManager>() {
+            @Override
+            protected EntityManager initialValue() {
+                EntityManager em = emf.createEntityManager();
+                opened.add(em);
+                return em;
+            }
+        };
+    }
+
+    /**
+     * Builds the properties sizing the connection pool.
+     *
+     * @param maximumConnections
+     *     The maximum number of JDBC connections in the pool; a
+     *     non-positive value leaves the provider's default in place.
+     *
+     * @return
+     *     The pool properties, possibly none.
+     */
+    private static Map<String, String> poolProperties(int maximumConnections) {
+        Map<String, String> properties = new HashMap<String, String>();
+        if (maximumConnections > 0) {
+            String max = Integer.toString(maximumConnections);
+            properties.put(POOL_PROPERTY_PREFIX + "initial", "1");
+            properties.put(POOL_PROPERTY_PREFIX + "min", max);
+            properties.put(POOL_PROPERTY_PREFIX + "max", max);
+        }
+        return properties;
+    }
+
+    /**
+     * Gets the entity manager of the calling thread. Callers are expected to
+     * {@code clear()} it once done with a unit of work, and never to close it.
+     *
+     * @return
+     *     The entity manager bound to the calling thread.
+     */
+    public EntityManager entityManager() {
+        return entityManagers.get();
+    }
+
+    /**
+     * Gets the shared entity manager factory.
+     *
+     * @return
+     *     The entity manager factory.
+     */
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    /**
+     * Closes every entity manager handed out and then the factory itself,
+     * releasing the pooled connections. Must only be called once all the
+     * threads using the service are done.
+     */
+    public void close() {
+        EntityManager em;
+        while ((em = opened.poll()) != null) {
+            if (em.isOpen()) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+
+        if (emf.isOpen()) {
+            emf.close();
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package crawler.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import crawler.fetch.PageBuffer;
+
+/**
+ * <p>
+ * A compression codec for the raw copies.
+ * </p>
+ *
+ * <p>
+ * Copies are compressed one by one, so that each can still be read on its
+ * own, and the codec used is recorded along each, so that the configured
+ * codec can change between crawls. No codec, {@code none}, is represented
+ * by {@code null}.
+ * </p>
+ *
+ * @author billy
+ */
+public interface Codec {
+
+    /**
+     * Gets the name of the codec, as in the HTTP {@code Content-Encoding}.
+     *
+     * @return
+     *     The name.
+     */
+    String getName();
+
+    /**
+     * Gets the suffix of the files compressed with the codec.
+     *
+     * @return
+     *     The suffix, dot included.
+     */
+    String getSuffix();
+
+    /**
+     * Compresses a buffered copy.
+     *
+     * @param page
+     *     The buffer holding the copy.
+     * @param out
+     *     The stream to write the compressed copy to. It is neither flushed
+     *     nor closed.
+     *
+     * @throws IOException
+     */
+    void encode(PageBuffer page, OutputStream out)
+            throws IOException;
+
+    /**
+     * Wraps a stream of a compressed copy into one of the copy itself.
+     *
+     * @param in
+     *     The stream of the compressed copy.
+     *
+     * @return
+     *     The stream of the copy.
+     *
+     * @throws IOException
+     */
+    InputStream decode(InputStream in)
+            throws IOException;
+
+    /**
+     * Gets a codec by name.
+     *
+     * @param name
+     *     The name: {@code none}, {@code gzip} or {@code deflate}.
+     * @param level
+     *     The compression level, 1 (fastest) to 9 (smallest); -1 for the
+     *     codec's default.
+     *
+     * @return
+     *     The codec; {@code null} for {@code none}.
+     *
+     * @throws IllegalArgumentException
+     *     If there is no such codec.
+     */
+    static Codec forName(String name, int level) {
+        if (name == null || name.isEmpty() || name.equalsIgnoreCase("none") || name.equalsIgnoreCase("identity")) {
+            return null;
+        }
+        if (name.equalsIgnoreCase(GzipCodec.NAME)) {
+            return new GzipCodec(level);
+        }
+        if (name.equalsIgnoreCase(DeflateCodec.NAME)) {
+            return new DeflateCodec(level);
+        }
+
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+
+    /**
+     * Gets the codec a file was compressed with, by its suffix.
+     *
+     * @param fileName
+     *     The name of the file.
+     *
+     * @return
+     *     The codec; {@code null} if the file is not compressed.
+     */
+    static Codec forFile(String fileName) {
+        if (fileName.endsWith(GzipCodec.SUFFIX)) {
+            return new GzipCodec(-1);
+        }
+        if (fileName.endsWith(DeflateCodec.SUFFIX)) {
+            return new DeflateCodec(-1);
+        }
+
+        return null;
+    }
+
+}
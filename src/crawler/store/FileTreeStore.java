@@ -0,0 +1,163 @@
+package crawler.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+
+import crawler.fetch.PageBuffer;
+
+import toolbox.util.URLManipulator;
+
+/**
+ * <p>
+ * The original layout of the raw copies: one file per URL, under
+ * {@code <storagePath>/<host>/<path>}, a directory's page being saved as
+ * {@code index.html}.
+ * </p>
+ *
+ * <p>
+ * It is simple to browse, but costs a file, and often directories, per page.
+ * The query string is not part of the file name, so the copies of URLs that
+ * only differ by it overwrite each other. The headers are not kept.
+ * </p>
+ *
+ * <p>
+ * If a {@link Codec} is set, each file is compressed and named with the
+ * codec's suffix, e.g. {@code index.html.gz}. Reads find a copy whatever
+ * codec it was stored with.
+ * </p>
+ *
+ * @author billy
+ */
+public class FileTreeStore implements RawStore {
+
+    /**
+     * The root of the tree.
+     */
+    private final String storagePath;
+
+    /**
+     * The codec the files are compressed with; {@code null} for none.
+     */
+    private final Codec codec;
+
+    /**
+     * Constructor.
+     *
+     * @param storagePath
+     *     The root of the tree.
+     */
+    public FileTreeStore(String storagePath) {
+        this(storagePath, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param storagePath
+     *     The root of the tree.
+     * @param codec
+     *     The codec the files are compressed with; {@code null} for none.
+     */
+    public FileTreeStore(String storagePath, Codec codec) {
+        this.storagePath = storagePath;
+        this.codec = codec;
+    }
+
+    @Override
+    public String locate(URL url) {
+        String rFilePathName = url.getFile();
+        String rFilePath = rFilePathName.substring(0, rFilePathName.lastIndexOf('/') + 1);
+        String rFileName = rFilePathName.substring(rFilePathName.lastIndexOf('/') + 1);
+
+        String lFilePath = URLManipulator.constructSavePath(storagePath, url.getHost() + rFilePath);
+        String lFileName = rFileName.equalsIgnoreCase("") ? "index.html" : rFileName;
+
+        return lFilePath + lFileName + (codec == null ? "" : codec.getSuffix());
+    }
+
+    @Override
+    public void put(URL url, Map<String, String> headers, PageBuffer page)
+            throws IOException {
+        File file = new File(locate(url));
+        File path = file.getParentFile();
+        if (path != null && !path.exists()) {
+            path.mkdirs();
+        }
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            if (codec == null) {
+                page.writeTo(out);
+            }
+            else {
+                codec.encode(page, out);
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(URL url) {
+        return find(url) != null;
+    }
+
+    @Override
+    public boolean read(URL url, PageBuffer page)
+            throws IOException {
+        File file = find(url);
+        if (file == null) {
+            return false;
+        }
+
+        Codec stored = Codec.forFile(file.getName());
+        try (InputStream in = new FileInputStream(file)) {
+            if (stored == null) {
+                page.readFully(in, (int) Math.min(file.length(), Integer.MAX_VALUE));
+            }
+            else {
+                try (InputStream decoded = stored.decode(in)) {
+                    page.readFully(decoded, (int) Math.min(4 * file.length(), Integer.MAX_VALUE));
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the copy of a URL, trying the configured codec first.
+     *
+     * @param url
+     *     The URL of the web document.
+     *
+     * @return
+     *     The file of the copy; {@code null} if there is none.
+     */
+    private File find(URL url) {
+        String path = locate(url);
+        File file = new File(path);
+        if (file.isFile()) {
+            return file;
+        }
+
+        String plain = codec == null ? path : path.substring(0, path.length() - codec.getSuffix().length());
+        for (String suffix : new String[] { "", GzipCodec.SUFFIX, DeflateCodec.SUFFIX }) {
+            file = new File(plain + suffix);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // Every copy is written through.
+    }
+
+}
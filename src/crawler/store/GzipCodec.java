@@ -0,0 +1,86 @@
+package crawler.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import crawler.fetch.PageBuffer;
+
+/**
+ * The gzip codec; readable with {@code zcat}, at the default level of
+ * {@code gzip} unless told otherwise.
+ *
+ * @author billy
+ */
+public class GzipCodec implements Codec {
+
+    static final String NAME = "gzip";
+
+    static final String SUFFIX = ".gz";
+
+    private final int level;
+
+    /**
+     * Constructor.
+     *
+     * @param level
+     *     The compression level, 1 to 9; -1 for the default.
+     */
+    public GzipCodec(int level) {
+        this.level = level < 0 ? Deflater.DEFAULT_COMPRESSION : Math.min(level, Deflater.BEST_COMPRESSION);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getSuffix() {
+        return SUFFIX;
+    }
+
+    @Override
+    public void encode(PageBuffer page, OutputStream out)
+            throws IOException {
+        LevelledGZIPOutputStream gz = new LevelledGZIPOutputStream(out, level);
+        try {
+            page.writeTo(gz);
+            gz.finish();
+        }
+        finally {
+            gz.release();
+        }
+    }
+
+    @Override
+    public InputStream decode(InputStream in)
+            throws IOException {
+        return new GZIPInputStream(in, 8192);
+    }
+
+
+    /**
+     * A gzip stream at a given level, which releases its deflater without
+     * closing the underlying stream.
+     */
+    private static class LevelledGZIPOutputStream extends GZIPOutputStream {
+
+        LevelledGZIPOutputStream(OutputStream out, int level)
+                throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+
+        /**
+         * Releases the native memory of the deflater.
+         */
+        void release() {
+            def.end();
+        }
+    }
+
+}
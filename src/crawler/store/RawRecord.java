@@ -0,0 +1,119 @@
+package crawler.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import crawler.fetch.PageBuffer;
+
+/**
+ * A raw copy of a web document, as read back from a {@link SegmentStore}.
+ *
+ * @author billy
+ */
+public class RawRecord {
+
+    private final String url;
+
+    private final Map<String, String> headers;
+
+    /**
+     * The body as stored, compressed if {@code Content-Encoding} says so.
+     */
+    private final ByteBuffer body;
+
+    private final String localURI;
+
+    RawRecord(String url, Map<String, String> headers, ByteBuffer body, String localURI) {
+        this.url = url;
+        this.headers = headers;
+        this.body = body;
+        this.localURI = localURI;
+    }
+
+    /**
+     * Copies the body of the web document into a buffer, decompressing it
+     * if needed.
+     *
+     * @param page
+     *     The buffer, whose content is replaced.
+     *
+     * @throws IOException
+     *     If the body could not be decompressed.
+     */
+    public void copyTo(PageBuffer page)
+            throws IOException {
+        Codec codec = Codec.forName(headers.get("Content-Encoding"), -1);
+        if (codec == null) {
+            page.reset();
+            page.append(body.duplicate());
+            return;
+        }
+
+        try (InputStream in = codec.decode(new ByteBufferInputStream(body.duplicate()))) {
+            page.readFully(in, body.remaining() * 4);
+        }
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the URL of the web document.
+     *
+     * @return
+     *     The URL.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets a header stored along the web document.
+     *
+     * @param name
+     *     The name of the header, as stored.
+     *
+     * @return
+     *     The value of the header; {@code null} if not stored.
+     */
+    public String header(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Gets the headers stored along the web document, including the
+     * record's own ({@code WARC-*} and {@code Content-Length}).
+     *
+     * @return
+     *     The headers, in their stored order.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets the body of the web document as stored, i.e. compressed if the
+     * {@code Content-Encoding} header says so. It is a read-only view of
+     * the segment's mapping; it is not copied.
+     *
+     * @return
+     *     The stored body.
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    /**
+     * Gets the local URI of the copy.
+     *
+     * @return
+     *     The local URI.
+     */
+    public String getLocalURI() {
+        return localURI;
+    }
+
+}
@@ -0,0 +1,86 @@
+package crawler.store;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+import crawler.fetch.PageBuffer;
+
+/**
+ * <p>
+ * Where the spiders keep the raw copies of the web documents they fetch.
+ * </p>
+ *
+ * <p>
+ * Copies are keyed by URL; storing a URL again supersedes its previous copy.
+ * Implementations are thread-safe.
+ * </p>
+ *
+ * @author billy
+ */
+public interface RawStore {
+
+    /**
+     * Tells where the copy of a URL is, or is going to be, stored. This is
+     * the local URI recorded in the database and the index.
+     *
+     * @param url
+     *     The URL of the web document.
+     *
+     * @return
+     *     The local URI of the copy.
+     */
+    String locate(URL url);
+
+    /**
+     * Stores the copy of a web document.
+     *
+     * @param url
+     *     The URL of the web document.
+     * @param headers
+     *     The response headers worth keeping along, e.g.
+     *     {@code Content-Type}; values may not be {@code null}.
+     * @param page
+     *     The buffer holding the web document.
+     *
+     * @throws IOException
+     */
+    void put(URL url, Map<String, String> headers, PageBuffer page)
+            throws IOException;
+
+    /**
+     * Tells whether a copy of a URL is stored.
+     *
+     * @param url
+     *     The URL of the web document.
+     *
+     * @return
+     *     {@code true} if there is a copy; {@code false} otherwise.
+     */
+    boolean contains(URL url);
+
+    /**
+     * Reads the copy of a web document back.
+     *
+     * @param url
+     *     The URL of the web document.
+     * @param page
+     *     The buffer to read the copy into, replacing its content.
+     *
+     * @return
+     *     {@code true} if there was a copy; {@code false} otherwise.
+     *
+     * @throws IOException
+     */
+    boolean read(URL url, PageBuffer page)
+            throws IOException;
+
+    /**
+     * Flushes the pending copies and releases the store.
+     *
+     * @throws IOException
+     */
+    void close()
+            throws IOException;
+
+}
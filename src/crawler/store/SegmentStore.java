@@ -0,0 +1,664 @@
+package crawler.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import crawler.fetch.PageBuffer;
+import crawler.frontier.Fingerprint;
+
+/**
+ * <p>
+ * A raw store appending the copies to a few large segment files, in the
+ * fashion of WARC archives, instead of a file per URL.
+ * </p>
+ *
+ * <p>
+ * Each record is a header block, {@code WARC/1.0} then the URL, the date,
+ * the stored headers and the body length, one per line, followed by a blank
+ * line, the body and another blank line; so a segment stays readable with
+ * {@code less}. If a {@link Codec} is set, each body is compressed on its
+ * own and the codec recorded as its {@code Content-Encoding}; reads
+ * decompress transparently, whatever the codec of the store is now.
+ * Records are appended through a large buffer to the current segment, a
+ * new one being started once it exceeds {@code segmentSize}.
+ * Segments are never appended to once a store is closed, nor rewritten;
+ * storing a URL again appends a record superseding the previous one.
+ * </p>
+ *
+ * <p>
+ * The offset of the latest record of every URL is held in memory, keyed by
+ * the fingerprint of the URL, and appended to an index file as records are
+ * written. On start, the index is replayed; entries pointing past the end of
+ * their segment, whose records were lost in the write buffer of a crashed
+ * crawl, are ignored. Records are read back through memory mappings of the
+ * segments.
+ * </p>
+ *
+ * @author billy
+ */
+public class SegmentStore implements RawStore {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String VERSION = "WARC/1.0";
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".warc";
+
+    private static final String INDEX_NAME = "segments.idx";
+
+    /**
+     * The size of an index entry: the fingerprint, the segment, the offset
+     * and the length of a record.
+     */
+    private static final int INDEX_ENTRY = 24;
+
+    /**
+     * The largest segment that can be mapped at once.
+     */
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private final File directory;
+
+    private final long segmentSize;
+
+    private final int bufferSize;
+
+    /**
+     * The codec the bodies are compressed with; {@code null} for none.
+     */
+    private final Codec codec;
+
+    /**
+     * The latest record of every URL.
+     */
+    private final ConcurrentMap<Long, Location> index =
+            new ConcurrentHashMap<Long, Location>();
+
+    /**
+     * The mappings of the segments no longer written to.
+     */
+    private final ConcurrentMap<Integer, MappedByteBuffer> mappings =
+            new ConcurrentHashMap<Integer, MappedByteBuffer>();
+
+    /**
+     * The number of complete entries of the index file.
+     */
+    private long indexEntries;
+
+    /**
+     * The segment written to; the writer is only opened with the first
+     * record, so that a store opened for reading creates nothing.
+     */
+    private volatile int current;
+
+    private OutputStream out;
+
+    private DataOutputStream indexOut;
+
+    /**
+     * The length of the current segment, including its buffered tail.
+     */
+    private long position = 0;
+
+    /**
+     * The length of the current segment handed to the file-system.
+     */
+    private long flushed = 0;
+
+    /**
+     * Constructor. Loads the index of the previous crawls, if any.
+     *
+     * @param directory
+     *     The directory holding the segments. It is created if it does not
+     *     exist.
+     * @param segmentSize
+     *     The size, in bytes, after which a new segment is started.
+     * @param bufferSize
+     *     The size, in bytes, of the write buffer.
+     *
+     * @throws IOException
+     *     If the index could not be read.
+     */
+    public SegmentStore(File directory, long segmentSize, int bufferSize)
+            throws IOException {
+        this(directory, segmentSize, bufferSize, null);
+    }
+
+    /**
+     * Constructor. Loads the index of the previous crawls, if any.
+     *
+     * @param directory
+     *     The directory holding the segments. It is created if it does not
+     *     exist.
+     * @param segmentSize
+     *     The size, in bytes, after which a new segment is started.
+     * @param bufferSize
+     *     The size, in bytes, of the write buffer.
+     * @param codec
+     *     The codec the bodies are compressed with; {@code null} for none.
+     *
+     * @throws IOException
+     *     If the index could not be read.
+     */
+    public SegmentStore(File directory, long segmentSize, int bufferSize, Codec codec)
+            throws IOException {
+        this.directory = directory;
+        this.segmentSize = Math.min(segmentSize, MAX_SEGMENT_SIZE);
+        this.bufferSize = bufferSize;
+        this.codec = codec;
+
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        List<Integer> segments = getSegments();
+        current = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+
+        File indexFile = new File(directory, INDEX_NAME);
+        if (indexFile.exists()) {
+            Map<Integer, Long> lengths = new ConcurrentHashMap<Integer, Long>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                while (true) {
+                    long key = in.readLong();
+                    int segment = in.readInt();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    indexEntries++;
+
+                    Long available = lengths.get(segment);
+                    if (available == null) {
+                        available = segmentFile(segment).length();
+                        lengths.put(segment, available);
+                    }
+                    if (offset + length <= available) {
+                        index.put(key, new Location(segment, offset, length));
+                    }
+                }
+            }
+            catch (EOFException eofe) {
+                // The end, possibly of a truncated entry.
+            }
+        }
+    }
+
+    @Override
+    public String locate(URL url) {
+        return directory.getPath() + "#" + url;
+    }
+
+    @Override
+    public void put(URL url, Map<String, String> headers, PageBuffer page)
+            throws IOException {
+        String strURL = url.toString();
+        long key = Fingerprint.of(strURL);
+
+        // Compress outside of the lock.
+        ByteArrayOutputStream encoded = null;
+        if (codec != null) {
+            encoded = new ByteArrayOutputStream(page.size() / 4 + 64);
+            codec.encode(page, encoded);
+            headers = new LinkedHashMap<String, String>(headers);
+            headers.put("Content-Encoding", codec.getName());
+        }
+        int bodyLength = encoded == null ? page.size() : encoded.size();
+        byte[] header = header(strURL, headers, bodyLength);
+        int length = header.length + bodyLength + 2 * CRLF.length;
+
+        synchronized (this) {
+            if (out == null) {
+                open();
+            }
+            else if (position > 0 && position + length > segmentSize) {
+                roll();
+            }
+
+            long offset = position;
+            out.write(header);
+            if (encoded == null) {
+                page.writeTo(out);
+            }
+            else {
+                encoded.writeTo(out);
+            }
+            out.write(CRLF);
+            out.write(CRLF);
+            position += length;
+
+            indexOut.writeLong(key);
+            indexOut.writeInt(current);
+            indexOut.writeLong(offset);
+            indexOut.writeInt(length);
+            indexEntries++;
+
+            index.put(key, new Location(current, offset, length));
+        }
+    }
+
+    @Override
+    public boolean contains(URL url) {
+        return index.containsKey(Fingerprint.of(url.toString()));
+    }
+
+    @Override
+    public boolean read(URL url, PageBuffer page)
+            throws IOException {
+        RawRecord record = get(url.toString());
+        if (record == null) {
+            return false;
+        }
+
+        record.copyTo(page);
+
+        return true;
+    }
+
+    /**
+     * Gets the latest record of a URL.
+     *
+     * @param url
+     *     The URL.
+     *
+     * @return
+     *     The record; {@code null} if there is none.
+     *
+     * @throws IOException
+     */
+    public RawRecord get(String url)
+            throws IOException {
+        Location location = index.get(Fingerprint.of(url));
+        if (location == null) {
+            return null;
+        }
+
+        RawRecord record = parse(location);
+
+        // Tell fingerprint collisions apart.
+        return record.getUrl().equals(url) ? record : null;
+    }
+
+    /**
+     * Visits the latest records of a segment, in the order they were
+     * written. Superseded records are skipped.
+     *
+     * @param segment
+     *     The number of the segment, as in {@link #getSegments()}.
+     * @param visitor
+     *     The visitor of the records.
+     *
+     * @throws IOException
+     */
+    public void scan(int segment, Visitor visitor)
+            throws IOException {
+        long end = Long.MAX_VALUE;
+        synchronized (this) {
+            if (segment == current && out != null) {
+                // Only what was flushed is whole.
+                flush();
+                end = flushed;
+            }
+        }
+        ByteBuffer buffer = mapping(segment);
+        end = Math.min(end, buffer.limit());
+
+        int offset = 0;
+        while (offset < end) {
+            RawRecord record = parse(buffer, segment, offset);
+            int length = headerLength(buffer, offset) + record.getBody().limit() + 2 * CRLF.length;
+
+            Location latest = index.get(Fingerprint.of(record.getUrl()));
+            if (latest != null && latest.segment == segment && latest.offset == offset) {
+                visitor.visit(record);
+            }
+
+            offset += length;
+        }
+    }
+
+    /**
+     * Hands the buffered records to the file-system.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush()
+            throws IOException {
+        if (out != null) {
+            out.flush();
+            indexOut.flush();
+            flushed = position;
+        }
+    }
+
+    @Override
+    public synchronized void close()
+            throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            }
+            finally {
+                indexOut.close();
+                out = null;
+                indexOut = null;
+            }
+            // Start afresh on the next write.
+            current++;
+            position = 0;
+            flushed = 0;
+        }
+    }
+
+    /**
+     * Opens the writers: a new segment and the index for appending.
+     *
+     * @throws IOException
+     */
+    private void open()
+            throws IOException {
+        File indexFile = new File(directory, INDEX_NAME);
+        if (indexFile.exists()) {
+            // Drop a truncated trailing entry, or the next ones would be
+            // misaligned; the whole ones stay, whoever wrote them.
+            try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+                long length = raf.length();
+                raf.setLength(length - length % INDEX_ENTRY);
+                indexEntries = length / INDEX_ENTRY;
+            }
+        }
+        indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+        out = new BufferedOutputStream(new FileOutputStream(segmentFile(current)), bufferSize);
+        position = 0;
+        flushed = 0;
+    }
+
+    /**
+     * Closes the current segment and starts a new one.
+     *
+     * @throws IOException
+     */
+    private void roll()
+            throws IOException {
+        out.close();
+        indexOut.flush();
+        current++;
+        out = new BufferedOutputStream(new FileOutputStream(segmentFile(current)), bufferSize);
+        position = 0;
+        flushed = 0;
+    }
+
+    /**
+     * Reads a record.
+     *
+     * @param location
+     *     Where the record is.
+     *
+     * @return
+     *     The record.
+     *
+     * @throws IOException
+     */
+    private RawRecord parse(Location location)
+            throws IOException {
+        if (location.segment == current) {
+            // The mapping of the current segment would miss what was
+            // appended after it; map the record alone.
+            synchronized (this) {
+                if (location.segment == current && out != null) {
+                    if (location.offset + location.length > flushed) {
+                        flush();
+                    }
+                    try (FileChannel channel = FileChannel.open(segmentFile(location.segment).toPath())) {
+                        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, location.offset, location.length);
+                        return parse(buffer, location.segment, 0);
+                    }
+                }
+            }
+        }
+
+        return parse(mapping(location.segment), location.segment, (int) location.offset);
+    }
+
+    /**
+     * Parses the record starting at the given offset of a buffer.
+     *
+     * @param buffer
+     *     The buffer.
+     * @param segment
+     *     The segment the buffer comes from.
+     * @param offset
+     *     The offset of the record in the buffer.
+     *
+     * @return
+     *     The record.
+     *
+     * @throws IOException
+     *     If the record is corrupt.
+     */
+    private RawRecord parse(ByteBuffer buffer, int segment, int offset)
+            throws IOException {
+        int headerLength = headerLength(buffer, offset);
+        byte[] block = new byte[headerLength];
+        ByteBuffer r = buffer.duplicate();
+        r.position(offset);
+        r.get(block);
+
+        String[] lines = new String(block, UTF8).split("\r\n");
+        if (!lines[0].equals(VERSION)) {
+            throw new IOException("Corrupt record in segment " + segment + " at " + offset);
+        }
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon), lines[i].substring(colon + 1).trim());
+            }
+        }
+
+        String url = headers.get("WARC-Target-URI");
+        String contentLength = headers.get("Content-Length");
+        if (url == null || contentLength == null) {
+            throw new IOException("Corrupt record in segment " + segment + " at " + offset);
+        }
+        int bodyLength = Integer.parseInt(contentLength);
+
+        r.limit(offset + headerLength + bodyLength);
+        ByteBuffer body = r.slice().asReadOnlyBuffer();
+
+        return new RawRecord(url, headers, body, directory.getPath() + "#" + url);
+    }
+
+    /**
+     * Finds the length of the header block of a record, its closing blank
+     * line included.
+     *
+     * @param buffer
+     *     The buffer.
+     * @param offset
+     *     The offset of the record in the buffer.
+     *
+     * @return
+     *     The length of the header block.
+     *
+     * @throws IOException
+     *     If the header block does not end.
+     */
+    private static int headerLength(ByteBuffer buffer, int offset)
+            throws IOException {
+        for (int i = offset; i + 3 < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+                    && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+                return i + 4 - offset;
+            }
+        }
+
+        throw new IOException("Unterminated record header at " + offset);
+    }
+
+    /**
+     * Builds the header block of a record.
+     *
+     * @param url
+     *     The URL of the web document.
+     * @param headers
+     *     The headers to store along.
+     * @param length
+     *     The length of the body.
+     *
+     * @return
+     *     The encoded header block.
+     */
+    private static byte[] header(String url, Map<String, String> headers, int length) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(VERSION).append("\r\n");
+        sb.append("WARC-Type: response\r\n");
+        sb.append("WARC-Target-URI: ").append(url).append("\r\n");
+        sb.append("WARC-Date: ").append(Instant.now()).append("\r\n");
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            // Line breaks would end the header early.
+            sb.append(e.getKey()).append(": ").append(e.getValue().replace('\r', ' ').replace('\n', ' ')).append("\r\n");
+        }
+        sb.append("Content-Length: ").append(length).append("\r\n");
+        sb.append("\r\n");
+
+        return sb.toString().getBytes(UTF8);
+    }
+
+    /**
+     * Gets the mapping of a whole segment no longer written to.
+     *
+     * @param segment
+     *     The number of the segment.
+     *
+     * @return
+     *     A view of the mapping.
+     *
+     * @throws IOException
+     */
+    private ByteBuffer mapping(int segment)
+            throws IOException {
+        MappedByteBuffer mapping = mappings.get(segment);
+        if (mapping == null) {
+            // Read before mapping: a segment older than the current one
+            // then is complete.
+            int written = current;
+            try (FileChannel channel = FileChannel.open(segmentFile(segment).toPath())) {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (segment < written) {
+                MappedByteBuffer mapped = mappings.putIfAbsent(segment, mapping);
+                if (mapped != null) {
+                    mapping = mapped;
+                }
+            }
+        }
+
+        return mapping.duplicate();
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%05d", segment) + SEGMENT_SUFFIX);
+    }
+
+
+    // -- Getters
+
+
+    /**
+     * Gets the numbers of the segments of the store, in the order they were
+     * written.
+     *
+     * @return
+     *     The numbers of the segments.
+     */
+    public List<Integer> getSegments() {
+        List<Integer> segments = new ArrayList<Integer>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    }
+                    catch (NumberFormatException nfe) {
+                        // Not one of ours.
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+
+        return segments;
+    }
+
+    /**
+     * Gets the number of URLs with a copy.
+     *
+     * @return
+     *     The number of URLs.
+     */
+    public int size() {
+        return index.size();
+    }
+
+
+    /**
+     * Visits the records of a segment.
+     */
+    public interface Visitor {
+
+        /**
+         * Visits a record.
+         *
+         * @param record
+         *     The record.
+         */
+        void visit(RawRecord record);
+    }
+
+
+    /**
+     * Where a record is.
+     */
+    private static class Location {
+
+        private final int segment;
+
+        private final long offset;
+
+        private final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package crawler.dedup;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the exact and near copy detection of the {@link DuplicateDetector}.
+ *
+ * @author billy
+ */
+public class DuplicateDetectorTest extends TestCase {
+
+    private static String text(int words, String extra) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append("word").append(i).append(' ');
+        }
+        return sb.append(extra).toString();
+    }
+
+    @Test
+    public void testNearTextsHaveCloseSimHashes() {
+        long a = SimHash.of(text(200, "one"));
+        long b = SimHash.of(text(200, "two"));
+        long c = SimHash.of("something else entirely with other words in it");
+
+        assertTrue(SimHash.distance(a, b) <= 3);
+        assertTrue(SimHash.distance(a, c) > 3);
+        assertEquals(SimHash.of("Hello, World"), SimHash.of("hello world"));
+    }
+
+    @Test
+    public void testExactCopies() {
+        DuplicateDetector detector = new DuplicateDetector(3);
+
+        assertNull(detector.check(1, 0, "/a"));
+        DuplicateDetector.Match match = detector.check(1, 0, "/b");
+        assertNotNull(match);
+        assertTrue(match.isExact());
+        assertEquals("/a", match.getOriginal());
+        assertNull(detector.check(2, 0, "/c"));
+        assertEquals(1, detector.getExactDuplicates());
+    }
+
+    @Test
+    public void testNearCopies() {
+        DuplicateDetector detector = new DuplicateDetector(3);
+        String a = text(200, "one");
+        String b = text(200, "two");
+
+        assertNull(detector.check(a.hashCode(), SimHash.of(a), "/a"));
+        DuplicateDetector.Match match = detector.check(b.hashCode(), SimHash.of(b), "/b");
+        assertNotNull(match);
+        assertFalse(match.isExact());
+        assertEquals("/a", match.getOriginal());
+
+        // An exact copy of the near copy points to the original too.
+        assertEquals("/a", detector.check(b.hashCode(), SimHash.of(b), "/c").getOriginal());
+        assertEquals(1, detector.getNearDuplicates());
+        assertEquals(1, detector.getExactDuplicates());
+    }
+
+    @Test
+    public void testForgottenOriginals() {
+        DuplicateDetector detector = new DuplicateDetector(3);
+        String a = text(200, "one");
+        String b = text(200, "two");
+
+        // Storing /a failed; the next copy becomes the original.
+        assertNull(detector.check(a.hashCode(), SimHash.of(a), "/a"));
+        detector.forget(a.hashCode(), SimHash.of(a), "/a");
+        assertNull(detector.check(a.hashCode(), SimHash.of(a), "/b"));
+        assertEquals("/b", detector.check(b.hashCode(), SimHash.of(b), "/c").getOriginal());
+    }
+
+}
@@ -0,0 +1,72 @@
+package crawler.extract;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the single-pass extraction of the {@link HtmlExtractor}.
+ *
+ * @author billy
+ */
+public class HtmlExtractorTest extends TestCase {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final HtmlExtractor extractor = new HtmlExtractor(1024 * 1024, 100);
+
+    private ExtractedPage extract(String html, boolean withLinks, boolean followImgLinks) {
+        byte[] bytes = html.getBytes(UTF8);
+        return extractor.extract(bytes, bytes.length, UTF8, withLinks, followImgLinks);
+    }
+
+    @Test
+    public void testTitleContentAndLinks() {
+        ExtractedPage page = extract(
+                "<!DOCTYPE html><HTML><Head><TITLE> A &amp; B </TITLE>" +
+                "<script>var s = '<a href=\"/no\">';</script><style>p { }</style></head>" +
+                "<body><p>Hello,\n\n   <b>world</b>!</p>" +
+                "<A HREF='/one'>one</A> <a href=\"http://example.com/two?a=1&amp;b=2\">two</a>" +
+                "<a href=#top>top</a><a href=\"javascript:void(0)\">js</a>" +
+                "<img src=\"/logo.png\"></body></html>",
+                true, false);
+
+        assertEquals("A & B", page.getTitle());
+        assertEquals("Hello, world ! one two top js", page.getContent());
+        assertEquals(2, page.getLinks().size());
+        assertTrue(page.getLinks().contains("/one"));
+        assertTrue(page.getLinks().contains("http://example.com/two?a=1&b=2"));
+    }
+
+    @Test
+    public void testImageLinksAreOptional() {
+        String html = "<img src=/logo.png><iframe src=\"/frame\"></iframe>";
+
+        assertEquals(1, extract(html, true, false).getLinks().size());
+        assertEquals(2, extract(html, true, true).getLinks().size());
+        assertTrue(extract(html, false, true).getLinks().isEmpty());
+    }
+
+    @Test
+    public void testContentMarkers() {
+        ExtractedPage page = extract(
+                "<div>menu</div>" + PageExtractor.CONTENT_START +
+                "<p>the &lt;content&gt; &#233;t&#xE9;</p>" + PageExtractor.CONTENT_END +
+                "<div>footer</div>",
+                false, false);
+
+        assertEquals("the <content> été", page.getContent());
+    }
+
+    @Test
+    public void testExtractorIsReusable() {
+        extract("<title>first</title><p>" + new String(new char[100000]).replace('\0', 'x') + "</p>", true, false);
+        ExtractedPage page = extract("<title>second</title>text", true, false);
+
+        assertEquals("second", page.getTitle());
+        assertEquals("text", page.getContent());
+    }
+
+}
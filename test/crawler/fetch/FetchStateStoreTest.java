@@ -0,0 +1,100 @@
+package crawler.fetch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the persistence of the {@link FetchStateStore}.
+ *
+ * @author billy
+ */
+public class FetchStateStoreTest extends TestCase {
+
+    private File file;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("fetchstate", ".db");
+        file.delete();
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    @Test
+    public void testStatesSurviveAClose() throws IOException {
+        FetchStateStore store = new FetchStateStore(file);
+        store.put("http://example.com/a", new FetchState("\"v1\"", null, "text/html", 1, 1000));
+        store.put("http://example.com/a", new FetchState("\"v2\"", "Mon, 01 Jan 2024 00:00:00 GMT", "text/html", 2, 2000));
+        store.put("http://example.com/b", new FetchState(null, null, null, 3, 3000));
+        store.close();
+
+        store = new FetchStateStore(file);
+        assertEquals(2, store.size());
+        FetchState a = store.get("http://example.com/a");
+        assertEquals("\"v2\"", a.getEtag());
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", a.getLastModified());
+        assertEquals(2, a.getContentHash());
+        assertNull(store.get("http://example.com/b").getEtag());
+        assertNull(store.get("http://example.com/c"));
+        store.close();
+    }
+
+    @Test
+    public void testTruncatedLogIsTolerated() throws IOException {
+        FetchStateStore store = new FetchStateStore(file);
+        store.put("http://example.com/a", new FetchState("a", null, "text/html", 1, 1000));
+        store.put("http://example.com/b", new FetchState("b", null, "text/html", 2, 2000));
+        store.close();
+
+        // As if the crawler died half way through writing the last record.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        store = new FetchStateStore(file);
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testRecordsAppendedAfterATruncationAreReadBack() throws IOException {
+        FetchStateStore store = new FetchStateStore(file);
+        store.put("http://example.com/a", new FetchState("a", null, "text/html", 1, 1000));
+        store.put("http://example.com/b", new FetchState("b", null, "text/html", 2, 2000));
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        // Crash again, before close() compacts the file; enough records for
+        // most of them to have left the write buffer.
+        store = new FetchStateStore(file);
+        for (int i = 0; i < 1000; i++) {
+            store.put("http://example.com/c" + i, new FetchState("c" + i, null, "text/html", i, 3000));
+        }
+
+        FetchStateStore reopened = new FetchStateStore(file);
+        assertEquals("a", reopened.get("http://example.com/a").getEtag());
+        assertNull(reopened.get("http://example.com/b"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("c" + i, reopened.get("http://example.com/c" + i).getEtag());
+        }
+        assertTrue(reopened.size() > 100);
+        reopened.close();
+    }
+
+}
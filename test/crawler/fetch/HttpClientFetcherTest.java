@@ -0,0 +1,109 @@
+package crawler.fetch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import crawler.frontier.URLCanonicalizer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the cancellation of the {@link HttpClientFetcher}'s requests.
+ *
+ * @author billy
+ */
+public class HttpClientFetcherTest extends TestCase {
+
+    private HttpServer server;
+
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stall", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // The headers and a few bytes, then nothing.
+                exchange.sendResponseHeaders(200, 1000);
+                OutputStream out = exchange.getResponseBody();
+                out.write(new byte[10]);
+                out.flush();
+                try {
+                    stalled.await(30, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        server.createContext("/page", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "<html></html>".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        stalled.countDown();
+        server.stop(0);
+        super.tearDown();
+    }
+
+    private URL url(String path) throws IOException {
+        return URLCanonicalizer.toURL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    @Test
+    public void testCancelledFetchReleasesItsPermit() throws Exception {
+        HttpClientFetcher fetcher = new HttpClientFetcher("test", null, 5, 1);
+        try {
+            CompletableFuture<FetchResult> stalledFetch = fetcher.fetch(url("/stall"), new PageBuffer());
+            try {
+                stalledFetch.get(500, TimeUnit.MILLISECONDS);
+                fail("The body never completes");
+            }
+            catch (TimeoutException te) {
+                stalledFetch.cancel(true);
+            }
+
+            // With a single permit, this only goes through once the
+            // cancelled exchange let go of it.
+            long start = System.nanoTime();
+            FetchResult result = fetcher.fetch(url("/page"), new PageBuffer()).get(5, TimeUnit.SECONDS);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(200, result.getStatus());
+            assertEquals(13, result.getBody().size());
+        }
+        finally {
+            fetcher.close();
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package crawler.fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the maximum size of the {@link PageBuffer}.
+ *
+ * @author billy
+ */
+public class PageBufferTest extends TestCase {
+
+    @Test
+    public void testReadIsCutAtTheMaximumSize()
+            throws IOException {
+        PageBuffer page = new PageBuffer(100);
+
+        // A lying Content-Length is not allocated.
+        assertEquals(100, page.readFully(new ByteArrayInputStream(new byte[1000]), Integer.MAX_VALUE));
+        assertTrue(page.isTruncated());
+        assertEquals(100, page.array().length);
+
+        assertEquals(100, page.readFully(new ByteArrayInputStream(new byte[100]), -1));
+        assertFalse(page.isTruncated());
+    }
+
+    @Test
+    public void testAppendIsCutAtTheMaximumSize() {
+        PageBuffer page = new PageBuffer(100);
+
+        assertTrue(page.append(ByteBuffer.wrap(new byte[60])));
+        ByteBuffer chunk = ByteBuffer.wrap(new byte[60]);
+        assertFalse(page.append(chunk));
+        assertEquals(0, chunk.remaining());
+        assertEquals(100, page.size());
+        assertTrue(page.isTruncated());
+
+        page.reset();
+        assertFalse(page.isTruncated());
+        assertEquals(0, page.size());
+    }
+
+}
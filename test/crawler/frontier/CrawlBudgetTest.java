@@ -0,0 +1,66 @@
+package crawler.frontier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the limits enforced by the {@link CrawlBudget}.
+ *
+ * @author billy
+ */
+public class CrawlBudgetTest extends TestCase {
+
+    @Test
+    public void testPageLimitHoldsUnderContention() throws InterruptedException {
+        final CrawlBudget budget = new CrawlBudget(1000, 0, 0, 0);
+        final AtomicInteger admitted = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(8);
+
+        for (int t = 0; t < 8; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        if (budget.admit("example.com")) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        assertEquals(1000, admitted.get());
+        assertEquals(1000, budget.getPages());
+        assertNotNull(budget.getReached());
+        assertFalse(budget.isExhausted());
+    }
+
+    @Test
+    public void testDomainLimit() {
+        CrawlBudget budget = new CrawlBudget(0, 0, 0, 2);
+
+        assertTrue(budget.admit("a.example.com"));
+        assertTrue(budget.admit("a.example.com"));
+        assertFalse(budget.admit("a.example.com"));
+        assertTrue(budget.admit("b.example.com"));
+        assertNull(budget.getReached());
+    }
+
+    @Test
+    public void testByteLimitExhaustsTheBudget() {
+        CrawlBudget budget = new CrawlBudget(0, 100, 0, 0);
+
+        budget.downloaded(60);
+        assertFalse(budget.isExhausted());
+        budget.downloaded(60);
+        assertTrue(budget.isExhausted());
+        assertFalse(budget.admit("example.com"));
+    }
+
+}
@@ -0,0 +1,76 @@
+package crawler.frontier;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the ordering and spilling behaviour of the {@link DiskFrontier}.
+ *
+ * @author billy
+ */
+public class DiskFrontierTest extends TestCase {
+
+    private File directory;
+
+    private DiskFrontier frontier;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File(System.getProperty("java.io.tmpdir"), "jwebcrawler-frontier-" + System.nanoTime());
+        // Tiny head and segments to force spilling and segment rolling.
+        frontier = new DiskFrontier(directory, 4, 256);
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        frontier.close();
+        directory.delete();
+        super.tearDown();
+    }
+
+    @Test
+    public void testEntriesComeOutInOrderAcrossSpills() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            frontier.add(URLCanonicalizer.toURL("http://example.com/page/" + i), i % 3);
+        }
+        assertEquals(100, frontier.size());
+        assertTrue(frontier.getSpilled() > 0);
+        assertTrue(directory.list().length > 1);
+
+        for (int i = 0; i < 100; i++) {
+            DiskFrontier.Entry e = frontier.poll();
+            assertEquals("http://example.com/page/" + i, e.getUrl().toString());
+            assertEquals(i % 3, e.getLevel());
+        }
+        assertNull(frontier.poll());
+        assertTrue(frontier.isEmpty());
+    }
+
+    @Test
+    public void testInterleavedAddAndPoll() throws IOException {
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 7; i++) {
+                frontier.add(URLCanonicalizer.toURL("http://example.com/" + (next++)), 1);
+            }
+            for (int i = 0; i < 5; i++) {
+                assertEquals("http://example.com/" + (expected++), frontier.poll().getUrl().toString());
+            }
+        }
+        while (!frontier.isEmpty()) {
+            assertEquals("http://example.com/" + (expected++), frontier.poll().getUrl().toString());
+        }
+        assertEquals(next, expected);
+    }
+
+}
@@ -0,0 +1,165 @@
+package crawler.frontier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the politeness guarantees of the {@link HostScheduler}.
+ *
+ * @author billy
+ */
+public class HostSchedulerTest extends TestCase {
+
+    private ExecutorService executor;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    @Test
+    public void testHostConcurrencyIsNeverExceeded() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(executor, 4, 1, 0);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximum = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit("example.com", new Runnable() {
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    if (now > maximum.get()) {
+                        maximum.set(now);
+                    }
+                    sleep(5);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, maximum.get());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testHostDelayIsHonoured() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(executor, 4, 4, 50);
+        final AtomicLong last = new AtomicLong();
+        final AtomicLong shortest = new AtomicLong(Long.MAX_VALUE);
+        final CountDownLatch done = new CountDownLatch(4);
+
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit("example.com", new Runnable() {
+                @Override
+                public void run() {
+                    long now = System.nanoTime();
+                    long previous = last.getAndSet(now);
+                    if (previous != 0) {
+                        shortest.set(Math.min(shortest.get(), now - previous));
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(shortest.get() >= TimeUnit.MILLISECONDS.toNanos(45));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testHostsDoNotWaitForEachOther() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(executor, 4, 1, 10000);
+        final CountDownLatch done = new CountDownLatch(3);
+
+        for (String host : new String[] {"a.example.com", "b.example.com", "c.example.com"}) {
+            scheduler.submit(host, new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+
+        // A single task per host is due immediately despite the long delay.
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, scheduler.getHostNumber());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testExhaustedBudgetEmptiesTheQueue() throws InterruptedException {
+        final HostScheduler scheduler = new HostScheduler(executor, 4, 1, 10000);
+        final CrawlBudget budget = new CrawlBudget(0, 100, 0, 0);
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger discarded = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                // As the crawler's refill() does after every page.
+                runs.incrementAndGet();
+                budget.downloaded(60);
+                if (budget.isExhausted()) {
+                    discarded.addAndGet(scheduler.clear());
+                }
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit("example.com", task);
+            scheduler.submit("example.org", task);
+        }
+
+        // Each host's first task starts right away; the second one spends
+        // the budget while the rest wait out their host's delay.
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getQueued());
+        assertEquals(8, discarded.get());
+
+        // The scheduler is still usable afterwards.
+        final CountDownLatch next = new CountDownLatch(1);
+        scheduler.submit("example.net", new Runnable() {
+            @Override
+            public void run() {
+                next.countDown();
+            }
+        });
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+        scheduler.shutdown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package crawler.frontier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link SeenSet} implementations.
+ *
+ * @author billy
+ */
+public class SeenSetTest extends TestCase {
+
+    @Test
+    public void testFingerprintSetIsExactAndGrows() {
+        // Deliberately undersized so that the segments have to double.
+        SeenSet set = new FingerprintSeenSet(100);
+        long initial = set.memoryUsage();
+
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(set.add("http://example.com/" + i));
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertFalse(set.add("http://example.com/" + i));
+            assertTrue(set.contains("http://example.com/" + i));
+        }
+        assertFalse(set.contains("http://example.org/"));
+
+        assertEquals(100000, set.size());
+        assertTrue(set.memoryUsage() > initial);
+    }
+
+    @Test
+    public void testFingerprintSetAdmitsEachUrlOnceUnderContention() throws InterruptedException {
+        final SeenSet set = new FingerprintSeenSet(1000);
+        final AtomicInteger admitted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException ie) {
+                        return;
+                    }
+                    for (int i = 0; i < 20000; i++) {
+                        if (set.add("http://example.com/" + i)) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(20000, admitted.get());
+        assertEquals(20000, set.size());
+    }
+
+    @Test
+    public void testBloomSetFalsePositiveRate() {
+        BloomSeenSet set = new BloomSeenSet(50000, 0.01);
+
+        for (int i = 0; i < 50000; i++) {
+            set.add("http://example.com/" + i);
+        }
+        for (int i = 0; i < 50000; i++) {
+            assertFalse(set.add("http://example.com/" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 50000; i++) {
+            if (set.contains("http://example.org/" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // 1% expected.
+        assertTrue("false positives: " + falsePositives, falsePositives < 50000 * 0.015);
+        assertTrue(set.memoryUsage() < 50000 * 2);
+    }
+
+}
@@ -0,0 +1,157 @@
+package crawler.frontier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the streaming of sitemaps by the {@link SitemapSource}.
+ *
+ * @author billy
+ */
+public class SitemapSourceTest extends TestCase {
+
+    private File directory;
+
+    private List<String> offered;
+
+    private CompletionTracker tracker;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("sitemaps", "");
+        directory.delete();
+        directory.mkdirs();
+        offered = Collections.synchronizedList(new ArrayList<String>());
+        tracker = new CompletionTracker();
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        for (File f: directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    @Test
+    public void testEntriesComeByPriorityThenLastModified() throws Exception {
+        write("sitemap.xml", false, urlset(
+                url("http://example.com/low", "2024-01-01", "0.1"),
+                url("http://example.com/old", "2023-01-01", null),
+                url("http://example.com/new", "2024-06-01T10:00:00+02:00", null),
+                url("http://example.com/high", null, "0.9")
+                ));
+
+        read("sitemap.xml", 100);
+
+        assertEquals(4, offered.size());
+        assertEquals("http://example.com/high", offered.get(0));
+        assertEquals("http://example.com/new", offered.get(1));
+        assertEquals("http://example.com/old", offered.get(2));
+        assertEquals("http://example.com/low", offered.get(3));
+    }
+
+    @Test
+    public void testIndexChildrenAreFollowedAndGunzipped() throws Exception {
+        write("a.xml.gz", true, urlset(
+                url("http://example.com/a1", null, null),
+                url("http://example.com/a2", null, null)
+                ));
+        // Gzipped, whatever the name says.
+        write("b.xml", true, urlset(url("http://example.com/b1", null, null)));
+        write("index.xml", false,
+                "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">" +
+                "<sitemap><loc>a.xml.gz</loc></sitemap>" +
+                "<sitemap><loc>b.xml</loc></sitemap>" +
+                "<sitemap><loc>a.xml.gz</loc></sitemap>" +
+                "<sitemap><loc>missing.xml</loc></sitemap>" +
+                "</sitemapindex>"
+                );
+
+        SitemapSource source = read("index.xml", 1);
+
+        Collections.sort(offered);
+        assertEquals(3, offered.size());
+        assertEquals("http://example.com/a1", offered.get(0));
+        assertEquals("http://example.com/a2", offered.get(1));
+        assertEquals("http://example.com/b1", offered.get(2));
+        assertEquals(3, source.getSitemaps());
+        assertEquals(1, source.getFailures());
+    }
+
+    @Test
+    public void testLastModifiedFormats() {
+        assertEquals(0, SitemapSource.parseLastModified("1970-01-01"));
+        assertEquals(3600000, SitemapSource.parseLastModified("1970-01-01T02:00:00+01:00"));
+        assertEquals(60000, SitemapSource.parseLastModified(" 1970-01-01T00:01Z "));
+        assertEquals(-1, SitemapSource.parseLastModified("yesterday"));
+    }
+
+    private SitemapSource read(String name, int window) throws Exception {
+        SitemapSource source = new SitemapSource("test", 5, 2, window,
+                new SitemapSource.Sink() {
+                    @Override
+                    public void offer(URL url, long lastModified, double priority) {
+                        offered.add(url.toString());
+                    }
+                },
+                tracker
+                );
+        source.submit(new File(directory, name).toURI().toURL());
+        assertTrue(tracker.awaitQuiescence(10, TimeUnit.SECONDS));
+        source.close();
+
+        return source;
+    }
+
+    private void write(String name, boolean gzip, String xml) throws IOException {
+        OutputStream out = new FileOutputStream(new File(directory, name));
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        try {
+            out.write(xml.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static String urlset(String... urls) {
+        StringBuilder sb = new StringBuilder(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                );
+        for (String url: urls) {
+            sb.append(url);
+        }
+
+        return sb.append("</urlset>").toString();
+    }
+
+    private static String url(String loc, String lastmod, String priority) {
+        return "<url><loc>" + loc + "</loc>" +
+                (lastmod == null ? "" : "<lastmod>" + lastmod + "</lastmod>") +
+                (priority == null ? "" : "<priority>" + priority + "</priority>") +
+                "</url>";
+    }
+
+}
@@ -0,0 +1,85 @@
+package crawler.frontier;
+
+import java.net.MalformedURLException;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the resolution and canonicalization of the {@link URLCanonicalizer}.
+ *
+ * @author billy
+ */
+public class URLCanonicalizerTest extends TestCase {
+
+    private final URLCanonicalizer canonicalizer =
+            new URLCanonicalizer(true, "utm_*", "sid");
+
+    private String canonical(String base, String link) throws MalformedURLException {
+        return canonicalizer.canonicalize(URLCanonicalizer.toURL(base), link).toString();
+    }
+
+    @Test
+    public void testSpellingsOfTheSamePageAreEqual() throws MalformedURLException {
+        String expected = "http://example.com/b";
+
+        assertEquals(expected, canonical("http://example.com/", "http://Example.COM/a/../b#frag"));
+        assertEquals(expected, canonical("http://example.com/", "HTTP://example.com:80/./b"));
+        assertEquals(expected, canonical("http://example.com/", "http://example.com./%62"));
+    }
+
+    @Test
+    public void testRelativeLinksAreResolved() throws MalformedURLException {
+        assertEquals("http://example.com/a/c", canonical("http://example.com/a/b", "c"));
+        assertEquals("http://example.com/c", canonical("http://example.com/a/b", "../c"));
+        assertEquals("http://example.com/", canonical("http://example.com/a/b", "/"));
+        assertEquals("https://example.com:8443/x", canonical("https://example.com:8443/a/", "/x"));
+        assertEquals("http://example.com/a/b?q=1", canonical("http://example.com/a/b", "?q=1"));
+    }
+
+    @Test
+    public void testQueryIsSortedAndFiltered() throws MalformedURLException {
+        assertEquals(
+                "http://example.com/p?a=2&b=1",
+                canonical("http://example.com/", "/p?b=1&utm_source=x&a=2&SID=42&")
+                );
+        assertEquals("http://example.com/p", canonical("http://example.com/", "/p?utm_medium=y"));
+        // Repeated names keep the order of their values.
+        assertEquals(
+                "http://example.com/p?a=1&id=9&id=1",
+                canonical("http://example.com/", "/p?id=9&a=1&id=1")
+                );
+    }
+
+    @Test
+    public void testEncodingIsNormalized() throws MalformedURLException {
+        assertEquals("http://example.com/a%20b/%C3%A9%2F~", canonical("http://example.com/", "/a b/é%2f%7E"));
+    }
+
+    @Test
+    public void testLinksFromTheWildAreResolved() throws MalformedURLException {
+        assertEquals("http://example.com/a/b", canonical("http://example.com/a/b", ""));
+        assertEquals("http://example.com/a/b", canonical("http://example.com/a/b", "#top"));
+        assertEquals("http://example.com/a/x%7Cy?q=%5B1%5D", canonical("http://example.com/a/b", "x|y?q=[1]#a#b"));
+        assertEquals("http://example.com/100%25", canonical("http://example.com/", "/100%"));
+        assertEquals("http://[::1]:8080/a", canonical("http://example.com/", "http://[::1]:8080/a"));
+    }
+
+    @Test
+    public void testSessionIdIsDropped() throws MalformedURLException {
+        assertEquals("http://example.com/a/b", canonical("http://example.com/", "/a;jsessionid=XYZ/b"));
+    }
+
+    @Test
+    public void testNonHttpLinksAreRejected() {
+        try {
+            canonical("http://example.com/", "ftp://example.com/file");
+            fail();
+        }
+        catch (MalformedURLException murle) {
+            // Expected.
+        }
+    }
+
+}
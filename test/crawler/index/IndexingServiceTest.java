@@ -0,0 +1,126 @@
+package crawler.index;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the periodic commits of the {@link IndexingService}.
+ *
+ * @author billy
+ */
+public class IndexingServiceTest extends TestCase {
+
+    private final IndexSchema schema = new IndexSchema(false, "standard", "standard");
+
+    private File directory;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("index", "");
+        directory.delete();
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+        super.tearDown();
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    static Document document(IndexSchema schema, String url, String domain) {
+        return schema.document(url, "/", "/tmp/" + domain, "Title", "Some content", domain, "text/html");
+    }
+
+    /**
+     * Counts the documents committed to the index at the given path, as a
+     * reader opened after a crash would see them.
+     */
+    static int committed(File path) throws IOException {
+        Directory d = new NIOFSDirectory(path);
+        try {
+            DirectoryReader reader = DirectoryReader.open(d);
+            try {
+                return reader.numDocs();
+            }
+            finally {
+                reader.close();
+            }
+        }
+        finally {
+            d.close();
+        }
+    }
+
+    @Test
+    public void testIndexIsCommittedEveryCommitDocuments() throws IOException {
+        IndexingService service = new IndexingService(directory.getPath(), schema, 16, 3, 3600000, 3600000);
+        try {
+            service.addDocument(document(schema, "http://example.com/1", "example.com"));
+            service.addDocument(document(schema, "http://example.com/2", "example.com"));
+            assertEquals(0, service.getCommits());
+            assertEquals(2, service.getUncommitted());
+
+            service.addDocument(document(schema, "http://example.com/3", "example.com"));
+            assertEquals(1, service.getCommits());
+            assertEquals(0, service.getUncommitted());
+            assertEquals(3, committed(directory));
+
+            service.addDocument(document(schema, "http://example.com/4", "example.com"));
+            assertEquals(1, service.getCommits());
+            assertEquals(1, service.getUncommitted());
+            assertEquals(4, service.getDocuments());
+        }
+        finally {
+            service.close();
+        }
+        // The last one is committed on close.
+        assertEquals(4, committed(directory));
+    }
+
+    @Test
+    public void testIndexIsCommittedEveryCommitInterval() throws IOException, InterruptedException {
+        IndexingService service = new IndexingService(directory.getPath(), schema, 16, 0, 50, 3600000);
+        try {
+            service.addDocument(document(schema, "http://example.com/1", "example.com"));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (service.getCommits() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, service.getCommits());
+            assertEquals(0, service.getUncommitted());
+            assertEquals(1, committed(directory));
+            assertTrue(service.getMaximumCommitTime() >= service.getLastCommitTime());
+
+            // Nothing is committed while nothing changes.
+            Thread.sleep(200);
+            assertEquals(1, service.getCommits());
+        }
+        finally {
+            service.close();
+        }
+    }
+
+}
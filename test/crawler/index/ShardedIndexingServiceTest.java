@@ -0,0 +1,165 @@
+package crawler.index;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the routing and the searchers of the {@link ShardedIndexingService}.
+ *
+ * @author billy
+ */
+public class ShardedIndexingServiceTest extends TestCase {
+
+    private final IndexSchema schema = new IndexSchema(false, "standard", "standard");
+
+    private File directory;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("index", "");
+        directory.delete();
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        IndexingServiceTest.delete(directory);
+        super.tearDown();
+    }
+
+    private ShardedIndexingService open(int shards, String shardBy, long refreshInterval) throws IOException {
+        return new ShardedIndexingService(directory.getPath(), schema, shards, shardBy, 16, 0, 3600000, refreshInterval);
+    }
+
+    @Test
+    public void testPagesOfADomainShareAShard() throws IOException {
+        ShardedIndexingService service = open(4, "domain", 3600000);
+        try {
+            for (int i = 0; i < 20; i++) {
+                service.addDocument(IndexingServiceTest.document(schema, "http://example.com/" + i, "example.com"));
+            }
+
+            int used = 0;
+            for (int i = 0; i < service.getShardNumber(); i++) {
+                long n = service.getShard(i).getDocuments();
+                if (n > 0) {
+                    assertEquals(20, n);
+                    used++;
+                }
+            }
+            assertEquals(1, used);
+            assertEquals(20, service.getDocuments());
+        }
+        finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void testUpdatesOfAUrlReplaceEachOther() throws IOException, InterruptedException {
+        ShardedIndexingService service = open(4, "url", 10);
+        try {
+            for (int i = 0; i < 100; i++) {
+                service.updateDocument(IndexingServiceTest.document(schema, "http://example.com/" + i, "example.com"));
+            }
+            for (int i = 0; i < 100; i++) {
+                service.updateDocument(IndexingServiceTest.document(schema, "http://example.com/" + i, "example.com"));
+            }
+            for (int i = 0; i < service.getShardNumber(); i++) {
+                assertTrue(service.getShard(i).getDocuments() > 0);
+            }
+
+            // Each URL always lands on the same shard, so that its update
+            // deletes the previous copy.
+            int found = -1;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (found != 100 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                ShardedIndexingService.Searcher searcher = service.acquire();
+                try {
+                    found = searcher.getSearcher().getIndexReader().numDocs();
+                }
+                finally {
+                    searcher.release();
+                }
+            }
+            assertEquals(100, found);
+        }
+        finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void testSearcherReleaseGivesTheShardReadersBack() throws IOException {
+        ShardedIndexingService service = open(2, "url", 3600000);
+        try {
+            IndexSearcher probe = service.getShard(0).acquire();
+            IndexReader reader = probe.getIndexReader();
+            int idle = reader.getRefCount();
+
+            ShardedIndexingService.Searcher searcher = service.acquire();
+            assertTrue(reader.getRefCount() > idle);
+            searcher.release();
+            assertEquals(idle, reader.getRefCount());
+
+            service.getShard(0).release(probe);
+        }
+        finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void testOtherShardNumberIsRefused() throws IOException {
+        open(2, "domain", 3600000).close();
+        assertTrue(new File(directory, ShardedIndexingService.SHARDS_FILE).isFile());
+
+        try {
+            open(4, "domain", 3600000).close();
+            fail("Opened a 2-shard index with 4 shards");
+        }
+        catch (IOException ioe) {
+            // Expected
+        }
+
+        open(2, "domain", 3600000).close();
+    }
+
+    @Test
+    public void testUnshardedIndexIsRecognised() throws IOException {
+        // An index from before the number of shards was recorded.
+        IndexingService legacy = new IndexingService(directory.getPath(), schema, 16, 0, 3600000, 3600000);
+        legacy.addDocument(IndexingServiceTest.document(schema, "http://example.com/", "example.com"));
+        legacy.close();
+        assertFalse(new File(directory, ShardedIndexingService.SHARDS_FILE).exists());
+
+        try {
+            open(2, "domain", 3600000).close();
+            fail("Opened an unsharded index with 2 shards");
+        }
+        catch (IOException ioe) {
+            // Expected
+        }
+
+        ShardedIndexingService service = open(1, "domain", 3600000);
+        try {
+            assertEquals(1, IndexingServiceTest.committed(directory));
+        }
+        finally {
+            service.close();
+        }
+        assertTrue(new File(directory, ShardedIndexingService.SHARDS_FILE).isFile());
+    }
+
+}
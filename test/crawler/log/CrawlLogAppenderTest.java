@@ -0,0 +1,126 @@
+package crawler.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the batching of the {@link CrawlLogAppender}.
+ *
+ * @author billy
+ */
+public class CrawlLogAppenderTest extends TestCase {
+
+    private File file;
+
+    private CrawlLogAppender appender;
+
+    private Logger logger;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("crawl", ".log");
+
+        LoggerContext context = new LoggerContext();
+        appender = new CrawlLogAppender();
+        appender.setContext(context);
+        appender.setName("CRAWL");
+        appender.setFile(file.getPath());
+        appender.setBatchSize(16);
+        appender.setFlushInterval(10);
+        appender.start();
+
+        logger = context.getLogger("crawler.crawl");
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        appender.stop();
+        file.delete();
+        super.tearDown();
+    }
+
+    @Test
+    public void testEntriesAreWrittenWhole() throws Exception {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int id = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 250; i++) {
+                        logger.info("# [" + id + "] begin\n# [" + id + "] end " + i + "\n");
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        appender.stop();
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1000, appender.getWritten());
+        assertTrue(appender.getBatches() >= 1000 / 16);
+        assertEquals(3000, lines.size());
+        for (int i = 0; i < lines.size(); i += 3) {
+            String id = lines.get(i).substring(0, 6);
+            assertTrue(lines.get(i).endsWith("begin"));
+            assertTrue(lines.get(i + 1).startsWith(id));
+            assertEquals("", lines.get(i + 2));
+        }
+    }
+
+    @Test
+    public void testEntriesGoToStandardOutIfTheFileCannotBeOpened() {
+        appender.stop();
+
+        LoggerContext context = new LoggerContext();
+        CrawlLogAppender console = new CrawlLogAppender();
+        console.setContext(context);
+        console.setName("CRAWL");
+        // A directory cannot be opened for writing.
+        console.setFile(file.getParent());
+        console.start();
+        Logger logger = context.getLogger("crawler.crawl");
+        logger.setAdditive(false);
+        logger.addAppender(console);
+
+        logger.info("# first\n");
+        logger.info("# second\n");
+        console.stop();
+
+        assertEquals(2, console.getWritten());
+    }
+
+    @Test
+    public void testEntriesAreFlushedOnInterval() throws IOException, InterruptedException {
+        logger.info("# first");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("# first\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,63 @@
+package crawler.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the buckets and percentiles of the {@link LatencyHistogram}.
+ *
+ * @author billy
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    @Test
+    public void testBucketPrecision() {
+        int previous = -1;
+        for (long micros = 0; micros < 10000000; micros += 1 + micros / 100) {
+            int index = LatencyHistogram.index(micros);
+            assertTrue(index >= previous);
+            previous = index;
+
+            long high = LatencyHistogram.value(index);
+            assertTrue(micros + " above its bucket", micros <= high);
+            assertTrue(micros + " too far from its bucket", high - micros <= Math.max(1, micros / 32));
+            if (index > 0) {
+                assertTrue(micros + " below its bucket", micros > LatencyHistogram.value(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0.0, h.percentile(50), 0);
+
+        for (int ms = 1; ms <= 100; ms++) {
+            h.record(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+
+        assertEquals(100, h.getCount());
+        assertEquals(50.5, h.getMean(), 0.001);
+        assertEquals(50, h.getPercentile50(), 50 / 32.0);
+        assertEquals(90, h.getPercentile90(), 90 / 32.0);
+        assertEquals(99, h.getPercentile99(), 99 / 32.0);
+        assertEquals(100.0, h.getMaximum(), 0);
+        assertEquals(100.0, h.percentile(100), 0);
+    }
+
+    @Test
+    public void testErrorsAreCountedByCause() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.error("HTTP 404");
+        metrics.error("HTTP 404");
+        metrics.error(new java.net.SocketTimeoutException());
+
+        assertEquals(3, metrics.getErrorCount());
+        assertEquals(Long.valueOf(2), metrics.getErrors().get("HTTP 404"));
+        assertEquals(Long.valueOf(1), metrics.getErrors().get("SocketTimeoutException"));
+    }
+
+}
@@ -0,0 +1,218 @@
+package crawler.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.RollbackException;
+import javax.persistence.TypedQuery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import crawler.content.Content;
+import crawler.content.Domain;
+import crawler.content.MIME;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the batching of the {@link ContentWriter} over an in-memory stand-in
+ * for the database, whose commits fail whenever a record titled
+ * {@value #POISON} is part of them.
+ *
+ * @author billy
+ */
+public class ContentWriterTest extends TestCase {
+
+    private static final String POISON = "poison";
+
+    /**
+     * The titles of the committed records, in commit order.
+     */
+    private final List<String> committed = Collections.synchronizedList(new ArrayList<String>());
+
+    private PersistenceService persistenceService;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        persistenceService = new PersistenceService(proxy(EntityManagerFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("createEntityManager")) {
+                    return entityManager();
+                }
+                if (method.getName().equals("isOpen")) {
+                    return true;
+                }
+                return unsupported(proxy, method, args);
+            }
+        }));
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        persistenceService.close();
+        super.tearDown();
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(
+                ContentWriterTest.class.getClassLoader(), new Class<?>[] { type }, handler
+                ));
+    }
+
+    private static Object unsupported(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        }
+        if (method.getName().equals("toString")) {
+            return method.getDeclaringClass().getSimpleName();
+        }
+        if (method.getReturnType() == void.class) {
+            return null;
+        }
+        throw new UnsupportedOperationException(method.getName());
+    }
+
+    /**
+     * Creates an entity manager keeping its persisted records until commit.
+     */
+    private EntityManager entityManager() {
+        final List<Object> pending = new ArrayList<Object>();
+        final boolean[] active = new boolean[1];
+
+        final EntityTransaction transaction = proxy(EntityTransaction.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("begin")) {
+                    active[0] = true;
+                    return null;
+                }
+                if (name.equals("isActive")) {
+                    return active[0];
+                }
+                if (name.equals("rollback")) {
+                    active[0] = false;
+                    pending.clear();
+                    return null;
+                }
+                if (name.equals("commit")) {
+                    active[0] = false;
+                    List<String> titles = new ArrayList<String>();
+                    for (Object o : pending) {
+                        if (o instanceof Content) {
+                            titles.add(((Content) o).getTitle());
+                        }
+                    }
+                    pending.clear();
+                    if (titles.contains(POISON)) {
+                        throw new RollbackException("Poisoned batch: " + titles);
+                    }
+                    committed.addAll(titles);
+                    return null;
+                }
+                return unsupported(proxy, method, args);
+            }
+        });
+
+        return proxy(EntityManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getTransaction")) {
+                    return transaction;
+                }
+                if (name.equals("persist")) {
+                    pending.add(args[0]);
+                    return null;
+                }
+                if (name.equals("getReference")) {
+                    return null;
+                }
+                if (name.equals("createQuery")) {
+                    return proxy(TypedQuery.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (method.getName().equals("getResultList")) {
+                                return new ArrayList<Object>();
+                            }
+                            return unsupported(proxy, method, args);
+                        }
+                    });
+                }
+                if (name.equals("isOpen")) {
+                    return true;
+                }
+                return unsupported(proxy, method, args);
+            }
+        });
+    }
+
+    private static Content content(String title) {
+        Domain d = new Domain();
+        d.setName("example.com");
+        MIME m = new MIME();
+        m.setContentType("text/html");
+
+        Content c = new Content();
+        c.setTitle(title);
+        c.setDomain(d);
+        c.setMime(m);
+        return c;
+    }
+
+    @Test
+    public void testPoisonRecordDoesNotDropItsBatch() throws InterruptedException {
+        // A long flush interval, so that the ten records make a single batch.
+        ContentWriter writer = new ContentWriter(
+                persistenceService, new DimensionCache(persistenceService), 1, 100, 10, 10000
+                );
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            String title = i == 4 ? POISON : "page-" + i;
+            writer.submit(content(title));
+            if (i != 4) {
+                expected.add(title);
+            }
+        }
+        writer.close();
+
+        assertEquals(expected, committed);
+        assertEquals(9, writer.getWritten());
+        assertEquals(1, writer.getFailed());
+        // The batch failed as a whole and was retried one record at a time.
+        assertEquals(9, writer.getBatches());
+        assertEquals(0, writer.getQueued());
+    }
+
+    @Test
+    public void testWriterSurvivesAPoisonBatch() throws InterruptedException {
+        ContentWriter writer = new ContentWriter(
+                persistenceService, new DimensionCache(persistenceService), 1, 100, 1, 10
+                );
+        writer.submit(content(POISON));
+        writer.submit(content("page-0"));
+        writer.submit(content("page-1"));
+        writer.close();
+
+        assertEquals(2, writer.getWritten());
+        assertEquals(1, writer.getFailed());
+        assertEquals(2, committed.size());
+    }
+
+}
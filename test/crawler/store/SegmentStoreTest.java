@@ -0,0 +1,207 @@
+package crawler.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import crawler.fetch.PageBuffer;
+import crawler.frontier.URLCanonicalizer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the records and the index of the {@link SegmentStore}.
+ *
+ * @author billy
+ */
+public class SegmentStoreTest extends TestCase {
+
+    private static final Map<String, String> HTML =
+            Collections.singletonMap("Content-Type", "text/html; charset=UTF-8");
+
+    private File directory;
+
+    private PageBuffer page;
+
+    @Before
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("segments", "");
+        directory.delete();
+        page = new PageBuffer();
+    }
+
+    @After
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f: files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    @Test
+    public void testRecordsAreReadBackByURL() throws IOException {
+        SegmentStore store = new SegmentStore(directory, 1 << 20, 8192);
+        put(store, "http://example.com/?a=1", "first");
+        put(store, "http://example.com/?a=2", "second");
+
+        // Read back while still buffered.
+        assertEquals("first", read(store, "http://example.com/?a=1"));
+        assertEquals("second", read(store, "http://example.com/?a=2"));
+        assertEquals("text/html; charset=UTF-8", store.get("http://example.com/?a=1").header("Content-Type"));
+        assertFalse(store.contains(URLCanonicalizer.toURL("http://example.com/")));
+        assertNull(store.get("http://example.com/"));
+        store.close();
+    }
+
+    @Test
+    public void testSegmentsRollAndSurviveAClose() throws IOException {
+        SegmentStore store = new SegmentStore(directory, 256, 8192);
+        for (int i = 0; i < 10; i++) {
+            put(store, "http://example.com/" + i, "page " + i);
+        }
+        put(store, "http://example.com/3", "page 3, again");
+        store.close();
+
+        store = new SegmentStore(directory, 256, 8192);
+        assertTrue(store.getSegments().size() > 1);
+        assertEquals(10, store.size());
+        assertEquals("page 7", read(store, "http://example.com/7"));
+        assertEquals("page 3, again", read(store, "http://example.com/3"));
+
+        // New records go to a segment of their own.
+        int segments = store.getSegments().size();
+        put(store, "http://example.com/10", "page 10");
+        assertEquals(segments + 1, store.getSegments().size());
+        assertEquals("page 10", read(store, "http://example.com/10"));
+        store.close();
+    }
+
+    @Test
+    public void testScanSkipsSupersededRecords() throws IOException {
+        SegmentStore store = new SegmentStore(directory, 1 << 20, 8192);
+        put(store, "http://example.com/a", "a1");
+        put(store, "http://example.com/b", "b1");
+        put(store, "http://example.com/a", "a2");
+
+        final List<String> seen = new ArrayList<String>();
+        for (int segment: store.getSegments()) {
+            store.scan(segment, new SegmentStore.Visitor() {
+                @Override
+                public void visit(RawRecord record) {
+                    seen.add(record.getUrl() + " " + new String(bytes(record)));
+                }
+            });
+        }
+        assertEquals(2, seen.size());
+        assertEquals("http://example.com/b b1", seen.get(0));
+        assertEquals("http://example.com/a a2", seen.get(1));
+        store.close();
+    }
+
+    @Test
+    public void testTruncatedIndexIsTolerated() throws IOException {
+        SegmentStore store = new SegmentStore(directory, 1 << 20, 8192);
+        put(store, "http://example.com/a", "a");
+        put(store, "http://example.com/b", "b");
+        store.close();
+
+        File index = new File(directory, "segments.idx");
+        try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        store = new SegmentStore(directory, 1 << 20, 8192);
+        assertEquals(1, store.size());
+        put(store, "http://example.com/c", "c");
+        store.close();
+
+        store = new SegmentStore(directory, 1 << 20, 8192);
+        assertEquals(2, store.size());
+        assertEquals("a", read(store, "http://example.com/a"));
+        assertEquals("c", read(store, "http://example.com/c"));
+        store.close();
+    }
+
+    @Test
+    public void testWritingAfterACloseKeepsTheIndex() throws IOException {
+        SegmentStore store = new SegmentStore(directory, 1 << 20, 8192);
+        put(store, "http://example.com/a", "a");
+        store.close();
+        put(store, "http://example.com/b", "b");
+        store.close();
+        put(store, "http://example.com/c", "c");
+        store.close();
+
+        store = new SegmentStore(directory, 1 << 20, 8192);
+        assertEquals(3, store.size());
+        assertEquals("a", read(store, "http://example.com/a"));
+        assertEquals("b", read(store, "http://example.com/b"));
+        assertEquals("c", read(store, "http://example.com/c"));
+        store.close();
+    }
+
+    @Test
+    public void testCodecsAreReadTransparently() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("<p>Lorem ipsum dolor sit amet ").append(i).append("</p>\n");
+        }
+        String html = sb.toString();
+
+        SegmentStore store = new SegmentStore(directory, 1 << 20, 8192, Codec.forName("gzip", -1));
+        put(store, "http://example.com/gzip", html);
+        RawRecord record = store.get("http://example.com/gzip");
+        assertEquals("gzip", record.header("Content-Encoding"));
+        assertTrue(record.getBody().remaining() < html.length() / 4);
+        assertEquals(html, read(store, "http://example.com/gzip"));
+        store.close();
+
+        // A later crawl may use another codec; the earlier records stay readable.
+        store = new SegmentStore(directory, 1 << 20, 8192, Codec.forName("deflate", 1));
+        put(store, "http://example.com/deflate", html);
+        store.close();
+
+        store = new SegmentStore(directory, 1 << 20, 8192);
+        put(store, "http://example.com/none", html);
+        assertEquals(html, read(store, "http://example.com/gzip"));
+        assertEquals(html, read(store, "http://example.com/deflate"));
+        assertEquals(html, read(store, "http://example.com/none"));
+        assertNull(store.get("http://example.com/none").header("Content-Encoding"));
+        store.close();
+    }
+
+    private void put(SegmentStore store, String url, String body) throws IOException {
+        page.readFully(new ByteArrayInputStream(body.getBytes("UTF-8")), -1);
+        store.put(URLCanonicalizer.toURL(url), HTML, page);
+    }
+
+    private String read(SegmentStore store, String url) throws IOException {
+        assertTrue(store.read(URLCanonicalizer.toURL(url), page));
+        return page.decode(null);
+    }
+
+    private static byte[] bytes(RawRecord record) {
+        ByteBuffer body = record.getBody();
+        byte[] b = new byte[body.remaining()];
+        body.get(b);
+        return b;
+    }
+
+}